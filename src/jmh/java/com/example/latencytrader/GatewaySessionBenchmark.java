@@ -0,0 +1,152 @@
+package com.example.latencytrader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares platform and virtual session threads in {@link NetworkOrderGateway}
+ * as the number of connected sessions grows.
+ *
+ * <ul>
+ *   <li>{@code roundTrip}: latency of one text command from a client socket
+ *       write to its engine acknowledgement, sent on a different session each
+ *       time while {@code sessions} connections are open.</li>
+ *   <li>{@code openSessions}: time to connect {@code sessions} further clients
+ *       and have each one's first command acknowledged, which includes
+ *       starting a session thread per connection.</li>
+ * </ul>
+ *
+ * <p>{@code VIRTUAL} needs a Java 21 runtime; on older JVMs those trials fail
+ * at setup.  Raise the open file limit before trying very large session
+ * counts.</p>
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GatewaySessionBenchmark {
+    @Param({"PLATFORM", "VIRTUAL"})
+    public SessionThreads threads;
+
+    @Param({"10", "1000", "4000"})
+    public int sessions;
+
+    private AckCountingListener listener;
+    private Sequencer sequencer;
+    private Thread sequencerThread;
+    private NetworkOrderGateway gateway;
+    private Socket[] sockets;
+    private OutputStream[] outputs;
+    private byte[][] commands;
+    private long sent;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        listener = new AckCountingListener();
+        MatchingEngine engine = new MatchingEngine(new RiskManager(1_000, 1_000), listener);
+        sequencer = new Sequencer(engine, 65536, SequencerWaitStrategy.YIELDING);
+        sequencerThread = new Thread(sequencer, "GatewaySessionBenchmark-sequencer");
+        sequencerThread.start();
+        gateway = new NetworkOrderGateway(sequencer, 0, threads);
+        Thread gatewayThread = new Thread(gateway, "GatewaySessionBenchmark-gateway");
+        gatewayThread.setDaemon(true);
+        gatewayThread.start();
+        while (gateway.localPort() < 0) {
+            Thread.sleep(1);
+        }
+
+        sockets = new Socket[sessions];
+        outputs = new OutputStream[sessions];
+        commands = new byte[sessions][];
+        for (int i = 0; i < sessions; i++) {
+            sockets[i] = new Socket("localhost", gateway.localPort());
+            sockets[i].setTcpNoDelay(true);
+            outputs[i] = sockets[i].getOutputStream();
+            // Cancels for unknown orders are rejected, which still yields one ack each
+            commands[i] = ("CXL,clOrdId=" + i + "\n").getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        gateway.stop();
+        sequencer.stop();
+        sequencerThread.join();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public void roundTrip() throws IOException {
+        int session = next;
+        next = session + 1 == sessions ? 0 : session + 1;
+        outputs[session].write(commands[session]);
+        awaitAcks(++sent);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public void openSessions() throws IOException {
+        Socket[] extra = new Socket[sessions];
+        try {
+            for (int i = 0; i < sessions; i++) {
+                extra[i] = new Socket("localhost", gateway.localPort());
+                extra[i].getOutputStream().write(commands[i]);
+            }
+            sent += sessions;
+            awaitAcks(sent);
+        } finally {
+            for (Socket socket : extra) {
+                if (socket != null) {
+                    socket.close();
+                }
+            }
+        }
+    }
+
+    private void awaitAcks(long target) {
+        // Yield rather than spin so the session and sequencer threads get CPU on small hosts
+        while (listener.acks < target) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Counts acknowledgements on the sequencer thread.
+     */
+    static final class AckCountingListener implements MatchingEngine.MatchListener {
+        volatile long acks;
+
+        @Override
+        public void onAck(long clientOrderId, long orderId, String status, long tsIn) {
+            acks++;
+        }
+
+        @Override
+        public void onFill(long clientOrderId, long restingOrderId, long tradeId, int quantity, long price, long tsIn) {}
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.latencytrader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures {@link Journal} append cost and replay throughput, both in events
+ * per microsecond.  {@code append} writes a fixed batch into a fresh journal
+ * per invocation so disk usage stays bounded.  Replay rate bounds restart
+ * time; {@code replay} rebuilds a fresh engine from a journal of quoting-style
+ * traffic: new orders resting around the touch, replaces and cancels.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalBenchmark {
+    static final int REPLAY_EVENTS = 100_000;
+    static final int APPEND_EVENTS = 100_000;
+
+    private Path replayDirectory;
+    private Path appendDirectory;
+    private Journal appendJournal;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        replayDirectory = Files.createTempDirectory("journal-replay");
+        try (Journal journal = new Journal(replayDirectory, 16 << 20, JournalSyncPolicy.NONE)) {
+            for (int i = 0; i < REPLAY_EVENTS; i += 4) {
+                Side side = (i & 4) == 0 ? Side.BUY : Side.SELL;
+                long price = side == Side.BUY ? 9_990L - (i % 40) : 10_010L + (i % 40);
+                journal.appendNewOrder(i, i, i, side, 100, price, "ACC", "XYZ");
+                journal.appendReplace(i + 1, i + 1, i, 50, price);
+                journal.appendMarketData(i + 2, i + 2, "XYZ", 9_990L, 10_010L);
+                journal.appendCancel(i + 3, i + 3, i);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        delete(replayDirectory);
+    }
+
+    @Setup(Level.Invocation)
+    public void openAppendJournal() throws IOException {
+        appendDirectory = Files.createTempDirectory("journal-append");
+        appendJournal = new Journal(appendDirectory, 16 << 20, JournalSyncPolicy.NONE);
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeAppendJournal() throws IOException {
+        appendJournal.close();
+        delete(appendDirectory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(APPEND_EVENTS)
+    public void append() {
+        Journal journal = appendJournal;
+        for (int i = 0; i < APPEND_EVENTS; i++) {
+            journal.appendNewOrder(i, i, i, Side.BUY, 100, 10_000L, "ACC", "XYZ");
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REPLAY_EVENTS)
+    public long replay() throws IOException {
+        MatchingEngine engine = new MatchingEngine(new RiskManager(1_000_000, 1_000_000_000), new NoopMatchListener());
+        return Journal.replay(replayDirectory, engine);
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.latencytrader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link MatchingEngine} order handling for passive, aggressive and
+ * multi-level sweep flows, plus a cancel-heavy flow.  The book is seeded with
+ * {@code depth} levels of one order per side around {@link #MID_PRICE}.  Every
+ * benchmark restores the book before returning, so aggressive benchmarks
+ * include the cost of replenishing the liquidity they took.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchingEngineBenchmark {
+    static final long MID_PRICE = 10_000L;
+    static final int LOT = 100;
+    static final String INSTRUMENT = "XYZ";
+
+    @Param({"tree", "array"})
+    public String book;
+
+    @Param({"10", "100"})
+    public int depth;
+
+    /** Number of levels taken by {@link #sweep()}. */
+    @Param({"5"})
+    public int sweepLevels;
+
+    private MatchingEngine engine;
+    private long nextClientOrderId;
+
+    @Setup
+    public void setUp() {
+        engine = new MatchingEngine(new RiskManager(Integer.MAX_VALUE, Integer.MAX_VALUE), new NoopMatchListener());
+        if ("array".equals(book)) {
+            engine.registerOrderBook(INSTRUMENT, new ArrayOrderBook(MID_PRICE - depth - 1, 2 * depth + 3));
+        }
+        for (int level = 1; level <= depth; level++) {
+            rest(Side.BUY, MID_PRICE - level);
+            rest(Side.SELL, MID_PRICE + level);
+        }
+    }
+
+    private void rest(Side side, long price) {
+        long id = ++nextClientOrderId;
+        engine.onNewOrder(id, id, id, side, LOT, price, "MM", INSTRUMENT);
+    }
+
+    /**
+     * A non-crossing order rests inside the spread and is cancelled.
+     */
+    @Benchmark
+    public void passiveNewAndCancel() {
+        long id = ++nextClientOrderId;
+        engine.onNewOrder(id, id, id, Side.BUY, LOT, MID_PRICE, "AGG", INSTRUMENT);
+        engine.onCancel(id, id, id);
+    }
+
+    /**
+     * A buy and then a sell each fully fill against the best opposite order,
+     * which is then replenished.
+     */
+    @Benchmark
+    public void aggressiveFill() {
+        long id = ++nextClientOrderId;
+        engine.onNewOrder(id, id, id, Side.BUY, LOT, MID_PRICE + 1, "AGG", INSTRUMENT);
+        rest(Side.SELL, MID_PRICE + 1);
+        id = ++nextClientOrderId;
+        engine.onNewOrder(id, id, id, Side.SELL, LOT, MID_PRICE - 1, "AGG", INSTRUMENT);
+        rest(Side.BUY, MID_PRICE - 1);
+    }
+
+    /**
+     * A buy and then a sell each sweep {@code sweepLevels} levels, which are
+     * then replenished.
+     */
+    @Benchmark
+    public void sweep() {
+        long id = ++nextClientOrderId;
+        engine.onNewOrder(id, id, id, Side.BUY, LOT * sweepLevels, MID_PRICE + sweepLevels, "AGG", INSTRUMENT);
+        for (int level = 1; level <= sweepLevels; level++) {
+            rest(Side.SELL, MID_PRICE + level);
+        }
+        id = ++nextClientOrderId;
+        engine.onNewOrder(id, id, id, Side.SELL, LOT * sweepLevels, MID_PRICE - sweepLevels, "AGG", INSTRUMENT);
+        for (int level = 1; level <= sweepLevels; level++) {
+            rest(Side.BUY, MID_PRICE - level);
+        }
+    }
+
+    /**
+     * Cancel-heavy quoting flow: ten quotes are placed across the book, each is
+     * replaced once and then all are cancelled.
+     */
+    @Benchmark
+    public void cancelHeavy() {
+        long first = nextClientOrderId + 1;
+        for (int i = 0; i < 10; i++) {
+            long id = ++nextClientOrderId;
+            long price = MID_PRICE - 1 - (i % depth);
+            engine.onNewOrder(id, id, id, Side.BUY, LOT, price, "MM", INSTRUMENT);
+            engine.onReplace(id, id, id, LOT / 2, price);
+        }
+        for (long id = first; id <= nextClientOrderId; id++) {
+            engine.onCancel(id, id, id);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.latencytrader;
+
+/**
+ * Listener that discards all engine output so benchmarks measure only the
+ * engine itself.
+ */
+final class NoopMatchListener implements MatchingEngine.MatchListener {
+    @Override
+    public void onAck(long clientOrderId, long orderId, String status, long tsIn) {}
+
+    @Override
+    public void onFill(long clientOrderId, long restingOrderId, long tradeId, int quantity, long price, long tsIn) {}
+}
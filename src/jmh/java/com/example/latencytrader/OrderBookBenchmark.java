@@ -0,0 +1,117 @@
+package com.example.latencytrader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link OrderBook#add}, {@link OrderBook#remove},
+ * {@link OrderBook#modify} and {@link OrderBook#depth} on both book
+ * implementations at different depths.
+ * The book is pre-populated with {@code depth} price levels per side holding
+ * {@link #ORDERS_PER_LEVEL} orders each; every operation leaves the book in the
+ * same shape so results do not drift over an iteration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderBookBenchmark {
+    static final long MID_PRICE = 10_000L;
+    static final int ORDERS_PER_LEVEL = 4;
+    static final int TOP_LEVELS = 10;
+
+    @Param({"tree", "array"})
+    public String book;
+
+    @Param({"10", "100", "1000"})
+    public int depth;
+
+    private OrderBook orderBook;
+    private Order scratch;
+    private long nextOrderId;
+    private int cursor;
+    private long[] restingIds;
+    private long[] restingPrices;
+    private final long[] levelPrices = new long[TOP_LEVELS];
+    private final long[] levelQuantities = new long[TOP_LEVELS];
+    private final int[] levelOrderCounts = new int[TOP_LEVELS];
+
+    @Setup
+    public void setUp() {
+        orderBook = "array".equals(book)
+                ? new ArrayOrderBook(MID_PRICE - depth - 1, 2 * depth + 3)
+                : new TreeOrderBook();
+        restingIds = new long[depth * ORDERS_PER_LEVEL];
+        restingPrices = new long[depth * ORDERS_PER_LEVEL];
+        int n = 0;
+        for (int level = 1; level <= depth; level++) {
+            for (int i = 0; i < ORDERS_PER_LEVEL; i++) {
+                orderBook.add(new Order(++nextOrderId, nextOrderId, Side.BUY, 100, MID_PRICE - level, 0));
+                restingIds[n] = nextOrderId;
+                restingPrices[n++] = MID_PRICE - level;
+                orderBook.add(new Order(++nextOrderId, nextOrderId, Side.SELL, 100, MID_PRICE + level, 0));
+            }
+        }
+        scratch = new Order(0, 0, Side.BUY, 100, MID_PRICE - 1, 0);
+    }
+
+    /**
+     * Adds an order behind an existing level, cycling through the book depth,
+     * then removes it again.
+     */
+    @Benchmark
+    public boolean addThenRemove() {
+        long orderId = ++nextOrderId;
+        int level = 1 + (cursor++ % depth);
+        scratch.init(orderId, orderId, Side.BUY, 100, MID_PRICE - level, 0);
+        orderBook.add(scratch);
+        return orderBook.remove(orderId);
+    }
+
+    /**
+     * Modifies a resting bid at its current price, which re-queues it at the
+     * back of its level.
+     */
+    @Benchmark
+    public boolean modifySameLevel() {
+        int index = cursor++ % restingIds.length;
+        return orderBook.modify(restingIds[index], restingPrices[index], 100);
+    }
+
+    /**
+     * Moves a resting bid one level deeper and back again (two modifies).
+     */
+    @Benchmark
+    public boolean modifyAcrossLevels() {
+        int index = cursor++ % restingIds.length;
+        orderBook.modify(restingIds[index], restingPrices[index] - 1, 100);
+        return orderBook.modify(restingIds[index], restingPrices[index], 100);
+    }
+
+    @Benchmark
+    public Order bestOrder() {
+        return orderBook.bestOrder(Side.BUY);
+    }
+
+    /**
+     * Reads the best {@link #TOP_LEVELS} bid levels with their aggregate
+     * quantities and order counts.
+     */
+    @Benchmark
+    public int topLevels() {
+        return orderBook.depth(Side.BUY, TOP_LEVELS, levelPrices, levelQuantities, levelOrderCounts);
+    }
+}
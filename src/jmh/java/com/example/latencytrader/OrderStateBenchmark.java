@@ -0,0 +1,85 @@
+package com.example.latencytrader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the per-order state tracking cost of the original four boxed
+ * {@code HashMap}s against {@link OrderStateStore}.  Each operation tracks one
+ * new order and cancels the order placed {@link #LIVE_ORDERS} operations
+ * earlier, so the working set stays constant.  Run with {@code -prof gc} and
+ * compare {@code gc.alloc.rate.norm} (bytes per operation).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderStateBenchmark {
+    static final int LIVE_ORDERS = 10_000;
+
+    private final Map<Long, Side> sideMap = new HashMap<>();
+    private final Map<Long, String> accountMap = new HashMap<>();
+    private final Map<Long, String> instrumentMap = new HashMap<>();
+    private final Map<Long, Long> clientToServerIdMap = new HashMap<>();
+    private final OrderStateStore store = new OrderStateStore(LIVE_ORDERS * 2);
+
+    private MatchingEngine engine;
+    private long nextClientOrderId;
+
+    @Setup
+    public void setUp() {
+        engine = new MatchingEngine(new RiskManager(1_000, Integer.MAX_VALUE), new NoopMatchListener());
+        for (nextClientOrderId = 1; nextClientOrderId <= LIVE_ORDERS; nextClientOrderId++) {
+            long id = nextClientOrderId;
+            sideMap.put(id, Side.BUY);
+            accountMap.put(id, "ACC");
+            instrumentMap.put(id, "XYZ");
+            clientToServerIdMap.put(id, id);
+            store.add(id, id, Side.BUY, 0, 0);
+            engine.onNewOrder(id, id, id, Side.BUY, 10, 10_000L - (id % 100), "ACC", "XYZ");
+        }
+    }
+
+    @Benchmark
+    public Object boxedHashMaps() {
+        long id = nextClientOrderId++;
+        sideMap.put(id, Side.BUY);
+        accountMap.put(id, "ACC");
+        instrumentMap.put(id, "XYZ");
+        clientToServerIdMap.put(id, id);
+        long old = id - LIVE_ORDERS;
+        sideMap.remove(old);
+        accountMap.remove(old);
+        instrumentMap.remove(old);
+        return clientToServerIdMap.remove(old);
+    }
+
+    @Benchmark
+    public int orderStateStore() {
+        long id = nextClientOrderId++;
+        store.add(id, id, Side.BUY, 0, 0);
+        store.remove(id - LIVE_ORDERS);
+        return store.size();
+    }
+
+    @Benchmark
+    public void engineNewAndCancel() {
+        long id = nextClientOrderId++;
+        engine.onNewOrder(id, id, id, Side.BUY, 10, 10_000L - (id % 100), "ACC", "XYZ");
+        engine.onCancel(id, id, id - LIVE_ORDERS);
+    }
+}
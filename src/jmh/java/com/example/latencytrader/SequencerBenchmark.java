@@ -0,0 +1,106 @@
+package com.example.latencytrader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Sequencer} publish-to-dispatch throughput.  Each operation
+ * publishes one market data tick; the consumer thread dispatches it into a
+ * {@link MatchingEngine}.  Because the ring is bounded, sustained throughput is
+ * limited by the consumer, so the score reflects end-to-end hand-off cost.
+ * Each producer waits for the consumer to drain before its iteration ends.
+ *
+ * <p>Add {@code -t N} to measure contended multi-producer publishing.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SequencerBenchmark {
+    /** {@code QUEUE} or one of the {@link SequencerWaitStrategy} names. */
+    @Param({"QUEUE", "BUSY_SPIN", "YIELDING", "BLOCKING"})
+    public String mode;
+
+    private CountingListener listener;
+    private Sequencer sequencer;
+    private Thread consumer;
+    private long published;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        listener = new CountingListener();
+        MatchingEngine engine = new MatchingEngine(new RiskManager(1_000, 1_000), listener);
+        sequencer = "QUEUE".equals(mode)
+                ? new Sequencer(engine, 65536)
+                : new Sequencer(engine, 65536, SequencerWaitStrategy.valueOf(mode));
+        consumer = new Thread(sequencer, "SequencerBenchmark");
+        consumer.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        sequencer.stop();
+        consumer.join();
+    }
+
+    @Benchmark
+    public void publishMarketData(ProducerState producer) {
+        sequencer.publishMarketData(System.nanoTime(), "XYZ", 10_000L, 10_002L);
+        producer.count++;
+    }
+
+    /**
+     * Per-producer publish counter.  At the end of each iteration it is folded
+     * into the shared total and the producer waits for the consumer to drain.
+     */
+    @State(Scope.Thread)
+    public static class ProducerState {
+        long count;
+
+        @TearDown(Level.Iteration)
+        public void awaitDrain(SequencerBenchmark benchmark) {
+            long target;
+            synchronized (benchmark) {
+                benchmark.published += count;
+                target = benchmark.published;
+            }
+            count = 0;
+            while (benchmark.listener.dispatched < target) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Counts dispatched ticks on the consumer thread.
+     */
+    static final class CountingListener implements MatchingEngine.MatchListener {
+        volatile long dispatched;
+
+        @Override
+        public void onAck(long clientOrderId, long orderId, String status, long tsIn) {}
+
+        @Override
+        public void onFill(long clientOrderId, long restingOrderId, long tradeId, int quantity, long price, long tsIn) {}
+
+        @Override
+        public void onMarketData(String instrument, long bidPrice, long askPrice) {
+            dispatched++;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.latencytrader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures order throughput through a {@link ShardRouter} over 1, 2 and 4
+ * engine shards.  Each operation publishes one order for one of
+ * {@link #SYMBOLS} instruments in batches of {@link #BATCH_SIZE}; buys and
+ * sells alternate per instrument so every second order trades and the books
+ * stay shallow.  The iteration ends once every shard has acknowledged all
+ * published orders.
+ *
+ * <p>Throughput only scales with shards when there are spare cores for the
+ * shard threads; on a single core the score shows the routing overhead.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShardedEngineBenchmark {
+    static final int SYMBOLS = 16;
+    static final int BATCH_SIZE = 64;
+    /** Client order IDs are reused modulo this so the route map stays bounded. */
+    private static final int ORDER_ID_SPACE = 1 << 16;
+
+    @Param({"1", "2", "4"})
+    public int shards;
+
+    private final String[] instruments = new String[SYMBOLS];
+    private AckCountingListener[] listeners;
+    private Sequencer[] sequencers;
+    private Thread[] consumers;
+    private EventBatch batch;
+    private long published;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        for (int i = 0; i < SYMBOLS; i++) {
+            instruments[i] = "SYM" + i;
+        }
+        // One shared risk manager, as in Main; buys and sells use the same account so it nets out
+        RiskManager risk = new RiskManager(1_000, Integer.MAX_VALUE);
+        listeners = new AckCountingListener[shards];
+        sequencers = new Sequencer[shards];
+        consumers = new Thread[shards];
+        for (int i = 0; i < shards; i++) {
+            listeners[i] = new AckCountingListener();
+            sequencers[i] = new Sequencer(new MatchingEngine(risk, listeners[i]), 65536, SequencerWaitStrategy.YIELDING);
+            consumers[i] = new Thread(sequencers[i], "ShardedEngineBenchmark-" + i);
+            consumers[i].start();
+        }
+        batch = new EventBatch(new ShardRouter(sequencers), BATCH_SIZE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        for (int i = 0; i < shards; i++) {
+            sequencers[i].stop();
+            consumers[i].join();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void publishOrders() {
+        long tsIn = System.nanoTime();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            long n = published++;
+            String instrument = instruments[(int) (n % SYMBOLS)];
+            Side side = (n / SYMBOLS & 1) == 0 ? Side.BUY : Side.SELL;
+            batch.publishNewOrder(tsIn, n % ORDER_ID_SPACE, side, 10, 10_000L, "A", instrument);
+        }
+        batch.flush();
+    }
+
+    @TearDown(Level.Iteration)
+    public void awaitAcks() {
+        while (acknowledged() < published) {
+            Thread.yield();
+        }
+    }
+
+    private long acknowledged() {
+        long total = 0;
+        for (AckCountingListener listener : listeners) {
+            total += listener.acks;
+        }
+        return total;
+    }
+
+    /**
+     * Counts acknowledgements on one shard's matching thread.
+     */
+    static final class AckCountingListener implements MatchingEngine.MatchListener {
+        volatile long acks;
+
+        @Override
+        public void onAck(long clientOrderId, long orderId, String status, long tsIn) {
+            acks++;
+        }
+
+        @Override
+        public void onFill(long clientOrderId, long restingOrderId, long tradeId, int quantity, long price, long tsIn) {}
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.latencytrader;
+
+import org.agrona.ExpandableDirectByteBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the pause a {@link Snapshotter} adds to the matching thread: the
+ * copy of the engine state into the snapshot buffer at the end of a batch,
+ * for books of {@code restingOrders} orders spread over 1000 price levels
+ * per side.  Writing and forcing the file happen on the snapshot thread and
+ * are not measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapshotBenchmark {
+    @Param({"1000", "10000", "100000"})
+    int restingOrders;
+
+    private MatchingEngine engine;
+    private final ExpandableDirectByteBuffer buffer = new ExpandableDirectByteBuffer(1 << 20);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        engine = new MatchingEngine(new RiskManager(1_000_000, 1_000_000_000), new NoopMatchListener());
+        for (int i = 0; i < restingOrders; i++) {
+            boolean buy = (i & 1) == 0;
+            long price = buy ? 9_999L - (i / 2) % 1000 : 10_001L + (i / 2) % 1000;
+            engine.onNewOrder(i, i, i, buy ? Side.BUY : Side.SELL, 100, price, "ACC" + (i % 64), "XYZ");
+        }
+    }
+
+    @Benchmark
+    public int capture() {
+        return engine.writeSnapshot(buffer, Snapshotter.HEADER_LENGTH);
+    }
+}
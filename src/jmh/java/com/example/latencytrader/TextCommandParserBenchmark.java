@@ -0,0 +1,57 @@
+package com.example.latencytrader;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares parsing a NEW command with {@link TextCommandParser} against the
+ * regex and {@code Double.parseDouble} parsing it replaced.  Run with
+ * {@code -prof gc} to see the allocation per line.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextCommandParserBenchmark {
+    private static final String LINE = "NEW,clOrdId=123456,side=B,qty=100,px=101.25,acct=ACC42,sym=XYZ";
+    private static final Pattern NEW_PATTERN = Pattern.compile(
+            "NEW,clOrdId=(\\d+),side=([BS]),qty=(\\d+),px=([0-9.]+),acct=([A-Za-z0-9]+),sym=([A-Za-z0-9]+)");
+
+    private final TextCommandParser parser = new TextCommandParser(TickSizes.DEFAULT, null);
+    private final byte[] bytes = LINE.getBytes(StandardCharsets.US_ASCII);
+    private final UnsafeBuffer buffer = new UnsafeBuffer(bytes);
+
+    @Benchmark
+    public long parser() {
+        return parser.parse(buffer, 0, bytes.length).price;
+    }
+
+    @Benchmark
+    public long regex() {
+        // Decodes the bytes to a String first, as the line readers did
+        String line = new String(bytes, StandardCharsets.US_ASCII);
+        Matcher m = NEW_PATTERN.matcher(line);
+        if (!m.matches()) {
+            throw new IllegalStateException();
+        }
+        long clOrdId = Long.parseLong(m.group(1));
+        int qty = Integer.parseInt(m.group(3));
+        long price = Math.round(Double.parseDouble(m.group(4)) * 100);
+        return clOrdId + qty + price + m.group(5).length() + m.group(6).length() + m.group(2).charAt(0);
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.latencytrader;
+
+import org.agrona.collections.Long2ObjectHashMap;
+
+import java.util.BitSet;
+import java.util.function.Consumer;
+
+/**
+ * Order book for instruments with a bounded tick range.  Price levels are held
+ * in arrays indexed by {@code price - basePrice}, so locating a level is a
+ * subtraction rather than a tree lookup.  Resting orders are chained into their
+ * level through an intrusive doubly-linked list (see {@link PriceLevel}) and
+ * indexed by server order ID, which makes insert, cancel and top-of-book O(1).
+ *
+ * <p>All levels are preallocated.  Once the order ID index has grown to its
+ * working size the book performs no allocation on add, cancel, modify or fill.
+ * A bit set of non-empty levels per side is used to find the next best level
+ * when the current best level empties.</p>
+ */
+public final class ArrayOrderBook implements OrderBook {
+    private final long basePrice;
+    private final int tickCount;
+    private final PriceLevel[] bidLevels;
+    private final PriceLevel[] askLevels;
+    /** Bit set per side marking which price indices have resting orders. */
+    private final BitSet bidMask;
+    private final BitSet askMask;
+    /** Resting orders keyed by server-assigned order ID. */
+    private final Long2ObjectHashMap<Order> ordersById = new Long2ObjectHashMap<>();
+    /** Index of the best bid/ask level, or -1 when that side is empty. */
+    private int bestBidIndex = -1;
+    private int bestAskIndex = -1;
+
+    /**
+     * Creates a book covering prices {@code basePrice} to
+     * {@code basePrice + tickCount - 1} inclusive.
+     */
+    public ArrayOrderBook(long basePrice, int tickCount) {
+        if (tickCount <= 0) {
+            throw new IllegalArgumentException("tickCount must be positive: " + tickCount);
+        }
+        this.basePrice = basePrice;
+        this.tickCount = tickCount;
+        this.bidLevels = new PriceLevel[tickCount];
+        this.askLevels = new PriceLevel[tickCount];
+        for (int i = 0; i < tickCount; i++) {
+            bidLevels[i] = new PriceLevel(basePrice + i);
+            askLevels[i] = new PriceLevel(basePrice + i);
+        }
+        this.bidMask = new BitSet(tickCount);
+        this.askMask = new BitSet(tickCount);
+    }
+
+    @Override
+    public boolean acceptsPrice(long price) {
+        return price >= basePrice && price - basePrice < tickCount;
+    }
+
+    /**
+     * Adds a new resting order to the book.  Throws {@link IllegalArgumentException}
+     * if the price lies outside the book's tick range.
+     */
+    @Override
+    public void add(Order order) {
+        if (!acceptsPrice(order.getPrice())) {
+            throw new IllegalArgumentException("Price " + order.getPrice() + " outside book range");
+        }
+        link(order);
+        ordersById.put(order.getOrderId(), order);
+    }
+
+    @Override
+    public boolean remove(long orderId) {
+        Order order = ordersById.remove(orderId);
+        if (order == null) {
+            return false;
+        }
+        unlink(order);
+        return true;
+    }
+
+    /**
+     * Modifies an existing order's price and quantity.  Returns {@code false}
+     * if the order is unknown or the new price lies outside the book's range.
+     */
+    @Override
+    public boolean modify(long orderId, long newPrice, int newQuantity) {
+        Order order = ordersById.get(orderId);
+        if (order == null || !acceptsPrice(newPrice)) {
+            return false;
+        }
+        unlink(order);
+        order.setQuantity(newQuantity);
+        order.setPrice(newPrice);
+        link(order);
+        return true;
+    }
+
+    @Override
+    public Order bestOrder(Side side) {
+        if (side == Side.BUY) {
+            return bestBidIndex < 0 ? null : bidLevels[bestBidIndex].head;
+        }
+        return bestAskIndex < 0 ? null : askLevels[bestAskIndex].head;
+    }
+
+    @Override
+    public void fill(Order order, int quantity) {
+        order.level.reduce(order, quantity);
+        if (order.getQuantity() == 0) {
+            ordersById.remove(order.getOrderId());
+            unlink(order);
+        }
+    }
+
+    @Override
+    public long bestBidPrice() {
+        return bestBidIndex < 0 ? NO_PRICE : basePrice + bestBidIndex;
+    }
+
+    @Override
+    public long bestAskPrice() {
+        return bestAskIndex < 0 ? NO_PRICE : basePrice + bestAskIndex;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return bestBidIndex < 0 && bestAskIndex < 0;
+    }
+
+    @Override
+    public int depth(Side side, int maxLevels, long[] prices, long[] quantities, int[] orderCounts) {
+        int count = 0;
+        if (side == Side.BUY) {
+            for (int i = bestBidIndex; i >= 0 && count < maxLevels; i = bidMask.previousSetBit(i - 1)) {
+                copyLevel(bidLevels[i], count++, prices, quantities, orderCounts);
+            }
+        } else {
+            for (int i = bestAskIndex; i >= 0 && count < maxLevels; i = askMask.nextSetBit(i + 1)) {
+                copyLevel(askLevels[i], count++, prices, quantities, orderCounts);
+            }
+        }
+        return count;
+    }
+
+    private static void copyLevel(PriceLevel level, int index, long[] prices, long[] quantities, int[] orderCounts) {
+        prices[index] = level.price;
+        quantities[index] = level.quantity;
+        if (orderCounts != null) {
+            orderCounts[index] = level.orderCount;
+        }
+    }
+
+    @Override
+    public void forEachOrder(Consumer<Order> visitor) {
+        for (int i = bestBidIndex; i >= 0; i = bidMask.previousSetBit(i - 1)) {
+            bidLevels[i].forEach(visitor);
+        }
+        for (int i = bestAskIndex; i >= 0; i = askMask.nextSetBit(i + 1)) {
+            askLevels[i].forEach(visitor);
+        }
+    }
+
+    private void link(Order order) {
+        int index = (int) (order.getPrice() - basePrice);
+        if (order.getSide() == Side.BUY) {
+            bidLevels[index].addLast(order);
+            bidMask.set(index);
+            if (index > bestBidIndex) {
+                bestBidIndex = index;
+            }
+        } else {
+            askLevels[index].addLast(order);
+            askMask.set(index);
+            if (bestAskIndex < 0 || index < bestAskIndex) {
+                bestAskIndex = index;
+            }
+        }
+    }
+
+    private void unlink(Order order) {
+        PriceLevel level = order.level;
+        level.remove(order);
+        if (!level.isEmpty()) {
+            return;
+        }
+        int index = (int) (level.price - basePrice);
+        if (order.getSide() == Side.BUY) {
+            bidMask.clear(index);
+            if (index == bestBidIndex) {
+                // previousSetBit returns -1 when no bids remain
+                bestBidIndex = bidMask.previousSetBit(index - 1);
+            }
+        } else {
+            askMask.clear(index);
+            if (index == bestAskIndex) {
+                bestAskIndex = askMask.nextSetBit(index + 1);
+            }
+        }
+    }
+}
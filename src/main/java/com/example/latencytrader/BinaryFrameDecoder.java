@@ -0,0 +1,103 @@
+package com.example.latencytrader;
+
+import org.agrona.DirectBuffer;
+import org.agrona.collections.Long2ObjectHashMap;
+
+/**
+ * Decodes {@link BinaryProtocol} frames from a byte stream and publishes them
+ * through an {@link EventPublisher}.  One decoder is used per client session and is not
+ * thread-safe.
+ *
+ * <p>Decoding is done with flyweights directly over the receive buffer.  Account
+ * and symbol fields are resolved through a cache keyed by their raw 8 bytes, so
+ * a {@code String} is only created the first time a session sees a value.</p>
+ */
+final class BinaryFrameDecoder implements FrameDecoder {
+    private final EventPublisher publisher;
+    private final BinaryProtocol.HeaderDecoder header = new BinaryProtocol.HeaderDecoder();
+    private final BinaryProtocol.NewOrderDecoder newOrder = new BinaryProtocol.NewOrderDecoder();
+    private final BinaryProtocol.CancelDecoder cancel = new BinaryProtocol.CancelDecoder();
+    private final BinaryProtocol.ReplaceDecoder replace = new BinaryProtocol.ReplaceDecoder();
+    /** Account and symbol strings keyed by their packed 8-byte wire value. */
+    private final Long2ObjectHashMap<String> symbols = new Long2ObjectHashMap<>();
+
+    BinaryFrameDecoder(EventPublisher publisher) {
+        this.publisher = publisher;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Throws {@link IllegalArgumentException} if a frame carries a foreign
+     * schema ID, as the stream can no longer be framed reliably.</p>
+     */
+    @Override
+    public int decode(DirectBuffer buffer, int offset, int length) {
+        int position = offset;
+        int end = offset + length;
+        while (end - position >= BinaryProtocol.HEADER_LENGTH) {
+            header.wrap(buffer, position);
+            if (header.schemaId() != BinaryProtocol.SCHEMA_ID) {
+                throw new IllegalArgumentException("Unexpected schema ID " + header.schemaId());
+            }
+            int frameLength = BinaryProtocol.HEADER_LENGTH + header.blockLength();
+            if (end - position < frameLength) {
+                break;
+            }
+            onMessage(buffer, position + BinaryProtocol.HEADER_LENGTH, header.templateId(), header.blockLength());
+            position += frameLength;
+        }
+        return position - offset;
+    }
+
+    private void onMessage(DirectBuffer buffer, int blockOffset, int templateId, int blockLength) {
+        long tsIn = System.nanoTime();
+        switch (templateId) {
+            case BinaryProtocol.NEW_ORDER_TEMPLATE_ID: {
+                if (blockLength < BinaryProtocol.NEW_ORDER_BLOCK_LENGTH) {
+                    System.err.println("Truncated NEW block: " + blockLength);
+                    return;
+                }
+                newOrder.wrap(buffer, blockOffset);
+                byte sideCode = newOrder.side();
+                if (sideCode != BinaryProtocol.SIDE_BUY && sideCode != BinaryProtocol.SIDE_SELL) {
+                    System.err.println("Invalid side in NEW clOrdId=" + newOrder.clOrdId());
+                    return;
+                }
+                Side side = sideCode == BinaryProtocol.SIDE_BUY ? Side.BUY : Side.SELL;
+                String account = symbol(buffer, newOrder.accountKey(), newOrder.accountOffset());
+                String instrument = symbol(buffer, newOrder.symbolKey(), newOrder.symbolOffset());
+                publisher.publishNewOrder(tsIn, newOrder.clOrdId(), side, newOrder.quantity(), newOrder.price(),
+                        account, instrument);
+                break;
+            }
+            case BinaryProtocol.CANCEL_TEMPLATE_ID:
+                if (blockLength < BinaryProtocol.CANCEL_BLOCK_LENGTH) {
+                    System.err.println("Truncated CXL block: " + blockLength);
+                    return;
+                }
+                publisher.publishCancel(tsIn, cancel.wrap(buffer, blockOffset).clOrdId());
+                break;
+            case BinaryProtocol.REPLACE_TEMPLATE_ID:
+                if (blockLength < BinaryProtocol.REPLACE_BLOCK_LENGTH) {
+                    System.err.println("Truncated RPL block: " + blockLength);
+                    return;
+                }
+                replace.wrap(buffer, blockOffset);
+                publisher.publishReplace(tsIn, replace.clOrdId(), replace.quantity(), replace.price());
+                break;
+            default:
+                // Unknown templates are skipped using blockLength, as in SBE
+                System.err.println("Unknown template ID " + templateId);
+        }
+    }
+
+    private String symbol(DirectBuffer buffer, long key, int offset) {
+        String value = symbols.get(key);
+        if (value == null) {
+            value = BinaryProtocol.decodeSymbol(buffer, offset);
+            symbols.put(key, value);
+        }
+        return value;
+    }
+}
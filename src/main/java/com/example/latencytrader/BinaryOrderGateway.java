@@ -0,0 +1,110 @@
+package com.example.latencytrader;
+
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A network order gateway speaking the fixed-layout {@link BinaryProtocol}.
+ * It runs alongside the text {@link NetworkOrderGateway} on its own port and
+ * accepts NEW, CXL and RPL messages.
+ *
+ * <p>Each session reads into a direct {@link ByteBuffer} and decodes frames in
+ * place with flyweights, so the receive path performs no string, regex or
+ * floating point work.  Partial frames are kept at the start of the buffer
+ * until the rest arrives.</p>
+ *
+ * <p>Sessions run on platform or virtual threads as selected by
+ * {@link SessionThreads}.</p>
+ */
+public final class BinaryOrderGateway implements Runnable {
+    /** Receive buffer size per session; must exceed the largest frame. */
+    static final int RECEIVE_BUFFER_SIZE = 64 * 1024;
+
+    private final EventPublisher sequencer;
+    private final int port;
+    private final ThreadFactory sessionThreads;
+    private volatile boolean running = true;
+    private volatile ServerSocketChannel server;
+
+    public BinaryOrderGateway(EventPublisher sequencer, int port) {
+        this(sequencer, port, SessionThreads.PLATFORM);
+    }
+
+    public BinaryOrderGateway(EventPublisher sequencer, int port, SessionThreads sessionThreads) {
+        this.sequencer = sequencer;
+        this.port = port;
+        this.sessionThreads = sessionThreads.factory("BinaryOrderClientHandler");
+    }
+
+    /**
+     * Stops accepting connections and releases the port.  Open sessions run
+     * until their clients disconnect.
+     */
+    public void stop() {
+        running = false;
+        ServerSocketChannel channel = server;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Returns the bound port, which differs from the configured port when that
+     * was 0.  Returns -1 until the gateway is listening.
+     */
+    public int localPort() {
+        ServerSocketChannel channel = server;
+        return channel == null ? -1 : channel.socket().getLocalPort();
+    }
+
+    @Override
+    public void run() {
+        try (ServerSocketChannel channel = ServerSocketChannel.open()) {
+            channel.bind(new InetSocketAddress(port));
+            server = channel;
+            System.out.println("BinaryOrderGateway listening on port " + port);
+            while (running) {
+                SocketChannel client = channel.accept();
+                sessionThreads.newThread(() -> handleClient(client)).start();
+            }
+        } catch (ClosedChannelException e) {
+            if (running) {
+                throw new RuntimeException("Binary order gateway failed", e);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to start binary order gateway", e);
+        }
+    }
+
+    private void handleClient(SocketChannel client) {
+        ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(RECEIVE_BUFFER_SIZE);
+        UnsafeBuffer view = new UnsafeBuffer(receiveBuffer);
+        BinaryFrameDecoder decoder = new BinaryFrameDecoder(sequencer);
+        try (SocketChannel channel = client) {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            while (channel.read(receiveBuffer) >= 0) {
+                int available = receiveBuffer.position();
+                int consumed = decoder.decode(view, 0, available);
+                // Keep any partial frame at the start of the buffer
+                receiveBuffer.limit(available).position(consumed);
+                receiveBuffer.compact();
+                if (!receiveBuffer.hasRemaining()) {
+                    throw new IOException("Frame exceeds receive buffer");
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Client disconnected: " + e.getMessage());
+        }
+    }
+}
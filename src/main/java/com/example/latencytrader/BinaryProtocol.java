@@ -0,0 +1,255 @@
+package com.example.latencytrader;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+
+import java.nio.ByteOrder;
+
+/**
+ * Fixed-layout binary order entry protocol in the style of Simple Binary
+ * Encoding (SBE).  Every message is an 8-byte header followed by a fixed-length
+ * block; all integers are little-endian.
+ *
+ * <pre>
+ * Header (8 bytes)
+ *   0  uint16 blockLength   length of the block that follows the header
+ *   2  uint16 templateId    1 = NEW, 2 = CXL, 3 = RPL
+ *   4  uint16 schemaId      {@link #SCHEMA_ID}
+ *   6  uint16 version       {@link #SCHEMA_VERSION}
+ *
+ * NEW (templateId 1, block 40 bytes)
+ *   0  int64  clOrdId
+ *   8  int64  price         integer ticks; 0 denotes a market order
+ *   16 int32  quantity
+ *   20 char   side          'B' or 'S'
+ *   24 char[8] account      ASCII, padded with NUL or space
+ *   32 char[8] symbol       ASCII, padded with NUL or space
+ *
+ * CXL (templateId 2, block 8 bytes)
+ *   0  int64  clOrdId
+ *
+ * RPL (templateId 3, block 24 bytes)
+ *   0  int64  clOrdId
+ *   8  int64  price
+ *   16 int32  quantity
+ * </pre>
+ *
+ * <p>Decoding is done through reusable flyweights that read fields straight
+ * from a {@link DirectBuffer} without copying or allocating.  Account and
+ * symbol fields are exposed as their raw 8 bytes packed into a {@code long}
+ * so callers can look them up without building a {@code String}.</p>
+ */
+public final class BinaryProtocol {
+    public static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+    public static final int SCHEMA_ID = 1;
+    public static final int SCHEMA_VERSION = 0;
+    public static final int HEADER_LENGTH = 8;
+
+    public static final int NEW_ORDER_TEMPLATE_ID = 1;
+    public static final int CANCEL_TEMPLATE_ID = 2;
+    public static final int REPLACE_TEMPLATE_ID = 3;
+
+    public static final int NEW_ORDER_BLOCK_LENGTH = 40;
+    public static final int CANCEL_BLOCK_LENGTH = 8;
+    public static final int REPLACE_BLOCK_LENGTH = 24;
+
+    public static final int SYMBOL_LENGTH = 8;
+    public static final byte SIDE_BUY = 'B';
+    public static final byte SIDE_SELL = 'S';
+
+    private BinaryProtocol() {
+    }
+
+    /**
+     * Flyweight over a message header.
+     */
+    public static final class HeaderDecoder {
+        private DirectBuffer buffer;
+        private int offset;
+
+        public HeaderDecoder wrap(DirectBuffer buffer, int offset) {
+            this.buffer = buffer;
+            this.offset = offset;
+            return this;
+        }
+
+        public int blockLength() {
+            return buffer.getShort(offset, BYTE_ORDER) & 0xFFFF;
+        }
+
+        public int templateId() {
+            return buffer.getShort(offset + 2, BYTE_ORDER) & 0xFFFF;
+        }
+
+        public int schemaId() {
+            return buffer.getShort(offset + 4, BYTE_ORDER) & 0xFFFF;
+        }
+
+        public int version() {
+            return buffer.getShort(offset + 6, BYTE_ORDER) & 0xFFFF;
+        }
+    }
+
+    /**
+     * Flyweight over a NEW block (the bytes after the header).
+     */
+    public static final class NewOrderDecoder {
+        private DirectBuffer buffer;
+        private int offset;
+
+        public NewOrderDecoder wrap(DirectBuffer buffer, int offset) {
+            this.buffer = buffer;
+            this.offset = offset;
+            return this;
+        }
+
+        public long clOrdId() {
+            return buffer.getLong(offset, BYTE_ORDER);
+        }
+
+        public long price() {
+            return buffer.getLong(offset + 8, BYTE_ORDER);
+        }
+
+        public int quantity() {
+            return buffer.getInt(offset + 16, BYTE_ORDER);
+        }
+
+        public byte side() {
+            return buffer.getByte(offset + 20);
+        }
+
+        /** Raw account bytes packed into a long. */
+        public long accountKey() {
+            return buffer.getLong(offset + 24, BYTE_ORDER);
+        }
+
+        public int accountOffset() {
+            return offset + 24;
+        }
+
+        /** Raw symbol bytes packed into a long. */
+        public long symbolKey() {
+            return buffer.getLong(offset + 32, BYTE_ORDER);
+        }
+
+        public int symbolOffset() {
+            return offset + 32;
+        }
+    }
+
+    /**
+     * Flyweight over a CXL block.
+     */
+    public static final class CancelDecoder {
+        private DirectBuffer buffer;
+        private int offset;
+
+        public CancelDecoder wrap(DirectBuffer buffer, int offset) {
+            this.buffer = buffer;
+            this.offset = offset;
+            return this;
+        }
+
+        public long clOrdId() {
+            return buffer.getLong(offset, BYTE_ORDER);
+        }
+    }
+
+    /**
+     * Flyweight over a RPL block.
+     */
+    public static final class ReplaceDecoder {
+        private DirectBuffer buffer;
+        private int offset;
+
+        public ReplaceDecoder wrap(DirectBuffer buffer, int offset) {
+            this.buffer = buffer;
+            this.offset = offset;
+            return this;
+        }
+
+        public long clOrdId() {
+            return buffer.getLong(offset, BYTE_ORDER);
+        }
+
+        public long price() {
+            return buffer.getLong(offset + 8, BYTE_ORDER);
+        }
+
+        public int quantity() {
+            return buffer.getInt(offset + 16, BYTE_ORDER);
+        }
+    }
+
+    /**
+     * Encodes a NEW message at {@code offset} and returns its total length.
+     */
+    public static int encodeNewOrder(MutableDirectBuffer buffer, int offset, long clOrdId, Side side,
+                                     int quantity, long price, String account, String symbol) {
+        encodeHeader(buffer, offset, NEW_ORDER_BLOCK_LENGTH, NEW_ORDER_TEMPLATE_ID);
+        int block = offset + HEADER_LENGTH;
+        buffer.setMemory(block, NEW_ORDER_BLOCK_LENGTH, (byte) 0);
+        buffer.putLong(block, clOrdId, BYTE_ORDER);
+        buffer.putLong(block + 8, price, BYTE_ORDER);
+        buffer.putInt(block + 16, quantity, BYTE_ORDER);
+        buffer.putByte(block + 20, side == Side.BUY ? SIDE_BUY : SIDE_SELL);
+        putSymbol(buffer, block + 24, account);
+        putSymbol(buffer, block + 32, symbol);
+        return HEADER_LENGTH + NEW_ORDER_BLOCK_LENGTH;
+    }
+
+    /**
+     * Encodes a CXL message at {@code offset} and returns its total length.
+     */
+    public static int encodeCancel(MutableDirectBuffer buffer, int offset, long clOrdId) {
+        encodeHeader(buffer, offset, CANCEL_BLOCK_LENGTH, CANCEL_TEMPLATE_ID);
+        buffer.putLong(offset + HEADER_LENGTH, clOrdId, BYTE_ORDER);
+        return HEADER_LENGTH + CANCEL_BLOCK_LENGTH;
+    }
+
+    /**
+     * Encodes a RPL message at {@code offset} and returns its total length.
+     */
+    public static int encodeReplace(MutableDirectBuffer buffer, int offset, long clOrdId, int quantity, long price) {
+        encodeHeader(buffer, offset, REPLACE_BLOCK_LENGTH, REPLACE_TEMPLATE_ID);
+        int block = offset + HEADER_LENGTH;
+        buffer.setMemory(block, REPLACE_BLOCK_LENGTH, (byte) 0);
+        buffer.putLong(block, clOrdId, BYTE_ORDER);
+        buffer.putLong(block + 8, price, BYTE_ORDER);
+        buffer.putInt(block + 16, quantity, BYTE_ORDER);
+        return HEADER_LENGTH + REPLACE_BLOCK_LENGTH;
+    }
+
+    private static void encodeHeader(MutableDirectBuffer buffer, int offset, int blockLength, int templateId) {
+        buffer.putShort(offset, (short) blockLength, BYTE_ORDER);
+        buffer.putShort(offset + 2, (short) templateId, BYTE_ORDER);
+        buffer.putShort(offset + 4, (short) SCHEMA_ID, BYTE_ORDER);
+        buffer.putShort(offset + 6, (short) SCHEMA_VERSION, BYTE_ORDER);
+    }
+
+    private static void putSymbol(MutableDirectBuffer buffer, int offset, String value) {
+        if (value.length() > SYMBOL_LENGTH) {
+            throw new IllegalArgumentException("Symbol longer than " + SYMBOL_LENGTH + " characters: " + value);
+        }
+        for (int i = 0; i < value.length(); i++) {
+            buffer.putByte(offset + i, (byte) value.charAt(i));
+        }
+    }
+
+    /**
+     * Decodes a padded ASCII symbol field into a {@code String}, trimming NUL and
+     * space padding.  Allocates; callers should cache the result by key.
+     */
+    public static String decodeSymbol(DirectBuffer buffer, int offset) {
+        int length = 0;
+        while (length < SYMBOL_LENGTH) {
+            byte b = buffer.getByte(offset + length);
+            if (b == 0 || b == ' ') {
+                break;
+            }
+            length++;
+        }
+        return buffer.getStringWithoutLengthAscii(offset, length);
+    }
+}
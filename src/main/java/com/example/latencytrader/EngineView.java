@@ -0,0 +1,188 @@
+package com.example.latencytrader;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * Read-only view of a {@link MatchingEngine}'s top of book and account
+ * positions that monitoring threads can sample while the engine runs.
+ *
+ * <p>The engine is the single writer.  It reports the books it changes and
+ * the accounts whose positions its fills move, and at the end of each
+ * sequenced batch copies only those into the view under a seqlock: the
+ * sequence is odd while the copy is in progress and advanced to the next even
+ * value once it is complete.  Readers copy what they need and retry if the
+ * sequence was odd or changed meanwhile, so they never block the engine and
+ * the engine never waits for them; every successful read is a consistent
+ * image as of a batch boundary.  Neither side allocates.</p>
+ *
+ * <p>With several shards sharing one {@link RiskManager}, each engine's view
+ * holds an account's position as of the last batch in which that engine
+ * filled the account, so positions moved by other shards may be stale; use
+ * {@link RiskManager#copyPositions} for the latest per-account values
+ * instead.</p>
+ */
+public final class EngineView {
+    /** Longs per instrument in the top-of-book image: bid price, bid quantity, ask price, ask quantity. */
+    public static final int TOP_OF_BOOK_LENGTH = 4;
+
+    private final SymbolRegistry symbols;
+    private final RiskManager riskManager;
+    private volatile long sequence;
+    private final long[] topOfBook;
+    private final int[] positions;
+    private int accountCount;
+
+    // Writer-side change tracking, touched only by the matching thread.
+    private final OrderBook[] books;
+    private final boolean[] bookChanged;
+    private final int[] changedBooks;
+    private int changedBookCount;
+    private final boolean[] accountChanged;
+    private final int[] changedAccounts;
+    private int changedAccountCount;
+    private final long[] levelPrice = new long[1];
+    private final long[] levelQuantity = new long[1];
+
+    /**
+     * Creates a view sized for the instruments and accounts of
+     * {@code riskManager}'s {@link SymbolRegistry}, reading positions from it.
+     */
+    public EngineView(RiskManager riskManager) {
+        this.riskManager = riskManager;
+        this.symbols = riskManager.symbols();
+        int maxInstruments = symbols.maxInstruments();
+        int maxAccounts = symbols.maxAccounts();
+        this.topOfBook = new long[maxInstruments * TOP_OF_BOOK_LENGTH];
+        this.positions = new int[maxAccounts];
+        this.books = new OrderBook[maxInstruments];
+        this.bookChanged = new boolean[maxInstruments];
+        this.changedBooks = new int[maxInstruments];
+        this.accountChanged = new boolean[maxAccounts];
+        this.changedAccounts = new int[maxAccounts];
+    }
+
+    /**
+     * Copies the top of book of {@code instrument} into {@code into}: bid
+     * price, bid quantity, ask price and ask quantity, with a quantity of zero
+     * for an empty side.  Returns {@code false}, leaving {@code into}
+     * untouched, if the instrument is unknown.  May be called from any thread.
+     */
+    public boolean readTopOfBook(String instrument, long[] into) {
+        int instrumentId = symbols.findInstrumentId(instrument);
+        if (instrumentId < 0) {
+            return false;
+        }
+        readTopOfBook(instrumentId, into);
+        return true;
+    }
+
+    /**
+     * Variant of {@link #readTopOfBook(String, long[])} by instrument ID.
+     * An instrument this engine has not traded reads as an empty book.
+     */
+    public void readTopOfBook(int instrumentId, long[] into) {
+        int offset = instrumentId * TOP_OF_BOOK_LENGTH;
+        while (true) {
+            long before = sequence;
+            if ((before & 1) == 0) {
+                System.arraycopy(topOfBook, offset, into, 0, TOP_OF_BOOK_LENGTH);
+                VarHandle.loadLoadFence();
+                if (sequence == before) {
+                    return;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Copies the positions of accounts {@code 0..n-1} into {@code into}, where
+     * {@code n} is the number of accounts this engine has filled, bounded by
+     * the length of {@code into}, and returns {@code n}.  All positions are
+     * from the same batch boundary.  May be called from any thread.
+     */
+    public int readPositions(int[] into) {
+        while (true) {
+            long before = sequence;
+            if ((before & 1) == 0) {
+                int count = Math.min(accountCount, into.length);
+                System.arraycopy(positions, 0, into, 0, count);
+                VarHandle.loadLoadFence();
+                if (sequence == before) {
+                    return count;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Returns the number of batches published to this view so far.
+     */
+    public long version() {
+        return sequence >>> 1;
+    }
+
+    /**
+     * Records that {@code book} changed in the current batch.
+     */
+    void onBookChanged(int instrumentId, OrderBook book) {
+        books[instrumentId] = book;
+        if (!bookChanged[instrumentId]) {
+            bookChanged[instrumentId] = true;
+            changedBooks[changedBookCount++] = instrumentId;
+        }
+    }
+
+    /**
+     * Records that a fill in the current batch moved the position of {@code accountId}.
+     */
+    void onPositionChanged(int accountId) {
+        if (!accountChanged[accountId]) {
+            accountChanged[accountId] = true;
+            changedAccounts[changedAccountCount++] = accountId;
+        }
+    }
+
+    /**
+     * Copies the state changed in the batch into the view.
+     */
+    void onBatchEnd() {
+        if (changedBookCount == 0 && changedAccountCount == 0) {
+            return;
+        }
+        long next = sequence + 1;
+        sequence = next;
+        // Keep the copy below from being reordered before the odd sequence
+        VarHandle.storeStoreFence();
+        for (int i = 0; i < changedBookCount; i++) {
+            int instrumentId = changedBooks[i];
+            bookChanged[instrumentId] = false;
+            OrderBook book = books[instrumentId];
+            int offset = instrumentId * TOP_OF_BOOK_LENGTH;
+            copyLevel(book, Side.BUY, offset);
+            copyLevel(book, Side.SELL, offset + 2);
+        }
+        for (int i = 0; i < changedAccountCount; i++) {
+            int accountId = changedAccounts[i];
+            accountChanged[accountId] = false;
+            positions[accountId] = riskManager.position(accountId);
+            if (accountId >= accountCount) {
+                accountCount = accountId + 1;
+            }
+        }
+        changedBookCount = 0;
+        changedAccountCount = 0;
+        sequence = next + 1;
+    }
+
+    private void copyLevel(OrderBook book, Side side, int offset) {
+        if (book.depth(side, 1, levelPrice, levelQuantity, null) == 0) {
+            topOfBook[offset] = 0;
+            topOfBook[offset + 1] = 0;
+        } else {
+            topOfBook[offset] = levelPrice[0];
+            topOfBook[offset + 1] = levelQuantity[0];
+        }
+    }
+}
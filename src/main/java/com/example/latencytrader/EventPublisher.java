@@ -0,0 +1,29 @@
+package com.example.latencytrader;
+
+/**
+ * Typed, allocation-free entry points for publishing events towards the
+ * matching engine.  Implemented by the {@link Sequencer} itself, by
+ * {@link ShardRouter}, which forwards each event to the shard owning its
+ * instrument, and by {@link EventBatch}, which stages events so that I/O
+ * threads can hand them over in one batch.
+ */
+public interface EventPublisher {
+    void publishNewOrder(long tsIn, long clientOrderId, Side side, int quantity, long price, String account, String instrument);
+
+    void publishCancel(long tsIn, long clientOrderId);
+
+    void publishReplace(long tsIn, long clientOrderId, int newQuantity, long newPrice);
+
+    void publishMarketData(long tsIn, String instrument, long bidPrice, long askPrice);
+
+    /**
+     * Publishes {@code count} staged events starting at {@code offset}, in
+     * order.  The default publishes them one at a time; implementations
+     * override it where a batch can be handed over more cheaply.
+     */
+    default void publishBatch(EventSlot[] events, int offset, int count) {
+        for (int i = offset; i < offset + count; i++) {
+            events[i].publishTo(this);
+        }
+    }
+}
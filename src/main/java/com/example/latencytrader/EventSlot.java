@@ -0,0 +1,169 @@
+package com.example.latencytrader;
+
+/**
+ * Mutable, preallocated entry in the Disruptor ring buffer used by the
+ * {@link Sequencer}.  Every slot is created once when the ring is built and is
+ * overwritten in place by producers, so publishing an event does not allocate.
+ *
+ * <p>The slot is a flattened union of all event types.  Only the fields relevant
+ * to {@link #type} are meaningful; the remaining fields hold stale values from
+ * earlier laps of the ring and must be ignored.</p>
+ *
+ * <p>New orders carry their account and instrument both as symbols, which are
+ * journalled, and as {@link SymbolRegistry} IDs, which the {@link Sequencer}
+ * resolves on the publishing thread so the engine can dispatch on them.</p>
+ */
+public final class EventSlot implements Event {
+    EventType type;
+    long seq;
+    long tsIn;
+    /** When the {@link Sequencer} published the slot, if it records {@link StageLatencies}. */
+    long tsEnqueue;
+    long clientOrderId;
+    Side side;
+    int quantity;
+    long price;
+    String account;
+    String instrument;
+    int accountId;
+    int instrumentId;
+    long bidPrice;
+    long askPrice;
+
+    @Override
+    public long seq() {
+        return seq;
+    }
+
+    @Override
+    public long tsIn() {
+        return tsIn;
+    }
+
+    public EventType type() {
+        return type;
+    }
+
+    void setNewOrder(long seq, long tsIn, long clientOrderId, Side side, int quantity, long price, String account, String instrument) {
+        this.type = EventType.NEW;
+        this.seq = seq;
+        this.tsIn = tsIn;
+        this.clientOrderId = clientOrderId;
+        this.side = side;
+        this.quantity = quantity;
+        this.price = price;
+        this.account = account;
+        this.instrument = instrument;
+    }
+
+    void setCancel(long seq, long tsIn, long clientOrderId) {
+        this.type = EventType.CANCEL;
+        this.seq = seq;
+        this.tsIn = tsIn;
+        this.clientOrderId = clientOrderId;
+        this.account = null;
+        this.instrument = null;
+    }
+
+    void setReplace(long seq, long tsIn, long clientOrderId, int newQuantity, long newPrice, String account) {
+        this.type = EventType.REPLACE;
+        this.seq = seq;
+        this.tsIn = tsIn;
+        this.clientOrderId = clientOrderId;
+        this.quantity = newQuantity;
+        this.price = newPrice;
+        this.account = account;
+        this.instrument = null;
+    }
+
+    void setMarketData(long seq, long tsIn, String instrument, long bidPrice, long askPrice) {
+        this.type = EventType.MD_TICK;
+        this.seq = seq;
+        this.tsIn = tsIn;
+        this.instrument = instrument;
+        this.bidPrice = bidPrice;
+        this.askPrice = askPrice;
+        this.account = null;
+    }
+
+    /**
+     * Copies another slot into this one, stamping it with the given sequence number.
+     */
+    void copyFrom(EventSlot other, long seq) {
+        this.type = other.type;
+        this.seq = seq;
+        this.tsIn = other.tsIn;
+        this.clientOrderId = other.clientOrderId;
+        this.side = other.side;
+        this.quantity = other.quantity;
+        this.price = other.price;
+        this.account = other.account;
+        this.instrument = other.instrument;
+        this.accountId = other.accountId;
+        this.instrumentId = other.instrumentId;
+        this.bidPrice = other.bidPrice;
+        this.askPrice = other.askPrice;
+    }
+
+    /**
+     * Publishes this slot's event through {@code publisher}'s typed methods.
+     */
+    void publishTo(EventPublisher publisher) {
+        switch (type) {
+            case NEW:
+                publisher.publishNewOrder(tsIn, clientOrderId, side, quantity, price, account, instrument);
+                break;
+            case CANCEL:
+                publisher.publishCancel(tsIn, clientOrderId);
+                break;
+            case REPLACE:
+                publisher.publishReplace(tsIn, clientOrderId, quantity, price);
+                break;
+            case MD_TICK:
+                publisher.publishMarketData(tsIn, instrument, bidPrice, askPrice);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported event type: " + type);
+        }
+    }
+
+    /**
+     * Creates an immutable event record from this slot.  Used where the slot's
+     * contents must outlive the slot, such as queue mode.
+     */
+    Event toEvent() {
+        switch (type) {
+            case NEW:
+                return new OrderEvent(seq, tsIn, clientOrderId, side, quantity, price, account, instrument);
+            case CANCEL:
+                return new CancelEvent(seq, tsIn, clientOrderId);
+            case REPLACE:
+                return new ReplaceEvent(seq, tsIn, clientOrderId, quantity, price, account);
+            case MD_TICK:
+                return new MarketDataEvent(seq, tsIn, instrument, bidPrice, askPrice);
+            default:
+                throw new IllegalArgumentException("Unsupported event type: " + type);
+        }
+    }
+
+    /**
+     * Copies an immutable event into this slot, stamping it with the given
+     * sequence number.
+     */
+    void copyFrom(Event event, long seq) {
+        if (event instanceof OrderEvent) {
+            OrderEvent e = (OrderEvent) event;
+            setNewOrder(seq, e.tsIn(), e.clientOrderId(), e.side(), e.quantity(), e.price(), e.account(), e.instrument());
+        } else if (event instanceof CancelEvent) {
+            setCancel(seq, event.tsIn(), ((CancelEvent) event).clientOrderId());
+        } else if (event instanceof ReplaceEvent) {
+            ReplaceEvent e = (ReplaceEvent) event;
+            setReplace(seq, e.tsIn(), e.clientOrderId(), e.newQuantity(), e.newPrice(), e.account());
+        } else if (event instanceof MarketDataEvent) {
+            MarketDataEvent e = (MarketDataEvent) event;
+            setMarketData(seq, e.tsIn(), e.instrument(), e.bidPrice(), e.askPrice());
+        } else {
+            throw new IllegalArgumentException("Unsupported event type: " + event.getClass());
+        }
+    }
+}
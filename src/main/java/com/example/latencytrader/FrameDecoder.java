@@ -0,0 +1,17 @@
+package com.example.latencytrader;
+
+import org.agrona.DirectBuffer;
+
+/**
+ * Decodes complete protocol frames from a session's receive buffer and
+ * publishes the resulting events.  Used by gateways that read into direct
+ * buffers, where a read may end part-way through a frame.
+ */
+interface FrameDecoder {
+    /**
+     * Decodes every complete frame in {@code [offset, offset + length)} and
+     * returns the number of bytes consumed.  Bytes of a trailing partial frame
+     * are not consumed and must be presented again once more data arrives.
+     */
+    int decode(DirectBuffer buffer, int offset, int length);
+}
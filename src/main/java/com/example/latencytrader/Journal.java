@@ -0,0 +1,429 @@
+package com.example.latencytrader;
+
+import org.agrona.BitUtil;
+import org.agrona.IoUtil;
+import org.agrona.collections.Long2ObjectHashMap;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Append-only journal of sequenced events on memory-mapped files.  The
+ * {@link Sequencer} appends every event before dispatching it, so replaying the
+ * journal into a fresh {@link MatchingEngine} deterministically rebuilds the
+ * books, order states and risk positions.
+ *
+ * <p>The journal is a directory of fixed-size segments.  Each segment is named
+ * after the zero-padded index of its first record, so a reader can skip whole
+ * segments when replaying from a given record index.  When a record does not
+ * fit in the current segment a new one is started.  Records never span
+ * segments.</p>
+ *
+ * <pre>
+ * Record (little-endian, padded to a multiple of 8 bytes)
+ *   0  int32  length      total record length; written last, 0 marks the end of data
+ *   4  int32  type        1 = NEW, 2 = CXL, 3 = RPL, 4 = MD
+ *   8  int64  seq
+ *   16 int64  tsIn
+ *   24 body
+ *
+ * NEW: int64 clOrdId, int64 price, int32 qty, int32 side (0 = buy, 1 = sell),
+ *      string account, string instrument
+ * CXL: int64 clOrdId
+ * RPL: int64 clOrdId, int64 price, int32 qty
+ * MD:  int64 bid, int64 ask, string instrument
+ * string: int32 length followed by ASCII bytes
+ * </pre>
+ *
+ * <p>The length word is published with an ordered write after the body, so a
+ * record torn by a crash reads as the end of the journal.  On reopening, the
+ * writer clears any torn record and resumes after the last complete one.  Appending is single threaded
+ * and does not allocate except when rolling to a new segment.</p>
+ */
+public final class Journal implements AutoCloseable {
+    static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+    static final String SEGMENT_SUFFIX = ".journal";
+    static final int HEADER_LENGTH = 24;
+    static final int RECORD_ALIGNMENT = 8;
+
+    static final int NEW_ORDER = 1;
+    static final int CANCEL = 2;
+    static final int REPLACE = 3;
+    static final int MARKET_DATA = 4;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final JournalSyncPolicy syncPolicy;
+    private final UnsafeBuffer buffer = new UnsafeBuffer(0, 0);
+    private MappedByteBuffer segment;
+    private Path segmentFile;
+    private long nextIndex;
+    private int position;
+    private int syncedPosition;
+
+    /**
+     * Opens the journal in {@code directory}, creating it if necessary, and
+     * positions the writer after the last complete record.
+     */
+    public Journal(Path directory, int segmentSize, JournalSyncPolicy syncPolicy) throws IOException {
+        if (segmentSize < 4096 || segmentSize % RECORD_ALIGNMENT != 0) {
+            throw new IllegalArgumentException("Segment size must be a multiple of 8 and at least 4096 bytes: " + segmentSize);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        this.syncPolicy = syncPolicy;
+        List<Path> segments = segments(directory);
+        if (segments.isEmpty()) {
+            mapSegment(0);
+        } else {
+            Path last = segments.get(segments.size() - 1);
+            mapSegment(firstIndex(last));
+            while (position + 4 <= buffer.capacity() && buffer.getIntVolatile(position) != 0) {
+                position += buffer.getInt(position, BYTE_ORDER);
+                nextIndex++;
+            }
+            syncedPosition = position;
+            clearTornTail();
+        }
+    }
+
+    /**
+     * Zeroes whatever a record torn by a crash left after the last complete
+     * record.  Otherwise a shorter record appended over it could end on stale
+     * bytes, which replay and the next reopen would read as a length word.
+     */
+    private void clearTornTail() {
+        int end = position;
+        for (int offset = position; offset + 8 <= buffer.capacity(); offset += 8) {
+            if (buffer.getLong(offset) != 0) {
+                end = offset + 8;
+            }
+        }
+        if (end > position) {
+            buffer.setMemory(position, end - position, (byte) 0);
+            segment.force(position, end - position);
+        }
+    }
+
+    /**
+     * Returns the index the next appended record will have, which is also the
+     * total number of records in the journal.
+     */
+    public long nextIndex() {
+        return nextIndex;
+    }
+
+    /**
+     * Returns the segment file records are currently appended to.  Called on
+     * the appending thread.
+     */
+    Path segmentFile() {
+        return segmentFile;
+    }
+
+    /**
+     * Appends the event held in a sequencer slot.
+     */
+    void append(EventSlot slot) {
+        switch (slot.type) {
+            case NEW:
+                appendNewOrder(slot.seq, slot.tsIn, slot.clientOrderId, slot.side, slot.quantity, slot.price, slot.account, slot.instrument);
+                break;
+            case CANCEL:
+                appendCancel(slot.seq, slot.tsIn, slot.clientOrderId);
+                break;
+            case REPLACE:
+                appendReplace(slot.seq, slot.tsIn, slot.clientOrderId, slot.quantity, slot.price);
+                break;
+            case MD_TICK:
+                appendMarketData(slot.seq, slot.tsIn, slot.instrument, slot.bidPrice, slot.askPrice);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported event type: " + slot.type);
+        }
+    }
+
+    /**
+     * Appends an immutable event, as dispatched in queue mode.
+     */
+    void append(Event event) {
+        if (event instanceof OrderEvent) {
+            OrderEvent e = (OrderEvent) event;
+            appendNewOrder(e.seq(), e.tsIn(), e.clientOrderId(), e.side(), e.quantity(), e.price(), e.account(), e.instrument());
+        } else if (event instanceof CancelEvent) {
+            appendCancel(event.seq(), event.tsIn(), ((CancelEvent) event).clientOrderId());
+        } else if (event instanceof ReplaceEvent) {
+            ReplaceEvent e = (ReplaceEvent) event;
+            appendReplace(e.seq(), e.tsIn(), e.clientOrderId(), e.newQuantity(), e.newPrice());
+        } else if (event instanceof MarketDataEvent) {
+            MarketDataEvent e = (MarketDataEvent) event;
+            appendMarketData(e.seq(), e.tsIn(), e.instrument(), e.bidPrice(), e.askPrice());
+        } else {
+            throw new IllegalArgumentException("Unsupported event type: " + event.getClass());
+        }
+    }
+
+    public void appendNewOrder(long seq, long tsIn, long clientOrderId, Side side, int quantity, long price, String account, String instrument) {
+        int length = HEADER_LENGTH + 24 + 4 + account.length() + 4 + instrument.length();
+        int offset = claim(length, NEW_ORDER, seq, tsIn);
+        buffer.putLong(offset + 24, clientOrderId, BYTE_ORDER);
+        buffer.putLong(offset + 32, price, BYTE_ORDER);
+        buffer.putInt(offset + 40, quantity, BYTE_ORDER);
+        buffer.putInt(offset + 44, side == Side.BUY ? 0 : 1, BYTE_ORDER);
+        int accountLength = buffer.putStringAscii(offset + 48, account, BYTE_ORDER);
+        buffer.putStringAscii(offset + 48 + accountLength, instrument, BYTE_ORDER);
+        commit(offset, length);
+    }
+
+    public void appendCancel(long seq, long tsIn, long clientOrderId) {
+        int length = HEADER_LENGTH + 8;
+        int offset = claim(length, CANCEL, seq, tsIn);
+        buffer.putLong(offset + 24, clientOrderId, BYTE_ORDER);
+        commit(offset, length);
+    }
+
+    public void appendReplace(long seq, long tsIn, long clientOrderId, int newQuantity, long newPrice) {
+        int length = HEADER_LENGTH + 20;
+        int offset = claim(length, REPLACE, seq, tsIn);
+        buffer.putLong(offset + 24, clientOrderId, BYTE_ORDER);
+        buffer.putLong(offset + 32, newPrice, BYTE_ORDER);
+        buffer.putInt(offset + 40, newQuantity, BYTE_ORDER);
+        commit(offset, length);
+    }
+
+    public void appendMarketData(long seq, long tsIn, String instrument, long bidPrice, long askPrice) {
+        int length = HEADER_LENGTH + 16 + 4 + instrument.length();
+        int offset = claim(length, MARKET_DATA, seq, tsIn);
+        buffer.putLong(offset + 24, bidPrice, BYTE_ORDER);
+        buffer.putLong(offset + 32, askPrice, BYTE_ORDER);
+        buffer.putStringAscii(offset + 40, instrument, BYTE_ORDER);
+        commit(offset, length);
+    }
+
+    /**
+     * Called by the sequencer after the last event of a consumed batch.
+     */
+    void endOfBatch() {
+        if (syncPolicy == JournalSyncPolicy.BATCH) {
+            sync();
+        }
+    }
+
+    /**
+     * Forces everything appended so far to the storage device.
+     */
+    public void sync() {
+        if (position > syncedPosition) {
+            segment.force(syncedPosition, position - syncedPosition);
+            syncedPosition = position;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (segment != null) {
+            if (syncPolicy != JournalSyncPolicy.NONE) {
+                sync();
+            }
+            IoUtil.unmap(segment);
+            segment = null;
+        }
+    }
+
+    private int claim(int unalignedLength, int type, long seq, long tsIn) {
+        int length = BitUtil.align(unalignedLength, RECORD_ALIGNMENT);
+        if (length > segmentSize) {
+            throw new IllegalArgumentException("Journal record of " + length + " bytes exceeds segment size");
+        }
+        if (position + length > buffer.capacity()) {
+            rollSegment();
+        }
+        int offset = position;
+        buffer.putInt(offset + 4, type, BYTE_ORDER);
+        buffer.putLong(offset + 8, seq, BYTE_ORDER);
+        buffer.putLong(offset + 16, tsIn, BYTE_ORDER);
+        return offset;
+    }
+
+    private void commit(int offset, int unalignedLength) {
+        int length = BitUtil.align(unalignedLength, RECORD_ALIGNMENT);
+        buffer.putIntOrdered(offset, BYTE_ORDER == ByteOrder.nativeOrder() ? length : Integer.reverseBytes(length));
+        position = offset + length;
+        nextIndex++;
+        if (syncPolicy == JournalSyncPolicy.EVERY_EVENT) {
+            sync();
+        }
+    }
+
+    private void rollSegment() {
+        if (syncPolicy != JournalSyncPolicy.NONE) {
+            sync();
+        }
+        IoUtil.unmap(segment);
+        try {
+            mapSegment(nextIndex);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to roll journal segment", e);
+        }
+    }
+
+    private void mapSegment(long firstIndex) throws IOException {
+        Path file = directory.resolve(segmentName(firstIndex));
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = Math.max(segmentSize, channel.size());
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        buffer.wrap(segment);
+        segmentFile = file;
+        nextIndex = firstIndex;
+        position = 0;
+        syncedPosition = 0;
+    }
+
+    static String segmentName(long firstIndex) {
+        return String.format("%020d%s", firstIndex, SEGMENT_SUFFIX);
+    }
+
+    static long firstIndex(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Lists the segment files in {@code directory} in record order.
+     */
+    static List<Path> segments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (Files.isDirectory(directory)) {
+            try (Stream<Path> files = Files.list(directory)) {
+                files.filter(p -> p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                        .sorted()
+                        .forEach(segments::add);
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Replays every record in the journal at {@code directory} into
+     * {@code engine} as fast as it can be read.  Returns the number of records
+     * replayed.
+     */
+    public static long replay(Path directory, MatchingEngine engine) throws IOException {
+        return replay(directory, 0, engine);
+    }
+
+    /**
+     * Replays the records with index {@code fromIndex} onwards into
+     * {@code engine}.  Segments that end before {@code fromIndex} are skipped
+     * without being read.  Returns the number of records replayed.
+     */
+    public static long replay(Path directory, long fromIndex, MatchingEngine engine) throws IOException {
+        return new Replayer(engine).replay(segments(directory), fromIndex);
+    }
+
+    /**
+     * Reads segments and dispatches their records field-wise.  Account and
+     * instrument strings of up to eight characters are cached by their packed
+     * bytes, so replay only creates a {@code String} for each distinct value.
+     */
+    private static final class Replayer {
+        private final MatchingEngine engine;
+        private final UnsafeBuffer buffer = new UnsafeBuffer(0, 0);
+        private final Long2ObjectHashMap<String> strings = new Long2ObjectHashMap<>();
+
+        Replayer(MatchingEngine engine) {
+            this.engine = engine;
+        }
+
+        long replay(List<Path> segments, long fromIndex) throws IOException {
+            long replayed = 0;
+            for (int i = 0; i < segments.size(); i++) {
+                long index = firstIndex(segments.get(i));
+                if (i + 1 < segments.size() && firstIndex(segments.get(i + 1)) <= fromIndex) {
+                    continue;
+                }
+                MappedByteBuffer mapped;
+                try (FileChannel channel = FileChannel.open(segments.get(i), StandardOpenOption.READ)) {
+                    mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+                buffer.wrap(mapped);
+                try {
+                    int offset = 0;
+                    int length;
+                    while (offset + 4 <= buffer.capacity() && (length = buffer.getInt(offset, BYTE_ORDER)) != 0) {
+                        if (index >= fromIndex) {
+                            dispatch(offset);
+                            replayed++;
+                        }
+                        offset += length;
+                        index++;
+                    }
+                } finally {
+                    IoUtil.unmap(mapped);
+                }
+            }
+            return replayed;
+        }
+
+        private void dispatch(int offset) {
+            int type = buffer.getInt(offset + 4, BYTE_ORDER);
+            long seq = buffer.getLong(offset + 8, BYTE_ORDER);
+            long tsIn = buffer.getLong(offset + 16, BYTE_ORDER);
+            switch (type) {
+                case NEW_ORDER: {
+                    int accountOffset = offset + 48;
+                    int instrumentOffset = accountOffset + 4 + buffer.getInt(accountOffset, BYTE_ORDER);
+                    engine.onNewOrder(seq, tsIn,
+                            buffer.getLong(offset + 24, BYTE_ORDER),
+                            buffer.getInt(offset + 44, BYTE_ORDER) == 0 ? Side.BUY : Side.SELL,
+                            buffer.getInt(offset + 40, BYTE_ORDER),
+                            buffer.getLong(offset + 32, BYTE_ORDER),
+                            string(accountOffset),
+                            string(instrumentOffset));
+                    break;
+                }
+                case CANCEL:
+                    engine.onCancel(seq, tsIn, buffer.getLong(offset + 24, BYTE_ORDER));
+                    break;
+                case REPLACE:
+                    engine.onReplace(seq, tsIn, buffer.getLong(offset + 24, BYTE_ORDER),
+                            buffer.getInt(offset + 40, BYTE_ORDER), buffer.getLong(offset + 32, BYTE_ORDER));
+                    break;
+                case MARKET_DATA:
+                    engine.onMarketData(seq, tsIn, string(offset + 40),
+                            buffer.getLong(offset + 24, BYTE_ORDER), buffer.getLong(offset + 32, BYTE_ORDER));
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown journal record type " + type);
+            }
+        }
+
+        private String string(int offset) {
+            int length = buffer.getInt(offset, BYTE_ORDER);
+            if (length > 8) {
+                return buffer.getStringWithoutLengthAscii(offset + 4, length);
+            }
+            long key = 0;
+            for (int i = 0; i < length; i++) {
+                key = (key << 8) | (buffer.getByte(offset + 4 + i) & 0xFF);
+            }
+            String value = strings.get(key);
+            if (value == null) {
+                value = buffer.getStringWithoutLengthAscii(offset + 4, length);
+                strings.put(key, value);
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.latencytrader;
+
+/**
+ * Selects when the {@link Journal} forces appended records from the page cache
+ * to the storage device.  Records are written into memory-mapped segments
+ * before dispatch under every policy, so a process crash loses nothing; the
+ * policy only bounds what a machine or power failure can lose.
+ */
+public enum JournalSyncPolicy {
+    /** Never forces explicitly; the operating system writes pages back in its own time.  Fastest. */
+    NONE,
+    /** Forces once at the end of each batch the sequencer consumes.  Group commit: one sync covers many events. */
+    BATCH,
+    /** Forces every record before it is dispatched.  Strongest guarantee, one sync per event. */
+    EVERY_EVENT
+}
@@ -0,0 +1,87 @@
+package com.example.latencytrader;
+
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes newline-delimited text commands, as accepted by
+ * {@link NetworkOrderGateway}, from a receive buffer.  Each complete line is
+ * parsed in place by a {@link TextCommandParser} and published; a trailing
+ * line without its terminator is left unconsumed.  Carriage returns and
+ * surrounding whitespace are ignored and invalid lines are reported and
+ * skipped.  Not thread-safe.
+ */
+final class LineFrameDecoder implements FrameDecoder {
+    /** Read buffer size of {@link #readFrom}; must exceed the longest line. */
+    static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final EventPublisher publisher;
+    private final TextCommandParser parser;
+
+    LineFrameDecoder(EventPublisher publisher) {
+        this(publisher, new TextCommandParser(TickSizes.DEFAULT, null));
+    }
+
+    LineFrameDecoder(EventPublisher publisher, TextCommandParser parser) {
+        this.publisher = publisher;
+        this.parser = parser;
+    }
+
+    @Override
+    public int decode(DirectBuffer buffer, int offset, int length) {
+        int lineStart = offset;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            if (buffer.getByte(i) == '\n') {
+                onLine(buffer, lineStart, i);
+                lineStart = i + 1;
+            }
+        }
+        return lineStart - offset;
+    }
+
+    /**
+     * Decodes lines from a blocking stream until it ends, treating a final
+     * line without a terminator as complete.  A line longer than
+     * {@link #READ_BUFFER_SIZE} is reported and discarded.
+     */
+    void readFrom(InputStream in) throws IOException {
+        byte[] bytes = new byte[READ_BUFFER_SIZE];
+        UnsafeBuffer buffer = new UnsafeBuffer(bytes);
+        int length = 0;
+        int read;
+        while ((read = in.read(bytes, length, bytes.length - length)) != -1) {
+            length += read;
+            int consumed = decode(buffer, 0, length);
+            if (consumed == 0 && length == bytes.length) {
+                System.err.println("Line longer than " + bytes.length + " bytes discarded");
+                length = 0;
+            } else if (consumed > 0) {
+                System.arraycopy(bytes, consumed, bytes, 0, length - consumed);
+                length -= consumed;
+            }
+        }
+        onLine(buffer, 0, length);
+    }
+
+    private void onLine(DirectBuffer buffer, int from, int to) {
+        while (from < to && buffer.getByte(from) <= ' ') {
+            from++;
+        }
+        while (to > from && buffer.getByte(to - 1) <= ' ') {
+            to--;
+        }
+        if (from == to) {
+            return;
+        }
+        try {
+            parser.parse(buffer, from, to - from).publishTo(publisher);
+        } catch (Exception ex) {
+            System.err.println("Invalid message: " + buffer.getStringWithoutLengthAscii(from, to - from)
+                    + "; " + ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,623 @@
+package com.example.latencytrader;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.SingleWriterRecorder;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load generator for the text order gateway.  It opens a number of
+ * local TCP sessions and sends a configurable mix of NEW, CXL and RPL
+ * commands on a fixed schedule: request {@code n} is due at
+ * {@code start + n / rate}, however long earlier requests took, so a stalled
+ * system is not given the chance to slow the load down.
+ *
+ * <p>The gateways do not send acknowledgements back over the session, so the
+ * generator runs the engine in the same JVM and listens to it directly as its
+ * {@link MatchingEngine.MatchListener}.  Client order IDs encode the session
+ * that sent them, and because each session's commands are sequenced in the
+ * order they were sent, every acknowledgement is matched to the oldest
+ * outstanding request of its session.  Latency is measured from the time a
+ * request was due to be sent, which corrects for coordinated omission; the
+ * latency from the time it was actually written is recorded as well for
+ * comparison.  Recording on the matching thread is wait-free and does not
+ * allocate.</p>
+ *
+ * <p>Each session keeps up to {@code maxOpenOrders} of its orders open and
+ * cancels or replaces the oldest and a random one of them respectively.  Buy
+ * and sell prices are drawn within ten ticks of a fixed mid price, so a small
+ * share of orders cross and fill.  Sessions are spread over a configurable
+ * number of sender threads, each of which writes the commands that fall due
+ * on its sessions in one burst per session.</p>
+ *
+ * <p>Run {@link #main} to step through a list of rates and find the
+ * throughput knee; see the README for its properties.</p>
+ */
+public final class LoadGenerator implements MatchingEngine.MatchListener {
+    /** Most requests a session may have awaiting acknowledgement; a power of two. */
+    static final int MAX_IN_FLIGHT = 1 << 16;
+    /** Size of each session's send buffer. */
+    static final int SEND_BUFFER_SIZE = 64 * 1024;
+    /** Mid price, in ticks of 0.01, around which orders are priced. */
+    static final long MID_PRICE = 10000L;
+
+    private static final long HIGHEST_TRACKABLE_NANOS = 3600000000000L;
+    /** Room kept in a send buffer for one command. */
+    private static final int MAX_COMMAND_LENGTH = 256;
+    private static final EventType[] REQUEST_TYPES = {EventType.NEW, EventType.CANCEL, EventType.REPLACE};
+    private static final byte[] NEW_CL_ORD_ID = ascii("NEW,clOrdId=");
+    private static final byte[] CXL_CL_ORD_ID = ascii("CXL,clOrdId=");
+    private static final byte[] RPL_CL_ORD_ID = ascii("RPL,clOrdId=");
+    private static final byte[] SIDE_BUY = ascii(",side=B");
+    private static final byte[] SIDE_SELL = ascii(",side=S");
+    private static final byte[] QTY = ascii(",qty=");
+    private static final byte[] PX = ascii(",px=");
+    private static final byte[] ACCT = ascii(",acct=");
+    private static final byte[] SYM = ascii(",sym=");
+
+    private final Session[] sessions;
+    private final int senderThreads;
+    private final int[] mix;
+    private final int maxOpenOrders;
+    private final byte[] instrument;
+    private final SingleWriterRecorder[] corrected = new SingleWriterRecorder[EventType.values().length];
+    private final SingleWriterRecorder uncorrected = new SingleWriterRecorder(HIGHEST_TRACKABLE_NANOS, 3);
+    private final Histogram[] correctedIntervals = new Histogram[EventType.values().length];
+    private Histogram uncorrectedInterval;
+    /** Written only by the matching thread. */
+    private volatile long unmatchedAcks;
+
+    /**
+     * Creates a generator of {@code sessionCount} sessions sending on
+     * {@code senderThreads} threads.  {@code mix} gives the percentage of
+     * NEW, CXL and RPL commands, which must add up to 100.
+     */
+    public LoadGenerator(int sessionCount, int senderThreads, int[] mix, int maxOpenOrders, String instrument) {
+        if (sessionCount < 1 || senderThreads < 1 || senderThreads > sessionCount) {
+            throw new IllegalArgumentException("Need at least one session per sender thread: "
+                    + sessionCount + " sessions, " + senderThreads + " threads");
+        }
+        if (mix.length != REQUEST_TYPES.length || mix[0] + mix[1] + mix[2] != 100 || mix[0] <= 0) {
+            throw new IllegalArgumentException("Mix must give NEW, CXL and RPL percentages adding up to 100");
+        }
+        if (maxOpenOrders < 1) {
+            throw new IllegalArgumentException("maxOpenOrders must be positive: " + maxOpenOrders);
+        }
+        this.sessions = new Session[sessionCount];
+        this.senderThreads = senderThreads;
+        this.mix = new int[] {mix[0], mix[0] + mix[1]};
+        this.maxOpenOrders = maxOpenOrders;
+        this.instrument = ascii(instrument);
+        for (int i = 0; i < sessionCount; i++) {
+            sessions[i] = new Session(i, maxOpenOrders);
+        }
+        for (EventType type : REQUEST_TYPES) {
+            corrected[type.ordinal()] = new SingleWriterRecorder(HIGHEST_TRACKABLE_NANOS, 3);
+        }
+    }
+
+    /**
+     * Parses a mix such as {@code NEW:50,CXL:40,RPL:10} into the percentages
+     * expected by the constructor.  Omitted commands get zero.
+     */
+    public static int[] parseMix(String mix) {
+        int[] percentages = new int[REQUEST_TYPES.length];
+        for (String entry : mix.split(",")) {
+            int colon = entry.indexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Expected COMMAND:PERCENT but got " + entry);
+            }
+            String command = entry.substring(0, colon).trim().toUpperCase();
+            int percentage = Integer.parseInt(entry.substring(colon + 1).trim());
+            switch (command) {
+                case "NEW":
+                    percentages[0] = percentage;
+                    break;
+                case "CXL":
+                    percentages[1] = percentage;
+                    break;
+                case "RPL":
+                    percentages[2] = percentage;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown command " + command + " in mix " + mix);
+            }
+        }
+        return percentages;
+    }
+
+    /**
+     * Connects every session to the text gateway on {@code port} of the local host.
+     */
+    public void connect(int port) throws IOException {
+        for (Session session : sessions) {
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", port));
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            session.channel = channel;
+        }
+    }
+
+    /**
+     * Closes every session.
+     */
+    public void close() {
+        for (Session session : sessions) {
+            if (session.channel != null) {
+                try {
+                    session.channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends {@code ratePerSecond} commands a second across all sessions for
+     * {@code durationNanos}, then waits up to {@code drainNanos} for the
+     * outstanding acknowledgements, and returns the latencies of this step.
+     * Requests a previous step gave up on are still matched to their late
+     * acknowledgements but are neither counted nor recorded in this step.
+     */
+    public Step run(long ratePerSecond, long durationNanos, long drainNanos) throws InterruptedException {
+        if (ratePerSecond < 1) {
+            throw new IllegalArgumentException("Rate must be positive: " + ratePerSecond);
+        }
+        for (Session session : sessions) {
+            session.stepStart = session.tail.get();
+        }
+        takeIntervals();
+        long count = Math.max(1, ratePerSecond * durationNanos / TimeUnit.SECONDS.toNanos(1));
+        double periodNanos = TimeUnit.SECONDS.toNanos(1) / (double) ratePerSecond;
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10);
+        List<Thread> threads = new ArrayList<>(senderThreads);
+        List<Throwable> failures = new ArrayList<>();
+        for (int t = 0; t < senderThreads; t++) {
+            int thread = t;
+            Thread sender = new Thread(() -> send(thread, start, periodNanos, count), "LoadSender-" + t);
+            sender.setUncaughtExceptionHandler((th, e) -> {
+                synchronized (failures) {
+                    failures.add(e);
+                }
+            });
+            threads.add(sender);
+            sender.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long sendNanos = System.nanoTime() - start;
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException("Sender failed", failures.get(0));
+        }
+        long deadline = System.nanoTime() + drainNanos;
+        while (inFlight() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        long lost = inFlight();
+        takeIntervals();
+        return new Step(ratePerSecond, count, count - lost, sendNanos, correctedIntervals, uncorrectedInterval);
+    }
+
+    /**
+     * Returns the number of acknowledgements that matched no outstanding
+     * request, which indicates a protocol error.
+     */
+    public long unmatchedAcks() {
+        return unmatchedAcks;
+    }
+
+    /**
+     * Returns the number of requests of the current step still awaiting an
+     * acknowledgement.
+     */
+    private long inFlight() {
+        long inFlight = 0;
+        for (Session session : sessions) {
+            inFlight += session.tail.get() - Math.max(session.head.get(), session.stepStart);
+        }
+        return inFlight;
+    }
+
+    private void takeIntervals() {
+        for (EventType type : REQUEST_TYPES) {
+            correctedIntervals[type.ordinal()] = corrected[type.ordinal()]
+                    .getIntervalHistogram(correctedIntervals[type.ordinal()]);
+        }
+        uncorrectedInterval = uncorrected.getIntervalHistogram(uncorrectedInterval);
+    }
+
+    /**
+     * Sends the requests of sender {@code thread}: every {@code senderThreads}th
+     * request of the schedule, round robin over its sessions.
+     */
+    private void send(int thread, long start, double periodNanos, long count) {
+        List<Session> own = new ArrayList<>();
+        for (int i = thread; i < sessions.length; i += senderThreads) {
+            own.add(sessions[i]);
+        }
+        Session[] mine = own.toArray(new Session[0]);
+        SplittableRandom random = new SplittableRandom(thread);
+        long total = (count - thread + senderThreads - 1) / senderThreads;
+        double threadPeriod = periodNanos * senderThreads;
+        long first = start + (long) (thread * periodNanos);
+        long sent = 0;
+        try {
+            while (sent < total) {
+                long now = System.nanoTime();
+                long due = now < first ? 0 : Math.min(total, (long) ((now - first) / threadPeriod) + 1);
+                if (due <= sent) {
+                    idleUntil(first + (long) (sent * threadPeriod), now);
+                    continue;
+                }
+                for (; sent < due; sent++) {
+                    encode(mine[(int) (sent % mine.length)], random, first + (long) (sent * threadPeriod));
+                }
+                for (Session session : mine) {
+                    session.flush();
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to send to the gateway", e);
+        }
+    }
+
+    private static void idleUntil(long dueAt, long now) {
+        long wait = dueAt - now;
+        if (wait > TimeUnit.MICROSECONDS.toNanos(100)) {
+            LockSupport.parkNanos(wait - TimeUnit.MICROSECONDS.toNanos(50));
+        } else {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Encodes the next command of {@code session} into its send buffer and
+     * records it as in flight.
+     */
+    private void encode(Session session, SplittableRandom random, long intendedAt) throws IOException {
+        int roll = random.nextInt(100);
+        EventType type = roll < mix[0] ? EventType.NEW : roll < mix[1] ? EventType.CANCEL : EventType.REPLACE;
+        if (type != EventType.NEW && session.openCount == 0) {
+            type = EventType.NEW;
+        } else if (type == EventType.NEW && session.openCount == maxOpenOrders) {
+            type = EventType.CANCEL;
+        }
+        if (SEND_BUFFER_SIZE - session.length < MAX_COMMAND_LENGTH) {
+            session.flush();
+        }
+        while (session.tailValue - session.head.get() == MAX_IN_FLIGHT) {
+            session.flush();
+            Thread.yield();
+        }
+        switch (type) {
+            case NEW: {
+                long clientOrderId = ++session.orderCount * sessions.length + session.index;
+                boolean buy = random.nextBoolean();
+                long price = buy ? MID_PRICE - random.nextInt(10) : MID_PRICE + random.nextInt(10);
+                session.put(NEW_CL_ORD_ID);
+                session.putLong(clientOrderId);
+                session.put(buy ? SIDE_BUY : SIDE_SELL);
+                session.put(QTY);
+                session.putLong(1 + random.nextInt(100));
+                session.put(PX);
+                session.putPrice(price);
+                session.put(ACCT);
+                session.put(session.account);
+                session.put(SYM);
+                session.put(instrument);
+                session.addOpen(clientOrderId, buy);
+                break;
+            }
+            case CANCEL:
+                session.put(CXL_CL_ORD_ID);
+                session.putLong(session.removeOldestOpen());
+                break;
+            case REPLACE: {
+                int open = session.openIndex(random.nextInt(session.openCount));
+                boolean buy = session.openBuys[open];
+                session.put(RPL_CL_ORD_ID);
+                session.putLong(session.openIds[open]);
+                session.put(QTY);
+                session.putLong(1 + random.nextInt(100));
+                session.put(PX);
+                session.putPrice(buy ? MID_PRICE - random.nextInt(10) : MID_PRICE + random.nextInt(10));
+                session.put(SYM);
+                session.put(instrument);
+                break;
+            }
+            default:
+                throw new IllegalStateException("Unexpected request type " + type);
+        }
+        session.putByte('\n');
+        int slot = (int) session.tailValue & (MAX_IN_FLIGHT - 1);
+        session.intendedAt[slot] = intendedAt;
+        session.sentAt[slot] = System.nanoTime();
+        session.types[slot] = (byte) type.ordinal();
+        session.tail.lazySet(++session.tailValue);
+    }
+
+    /**
+     * Matches an acknowledgement to the oldest outstanding request of the
+     * session that sent the order.  A cancel-and-replace acknowledges the new
+     * order before the replace itself, so only REPLACED or REPLACE_REJECT
+     * completes a replace.
+     */
+    @Override
+    public void onAck(long clientOrderId, long orderId, String status, long tsIn) {
+        long now = System.nanoTime();
+        Session session = sessions[(int) (clientOrderId % sessions.length)];
+        long head = session.head.get();
+        if (head == session.tail.get()) {
+            unmatchedAcks++;
+            return;
+        }
+        int slot = (int) head & (MAX_IN_FLIGHT - 1);
+        int type = session.types[slot];
+        if (type == EventType.REPLACE.ordinal() && !status.startsWith("REPLACE")) {
+            return;
+        }
+        if (head < session.stepStart) {
+            // Sent by a step that timed out draining: its histograms are gone
+            session.head.lazySet(head + 1);
+            return;
+        }
+        corrected[type].recordValue(Math.min(now - session.intendedAt[slot], HIGHEST_TRACKABLE_NANOS));
+        uncorrected.recordValue(Math.min(now - session.sentAt[slot], HIGHEST_TRACKABLE_NANOS));
+        session.head.lazySet(head + 1);
+    }
+
+    @Override
+    public void onFill(long clientOrderId, long restingOrderId, long tradeId, int quantity, long price, long tsIn) {}
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * The latencies of one rate step.  Corrected latencies are measured from
+     * the time each request was due; uncorrected ones from the time it was
+     * written.
+     */
+    public static final class Step {
+        public final long rate;
+        public final long sent;
+        public final long acknowledged;
+        public final long sendNanos;
+        private final Histogram[] corrected = new Histogram[EventType.values().length];
+        private final Histogram correctedAll;
+        private final Histogram uncorrected;
+
+        Step(long rate, long sent, long acknowledged, long sendNanos, Histogram[] corrected, Histogram uncorrected) {
+            this.rate = rate;
+            this.sent = sent;
+            this.acknowledged = acknowledged;
+            this.sendNanos = sendNanos;
+            this.correctedAll = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+            for (EventType type : REQUEST_TYPES) {
+                this.corrected[type.ordinal()] = corrected[type.ordinal()].copy();
+                correctedAll.add(corrected[type.ordinal()]);
+            }
+            this.uncorrected = uncorrected.copy();
+        }
+
+        /**
+         * Returns the corrected latencies of {@code type}, or of all requests
+         * if {@code type} is {@code null}.
+         */
+        public Histogram corrected(EventType type) {
+            return type == null ? correctedAll : corrected[type.ordinal()];
+        }
+
+        public Histogram uncorrected() {
+            return uncorrected;
+        }
+
+        /**
+         * Returns the rate achieved by the senders, in requests per second.
+         */
+        public double achievedRate() {
+            return sent * 1e9 / Math.max(1, sendNanos);
+        }
+
+        /**
+         * Prints the step's throughput and latency percentiles in microseconds.
+         */
+        public void print(PrintStream out) {
+            out.printf("rate=%d/s sent=%d achieved=%.0f/s acknowledged=%d%n", rate, sent, achievedRate(), acknowledged);
+            out.printf("  %-12s %10s %10s %10s %10s %10s %10s%n", "latency(us)", "p50", "p90", "p99", "p99.9", "p99.99", "max");
+            for (EventType type : REQUEST_TYPES) {
+                printRow(out, type.name(), corrected[type.ordinal()]);
+            }
+            printRow(out, "ALL", correctedAll);
+            printRow(out, "uncorrected", uncorrected);
+        }
+
+        private static void printRow(PrintStream out, String name, Histogram histogram) {
+            out.printf("  %-12s %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f%n", name,
+                    histogram.getValueAtPercentile(50.0) / 1e3, histogram.getValueAtPercentile(90.0) / 1e3,
+                    histogram.getValueAtPercentile(99.0) / 1e3, histogram.getValueAtPercentile(99.9) / 1e3,
+                    histogram.getValueAtPercentile(99.99) / 1e3, histogram.getMaxValue() / 1e3);
+        }
+    }
+
+    /**
+     * A client session.  The sender thread owns the send buffer, the open
+     * orders and the tail of the in-flight requests; the matching thread owns
+     * their head.
+     */
+    private static final class Session {
+        final int index;
+        final byte[] account;
+        SocketChannel channel;
+        final byte[] bytes = new byte[SEND_BUFFER_SIZE];
+        final UnsafeBuffer buffer = new UnsafeBuffer(bytes);
+        final ByteBuffer output = ByteBuffer.wrap(bytes);
+        int length;
+        long orderCount;
+
+        final long[] intendedAt = new long[MAX_IN_FLIGHT];
+        final long[] sentAt = new long[MAX_IN_FLIGHT];
+        final byte[] types = new byte[MAX_IN_FLIGHT];
+        final AtomicLong head = new AtomicLong();
+        final AtomicLong tail = new AtomicLong();
+        long tailValue;
+        /** The first request of the current step, written before its senders start. */
+        volatile long stepStart;
+
+        final long[] openIds;
+        final boolean[] openBuys;
+        int openFirst;
+        int openCount;
+
+        Session(int index, int maxOpenOrders) {
+            this.index = index;
+            this.account = ascii("LG" + index);
+            this.openIds = new long[maxOpenOrders];
+            this.openBuys = new boolean[maxOpenOrders];
+        }
+
+        void addOpen(long clientOrderId, boolean buy) {
+            int slot = openIndex(openCount++);
+            openIds[slot] = clientOrderId;
+            openBuys[slot] = buy;
+        }
+
+        long removeOldestOpen() {
+            long clientOrderId = openIds[openFirst];
+            openFirst = openIndex(1);
+            openCount--;
+            return clientOrderId;
+        }
+
+        /** Returns the slot of the {@code n}th oldest open order. */
+        int openIndex(int n) {
+            return (openFirst + n) % openIds.length;
+        }
+
+        void put(byte[] text) {
+            buffer.putBytes(length, text);
+            length += text.length;
+        }
+
+        void putByte(char value) {
+            buffer.putByte(length++, (byte) value);
+        }
+
+        void putLong(long value) {
+            length += buffer.putLongAscii(length, value);
+        }
+
+        /** Writes a price in ticks of 0.01 as a decimal. */
+        void putPrice(long ticks) {
+            putLong(ticks / 100);
+            putByte('.');
+            long cents = ticks % 100;
+            putByte((char) ('0' + cents / 10));
+            putByte((char) ('0' + cents % 10));
+        }
+
+        void flush() throws IOException {
+            if (length == 0) {
+                return;
+            }
+            output.limit(length).position(0);
+            while (output.hasRemaining()) {
+                channel.write(output);
+            }
+            output.clear();
+            length = 0;
+        }
+    }
+
+    /**
+     * Starts an engine and text gateway in this JVM, connects the sessions
+     * and steps through the configured rates, printing the latencies of each.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int sessionCount = Integer.getInteger("load.sessions", 16);
+        int senderThreads = Integer.getInteger("load.senderThreads", 1);
+        long durationNanos = TimeUnit.SECONDS.toNanos(Long.getLong("load.durationSeconds", 10));
+        LoadGenerator generator = new LoadGenerator(sessionCount, senderThreads,
+                parseMix(System.getProperty("load.mix", "NEW:50,CXL:40,RPL:10")),
+                Integer.getInteger("load.maxOpenOrders", 1000), System.getProperty("load.instrument", "XYZ"));
+
+        // Limits high enough that the load is never rejected for risk
+        RiskManager riskManager = new RiskManager(Integer.MAX_VALUE, Integer.MAX_VALUE);
+        MatchingEngine engine = new MatchingEngine(riskManager, generator);
+        Sequencer sequencer = new Sequencer(engine, 65536, SequencerWaitStrategy.valueOf(
+                System.getProperty("sequencer.waitStrategy", "BLOCKING").toUpperCase()));
+        Thread sequencerThread = new Thread(sequencer, "SequencerThread");
+        sequencerThread.start();
+
+        String gatewayMode = System.getProperty("load.gateway", "nio");
+        int port;
+        Runnable stopGateway;
+        if ("threads".equalsIgnoreCase(gatewayMode) || "virtual".equalsIgnoreCase(gatewayMode)) {
+            NetworkOrderGateway gateway = new NetworkOrderGateway(sequencer, 0,
+                    "virtual".equalsIgnoreCase(gatewayMode) ? SessionThreads.VIRTUAL : SessionThreads.PLATFORM);
+            startDaemon(gateway, "NetworkOrderGateway");
+            while ((port = gateway.localPort()) < 0) {
+                Thread.sleep(1);
+            }
+            stopGateway = gateway::stop;
+        } else {
+            NioOrderGateway gateway = new NioOrderGateway(sequencer, 0, Integer.getInteger("gateway.ioThreads", 1),
+                    NioOrderGateway.Protocol.LINE);
+            startDaemon(gateway, "NetworkOrderGateway");
+            while ((port = gateway.localPort()) < 0) {
+                Thread.sleep(1);
+            }
+            stopGateway = gateway::stop;
+        }
+        generator.connect(port);
+
+        String[] rates = System.getProperty("load.rates", "100000").split(",");
+        long warmupNanos = TimeUnit.SECONDS.toNanos(Long.getLong("load.warmupSeconds", 5));
+        if (warmupNanos > 0) {
+            // Warm up at the first rate so that compilation does not skew the first step
+            generator.run(Long.parseLong(rates[0].trim()), warmupNanos, TimeUnit.SECONDS.toNanos(30));
+        }
+        List<Step> steps = new ArrayList<>();
+        for (String rate : rates) {
+            Step step = generator.run(Long.parseLong(rate.trim()), durationNanos, TimeUnit.SECONDS.toNanos(30));
+            step.print(System.out);
+            steps.add(step);
+        }
+        if (steps.size() > 1) {
+            System.out.printf("%12s %12s %10s %10s %10s%n", "rate/s", "achieved/s", "p50(us)", "p99(us)", "max(us)");
+            for (Step step : steps) {
+                Histogram all = step.corrected(null);
+                System.out.printf("%12d %12.0f %10.1f %10.1f %10.1f%n", step.rate, step.achievedRate(),
+                        all.getValueAtPercentile(50.0) / 1e3, all.getValueAtPercentile(99.0) / 1e3,
+                        all.getMaxValue() / 1e3);
+            }
+        }
+        if (generator.unmatchedAcks() > 0) {
+            System.out.println("Unmatched acknowledgements: " + generator.unmatchedAcks());
+        }
+
+        generator.close();
+        stopGateway.run();
+        sequencer.stop();
+        sequencerThread.join();
+    }
+
+    private static void startDaemon(Runnable task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
@@ -1,5 +1,21 @@
 package com.example.latencytrader;
 
+import org.HdrHistogram.HistogramLogWriter;
+import org.agrona.concurrent.MessageHandler;
+
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Entry point for the trading simulator.  Creates the matching engine and
  * supporting components and starts a simple command-line interface.  Orders
@@ -14,41 +30,214 @@ package com.example.latencytrader;
  */
 public final class Main {
     public static void main(String[] args) {
-        // Configure risk manager: max order size 1000, max position 5000 shares
-        RiskManager riskManager = new RiskManager(1000, 5000);
-        Publisher publisher = new Publisher();
-        MatchingEngine engine = new MatchingEngine(riskManager, publisher);
-        // Create a sequencer with capacity 65536 entries
-        Sequencer sequencer = new Sequencer(engine, 65536);
-
-        // Start sequencer thread
-        Thread seqThread = new Thread(sequencer, "SequencerThread");
-        seqThread.start();
-
-        // Start a market data feeder for instrument XYZ on its own thread
-        MarketDataFeeder feeder = new MarketDataFeeder(sequencer, "XYZ", 1000);
-        Thread mdThread = new Thread(feeder, "MarketDataFeeder");
+        String journalDir = System.getProperty("journal.dir");
+        if (journalDir != null && Boolean.getBoolean("journal.replay")) {
+            try {
+                replayJournal(Paths.get(journalDir));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to replay journal " + journalDir, e);
+            }
+            return;
+        }
+        // Text gateways and the tick file importer convert decimal prices to ticks of
+        // -Dinstrument.tickSize (default 0.01), overridden per instrument by
+        // -Dinstrument.tickSizes=XYZ:0.05,ABC:0.0001.
+        TickSizes tickSizes = TickSizes.parse(System.getProperty("instrument.tickSize", "0.01"),
+                System.getProperty("instrument.tickSizes"));
+        // -Dmarketdata.importCsv=FILE converts a CSV of timestamp,instrument,bid,ask lines
+        // into the tick file -Dmarketdata.replayFile and exits.
+        String replayFile = System.getProperty("marketdata.replayFile");
+        String importCsv = System.getProperty("marketdata.importCsv");
+        if (importCsv != null) {
+            if (replayFile == null) {
+                throw new IllegalArgumentException("marketdata.importCsv requires marketdata.replayFile");
+            }
+            try {
+                long imported = TickFile.importCsv(Paths.get(importCsv), Paths.get(replayFile), tickSizes);
+                System.out.println("Imported " + imported + " ticks into " + replayFile);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to import ticks from " + importCsv, e);
+            }
+            return;
+        }
+
+        // With -Dengine.shards=N instruments are hashed to N engines, each with its own
+        // sequencer, sequencer thread and publisher; all shards share the risk manager
+        // so position limits hold per account across instruments.
+        int shardCount = Integer.getInteger("engine.shards", 1);
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("engine.shards must be positive: " + shardCount);
+        }
+        if (shardCount > 1 && journalDir != null) {
+            throw new IllegalArgumentException("journal.dir is not supported with engine.shards > 1");
+        }
+        RiskManager riskManager = createRiskManager();
+        SymbolRegistry symbols = riskManager.symbols();
+        WritableByteChannel stdout = Channels.newChannel(new FileOutputStream(FileDescriptor.out));
+        Publisher[] publishers = new Publisher[shardCount];
+        Thread[] publisherThreads = new Thread[shardCount];
+        MatchingEngine[] engines = new MatchingEngine[shardCount];
+        Sequencer[] sequencers = new Sequencer[shardCount];
+        // After every batch each shard publishes conflated L1 and -Dmarketdata.depth
+        // levels (default 5, 0 = off) of every changed book to a broadcast buffer of
+        // -Dmarketdata.bufferSize bytes; -Dmarketdata.print=true prints the L1 stream.
+        int marketDataDepth = Integer.getInteger("marketdata.depth", 5);
+        MarketDataPublisher[] marketData = new MarketDataPublisher[marketDataDepth > 0 ? shardCount : 0];
+        // -Dmonitor.intervalSeconds=N (default 0 = off) prints every shard's top of book and
+        // positions every N seconds, sampled from seqlocked views without stopping the engines.
+        long monitorIntervalSeconds = Long.getLong("monitor.intervalSeconds", 0);
+        EngineView[] views = new EngineView[monitorIntervalSeconds > 0 ? shardCount : 0];
+        // Per-stage latencies (enqueue, queue, match, publish and total, per event type) are
+        // recorded unless -Dmetrics.stageLatency=false and logged with the other latencies.
+        boolean stageLatency = Boolean.parseBoolean(System.getProperty("metrics.stageLatency", "true"));
+        StageLatencies[] latencies = new StageLatencies[stageLatency ? shardCount : 0];
+        for (int i = 0; i < shardCount; i++) {
+            // Output is formatted and written on its own thread, off the matching path
+            publishers[i] = new Publisher(stdout, Publisher.DEFAULT_RING_CAPACITY);
+            engines[i] = new MatchingEngine(riskManager, publishers[i]);
+            if (marketDataDepth > 0) {
+                marketData[i] = new MarketDataPublisher(marketDataDepth, Integer.getInteger("marketdata.bufferSize", 1 << 20));
+                engines[i].setMarketDataPublisher(marketData[i]);
+            }
+            if (monitorIntervalSeconds > 0) {
+                views[i] = new EngineView(riskManager);
+                engines[i].setView(views[i]);
+            }
+            sequencers[i] = createSequencer(engines[i]);
+            if (stageLatency) {
+                latencies[i] = new StageLatencies();
+                sequencers[i].setLatencies(latencies[i]);
+                publishers[i].setLatencies(latencies[i]);
+            }
+            publisherThreads[i] = new Thread(publishers[i], shardName("Publisher", i, shardCount));
+            publisherThreads[i].start();
+        }
+        MatchingEngine engine = engines[0];
+        Publisher publisher = publishers[0];
+        Sequencer sequencer = sequencers[0];
+        EventPublisher ingress = shardCount == 1 ? sequencer : new ShardRouter(sequencers);
+
+        // Journal every sequenced event when -Djournal.dir is set.  On start-up the latest
+        // snapshot is loaded and only the journal after it is replayed, so the engine
+        // resumes from the journalled state.  -Djournal.sync=NONE|BATCH|EVERY_EVENT
+        // chooses the sync policy (default BATCH), -Djournal.segmentSize the segment size
+        // in bytes, and -Djournal.replay=true only replays the journal into a fresh
+        // engine, reports the rate and exits.  Snapshots go to -Dsnapshot.dir (default
+        // <journal.dir>/snapshots) every -Dsnapshot.intervalSeconds (default 60, 0 = off).
+        Journal journal = null;
+        Snapshotter snapshotter = null;
+        if (journalDir != null) {
+            Path snapshotDir = Paths.get(System.getProperty("snapshot.dir", Paths.get(journalDir, "snapshots").toString()));
+            try {
+                engine.setListener(new SilentListener());
+                long fromIndex = Snapshotter.loadLatest(snapshotDir, engine);
+                long recovered = Journal.replay(Paths.get(journalDir), fromIndex, engine);
+                engine.setListener(publisher);
+                System.out.println("Recovered from snapshot at journal index " + fromIndex
+                        + " and " + recovered + " journalled events");
+                journal = new Journal(Paths.get(journalDir), Integer.getInteger("journal.segmentSize", 64 << 20),
+                        JournalSyncPolicy.valueOf(System.getProperty("journal.sync", "BATCH").toUpperCase()));
+                sequencer.setJournal(journal);
+                long intervalSeconds = Long.getLong("snapshot.intervalSeconds", 60);
+                if (intervalSeconds > 0) {
+                    snapshotter = new Snapshotter(snapshotDir, engine, journal, intervalSeconds * 1000);
+                    sequencer.setSnapshotter(snapshotter);
+                    startDaemon(snapshotter, "Snapshotter");
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open journal " + journalDir, e);
+            }
+        }
+
+        if (marketData.length > 0 && Boolean.getBoolean("marketdata.print")) {
+            startDaemon(() -> printTopOfBook(marketData), "MarketDataSubscriber");
+        }
+        if (views.length > 0) {
+            startDaemon(() -> printViews(views, symbols, monitorIntervalSeconds * 1000), "Monitor");
+        }
+
+        // Start one sequencer thread per shard.  Java offers no CPU affinity, so the
+        // shard threads are left to the OS scheduler; pin them externally if needed.
+        Thread[] seqThreads = new Thread[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            seqThreads[i] = new Thread(sequencers[i], shardName("SequencerThread", i, shardCount));
+            seqThreads[i].start();
+        }
+
+        // Start a market data feeder on its own thread: a random walk for instrument XYZ, or
+        // with -Dmarketdata.replayFile a replay of that tick file at -Dmarketdata.replaySpeed
+        // times its original timing (default 1; max replays as fast as possible)
+        Runnable stopFeeder;
+        Thread mdThread;
+        if (replayFile != null) {
+            TickFile ticks;
+            try {
+                ticks = new TickFile(Paths.get(replayFile));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open tick file " + replayFile, e);
+            }
+            TickReplayFeeder feeder = new TickReplayFeeder(ingress, ticks,
+                    TickReplayFeeder.parseSpeed(System.getProperty("marketdata.replaySpeed", "1")));
+            mdThread = new Thread(feeder, "MarketDataFeeder");
+            stopFeeder = feeder::stop;
+        } else {
+            MarketDataFeeder feeder = new MarketDataFeeder(ingress, "XYZ", 1000);
+            mdThread = new Thread(feeder, "MarketDataFeeder");
+            stopFeeder = feeder::stop;
+        }
         mdThread.setDaemon(true);
         mdThread.start();
 
-        // Start a network order gateway on port 9000
-        NetworkOrderGateway netGateway = new NetworkOrderGateway(sequencer, 9000);
-        Thread netThread = new Thread(netGateway, "NetworkOrderGateway");
-        netThread.setDaemon(true);
-        netThread.start();
+        // Start the text order gateway on port 9000 and the binary (SBE-style) gateway on
+        // port 9001 unless -Dgateway.binaryPort is set.  -Dgateway.mode=nio (the default)
+        // multiplexes sessions over -Dgateway.ioThreads selector threads per gateway;
+        // -Dgateway.mode=threads dedicates a platform thread to every client and
+        // -Dgateway.mode=virtual a virtual thread (Java 21).
+        int binaryPort = Integer.getInteger("gateway.binaryPort", 9001);
+        String gatewayMode = System.getProperty("gateway.mode", "nio");
+        Runnable stopGateways;
+        if ("threads".equalsIgnoreCase(gatewayMode) || "virtual".equalsIgnoreCase(gatewayMode)) {
+            SessionThreads sessionThreads = "virtual".equalsIgnoreCase(gatewayMode)
+                    ? SessionThreads.VIRTUAL : SessionThreads.PLATFORM;
+            NetworkOrderGateway netGateway = new NetworkOrderGateway(ingress, 9000, sessionThreads, tickSizes);
+            BinaryOrderGateway binaryGateway = new BinaryOrderGateway(ingress, binaryPort, sessionThreads);
+            startDaemon(netGateway, "NetworkOrderGateway");
+            startDaemon(binaryGateway, "BinaryOrderGateway");
+            stopGateways = () -> {
+                netGateway.stop();
+                binaryGateway.stop();
+            };
+        } else {
+            int ioThreads = Integer.getInteger("gateway.ioThreads", 1);
+            NioOrderGateway netGateway = new NioOrderGateway(ingress, 9000, ioThreads, NioOrderGateway.Protocol.LINE, tickSizes);
+            NioOrderGateway binaryGateway = new NioOrderGateway(ingress, binaryPort, ioThreads, NioOrderGateway.Protocol.BINARY);
+            startDaemon(netGateway, "NetworkOrderGateway");
+            startDaemon(binaryGateway, "BinaryOrderGateway");
+            stopGateways = () -> {
+                netGateway.stop();
+                binaryGateway.stop();
+            };
+        }
 
         // Start a console order gateway on its own thread for local input
-        OrderGateway consoleGateway = new OrderGateway(sequencer, "XYZ");
+        OrderGateway consoleGateway = new OrderGateway(ingress, "XYZ", tickSizes);
         Thread consoleThread = new Thread(consoleGateway, "ConsoleOrderGateway");
         consoleThread.setDaemon(true);
         consoleThread.start();
 
-        // Start a periodic metrics logger thread that writes metrics to CSV every 5 seconds
+        // Start a periodic metrics logger thread that writes the latencies recorded in each
+        // interval of -Dmetrics.intervalSeconds (default 5, 0 = only on shutdown) to
+        // latency.hlog in HdrHistogram log format and a summary line to metrics.csv
+        HistogramLogWriter[] latencyLogs = new HistogramLogWriter[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            latencyLogs[i] = openLatencyLog(shardCount == 1 ? "latency.hlog" : "latency-shard-" + i + ".hlog");
+        }
+        long metricsIntervalMillis = Long.getLong("metrics.intervalSeconds", 5) * 1000;
         Thread metricsThread = new Thread(() -> {
             try {
-                while (true) {
-                    Thread.sleep(5000);
-                    publisher.writeMetricsCsv("metrics.csv");
+                while (metricsIntervalMillis > 0) {
+                    Thread.sleep(metricsIntervalMillis);
+                    writeMetrics(publishers, latencies, latencyLogs);
                 }
             } catch (InterruptedException ignored) {
             }
@@ -63,16 +252,202 @@ public final class Main {
             Thread.currentThread().interrupt();
         }
         // Stop other services gracefully
-        feeder.stop();
-        netGateway.stop();
-        sequencer.stop();
-        // Wait for sequencer to drain
+        stopFeeder.run();
+        stopGateways.run();
+        // Wait for each sequencer to drain, then for its publisher to write what it produced
         try {
-            seqThread.join();
+            for (int i = 0; i < shardCount; i++) {
+                sequencers[i].stop();
+                seqThreads[i].join();
+                publishers[i].stop();
+                publisherThreads[i].join();
+            }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
+        if (snapshotter != null) {
+            snapshotter.stop();
+        }
+        if (journal != null) {
+            journal.close();
+        }
         // Write final metrics
-        publisher.writeMetricsCsv("metrics.csv");
+        metricsThread.interrupt();
+        writeMetrics(publishers, latencies, latencyLogs);
+        for (HistogramLogWriter latencyLog : latencyLogs) {
+            latencyLog.close();
+        }
+    }
+
+    /**
+     * Creates a sequencer with capacity 65536 entries.  The Disruptor ring is the
+     * default; -Dsequencer.mode=queue falls back to the ArrayBlockingQueue and
+     * -Dsequencer.waitStrategy selects BUSY_SPIN, YIELDING, SLEEPING or BLOCKING.
+     */
+    private static Sequencer createSequencer(MatchingEngine engine) {
+        if ("queue".equalsIgnoreCase(System.getProperty("sequencer.mode", "disruptor"))) {
+            return new Sequencer(engine, 65536);
+        }
+        SequencerWaitStrategy waitStrategy = SequencerWaitStrategy.valueOf(
+                System.getProperty("sequencer.waitStrategy", "BLOCKING").toUpperCase());
+        return new Sequencer(engine, 65536, waitStrategy);
+    }
+
+    /**
+     * Prints the top-of-book stream of every shard.  Sleeping between polls lets
+     * the broadcast conflate the updates of busy books.
+     */
+    private static void printTopOfBook(MarketDataPublisher[] marketData) {
+        MarketDataPublisher.Subscriber[] subscribers = new MarketDataPublisher.Subscriber[marketData.length];
+        for (int i = 0; i < marketData.length; i++) {
+            subscribers[i] = marketData[i].newSubscriber();
+        }
+        MessageHandler handler = (typeId, buffer, index, length) -> {
+            if (typeId == MarketDataPublisher.TOP_OF_BOOK_MSG) {
+                System.out.println("L1 instrument=" + MarketDataPublisher.instrument(typeId, buffer, index)
+                        + " bid=" + buffer.getLong(index + 8) + "@" + buffer.getLong(index)
+                        + " ask=" + buffer.getLong(index + 24) + "@" + buffer.getLong(index + 16));
+            }
+        };
+        try {
+            while (true) {
+                int received = 0;
+                for (MarketDataPublisher.Subscriber subscriber : subscribers) {
+                    received += subscriber.poll(handler);
+                }
+                if (received == 0) {
+                    Thread.sleep(1);
+                }
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    /**
+     * Prints the top of book of every traded instrument and every non-zero
+     * position, as seen by each shard's view, every {@code intervalMillis}.
+     */
+    private static void printViews(EngineView[] views, SymbolRegistry symbols, long intervalMillis) {
+        long[] top = new long[EngineView.TOP_OF_BOOK_LENGTH];
+        int[] positions = new int[symbols.maxAccounts()];
+        try {
+            while (true) {
+                Thread.sleep(intervalMillis);
+                for (int i = 0; i < views.length; i++) {
+                    int instrumentCount = symbols.instrumentCount();
+                    for (int instrumentId = 0; instrumentId < instrumentCount; instrumentId++) {
+                        views[i].readTopOfBook(instrumentId, top);
+                        if (top[1] != 0 || top[3] != 0) {
+                            System.out.println("VIEW shard=" + i + " instrument=" + symbols.instrument(instrumentId)
+                                    + " bid=" + top[1] + "@" + top[0] + " ask=" + top[3] + "@" + top[2]);
+                        }
+                    }
+                    int accountCount = views[i].readPositions(positions);
+                    for (int accountId = 0; accountId < accountCount; accountId++) {
+                        if (positions[accountId] != 0) {
+                            System.out.println("VIEW shard=" + i + " account=" + symbols.account(accountId)
+                                    + " position=" + positions[accountId]);
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    /**
+     * Writes the interval since the last call to each shard's latency log and
+     * metrics.csv, or metrics-shard-N.csv per shard when sharded.
+     */
+    private static synchronized void writeMetrics(Publisher[] publishers, StageLatencies[] latencies,
+            HistogramLogWriter[] latencyLogs) {
+        for (int i = 0; i < publishers.length; i++) {
+            publishers[i].writeMetrics(latencyLogs[i], publishers.length == 1 ? "metrics.csv" : "metrics-shard-" + i + ".csv");
+            if (latencies.length > 0) {
+                latencies[i].writeIntervals(latencyLogs[i]);
+            }
+        }
+    }
+
+    /**
+     * Creates an HdrHistogram interval log, flushed line by line, with its
+     * header.  Times are relative to JVM start, so that the first interval,
+     * which began when the recorders were created, has a non-negative start.
+     */
+    private static HistogramLogWriter openLatencyLog(String fileName) {
+        HistogramLogWriter log;
+        try {
+            log = new HistogramLogWriter(new PrintStream(new FileOutputStream(fileName), true));
+        } catch (FileNotFoundException e) {
+            throw new UncheckedIOException("Failed to open latency log " + fileName, e);
+        }
+        long startTime = ManagementFactory.getRuntimeMXBean().getStartTime();
+        log.outputLogFormatVersion();
+        log.outputComment("Latencies in nanoseconds; tags ack, fill and STAGE.TYPE");
+        log.outputStartTime(startTime);
+        log.setBaseTime(startTime);
+        log.outputLegend();
+        return log;
+    }
+
+    private static String shardName(String name, int shard, int shardCount) {
+        return shardCount == 1 ? name : name + "-" + shard;
+    }
+
+    /**
+     * Creates the risk manager and its symbol registry from the system
+     * properties.  The live engine and journal replay share this, so replay
+     * makes the same risk decisions the live run made.
+     */
+    private static RiskManager createRiskManager() {
+        // Instruments and accounts are interned to dense IDs; -Dsymbols.maxInstruments and
+        // -Dsymbols.maxAccounts bound the arrays indexed by them.
+        SymbolRegistry symbols = new SymbolRegistry(
+                Integer.getInteger("symbols.maxInstruments", SymbolRegistry.DEFAULT_MAX_INSTRUMENTS),
+                Integer.getInteger("symbols.maxAccounts", SymbolRegistry.DEFAULT_MAX_ACCOUNTS));
+        // Max order size -Drisk.maxOrderSize (default 1000) and max position
+        // -Drisk.maxPosition (default 5000 shares), counting resting orders.
+        RiskManager riskManager = new RiskManager(symbols, Integer.getInteger("risk.maxOrderSize", 1000),
+                Integer.getInteger("risk.maxPosition", 5000));
+        // Optional pre-trade limits, all off by default: -Drisk.maxOrderNotional and
+        // -Drisk.maxOpenNotional in price ticks times quantity, -Drisk.priceBandBps around
+        // the top of book, and -Drisk.maxOrders new orders per -Drisk.throttleWindowMillis.
+        riskManager.setNotionalLimits(Long.getLong("risk.maxOrderNotional", 0), Long.getLong("risk.maxOpenNotional", 0));
+        riskManager.setPriceBand(Integer.getInteger("risk.priceBandBps", 0));
+        riskManager.setOrderRateLimit(Integer.getInteger("risk.maxOrders", 0),
+                TimeUnit.MILLISECONDS.toNanos(Long.getLong("risk.throttleWindowMillis", 1000)));
+        return riskManager;
+    }
+
+    /**
+     * Replays a journal into a fresh engine at full speed and reports the rate.
+     */
+    private static void replayJournal(Path directory) throws IOException {
+        MatchingEngine engine = new MatchingEngine(createRiskManager(), new SilentListener());
+        long start = System.nanoTime();
+        long events = Journal.replay(directory, engine);
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("Replayed %d events in %.1f ms (%.0f events/s)%n",
+                events, elapsed / 1e6, events * 1e9 / Math.max(1, elapsed));
+    }
+
+    /**
+     * Discards engine output while state is rebuilt from the journal.
+     */
+    private static final class SilentListener implements MatchingEngine.MatchListener {
+        @Override
+        public void onAck(long clientOrderId, long orderId, String status, long tsIn) {}
+
+        @Override
+        public void onFill(long clientOrderId, long restingOrderId, long tradeId, int quantity, long price, long tsIn) {}
+
+        @Override
+        public void onMarketData(String instrument, long bidPrice, long askPrice) {}
+    }
+
+    private static void startDaemon(Runnable task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
     }
 }
@@ -9,14 +9,14 @@ import java.util.Random;
  * simulated best bid and ask to the console at regular intervals.
  */
 public final class MarketDataFeeder implements Runnable {
-    private final Sequencer sequencer;
+    private final EventPublisher sequencer;
     private final String instrument;
     private final long intervalMillis;
     private volatile boolean running = true;
     private final Random random = new Random();
     private long lastPrice = 10000L; // start at 100.00 in ticks
 
-    public MarketDataFeeder(Sequencer sequencer, String instrument, long intervalMillis) {
+    public MarketDataFeeder(EventPublisher sequencer, String instrument, long intervalMillis) {
         this.sequencer = sequencer;
         this.instrument = instrument;
         this.intervalMillis = intervalMillis;
@@ -40,10 +40,7 @@ public final class MarketDataFeeder implements Runnable {
             long bid = lastPrice + delta - 1; // bid slightly below mid
             long ask = lastPrice + delta + 1; // ask slightly above mid
             lastPrice = (bid + ask) / 2;
-            long seq = System.nanoTime();
-            long tsIn = seq;
-            MarketDataEvent event = new MarketDataEvent(seq, tsIn, instrument, bid, ask);
-            sequencer.publish(event);
+            sequencer.publishMarketData(System.nanoTime(), instrument, bid, ask);
         }
     }
 }
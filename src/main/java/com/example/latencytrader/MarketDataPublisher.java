@@ -0,0 +1,291 @@
+package com.example.latencytrader;
+
+import org.agrona.ExpandableArrayBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.MessageHandler;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.broadcast.BroadcastBufferDescriptor;
+import org.agrona.concurrent.broadcast.BroadcastReceiver;
+import org.agrona.concurrent.broadcast.BroadcastTransmitter;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Publishes the state of the engine's own order books: top of book (L1) and
+ * the best {@code depth} price levels per side (L2), per instrument.
+ *
+ * <p>The engine reports every book it changes through {@link #onBookChanged}
+ * and calls {@link #onBatchEnd()} after each sequenced batch.  Only then is
+ * each changed book read, once, and compared with the image last published
+ * for it; a message is sent only if the levels actually differ.  Any number
+ * of changes to a book within a batch is therefore conflated into at most one
+ * L1 and one L2 message.</p>
+ *
+ * <p>Messages are written to an Agrona broadcast buffer, a one-to-many local
+ * transport: any number of {@link Subscriber}s read the same stream without
+ * slowing the matching thread.  A subscriber that falls a full buffer behind
+ * is lapped and skips to the latest messages.  Because every message carries
+ * the complete image of the instrument's top levels rather than a delta, a
+ * lapped subscriber is current again for an instrument as soon as that
+ * instrument next changes.  Conflation is per batch only: a subscriber that
+ * is behind but not lapped still reads one image per batch that changed the
+ * instrument, including images already superseded by later ones.</p>
+ *
+ * <p>Message layouts, in native byte order:</p>
+ * <ul>
+ *   <li>{@link #TOP_OF_BOOK_MSG}: bid price, bid quantity, ask price, ask
+ *   quantity (longs; a quantity of zero means that side is empty), then the
+ *   instrument as a length-prefixed ASCII string.</li>
+ *   <li>{@link #DEPTH_MSG}: bid level count and ask level count (ints), then a
+ *   (price, quantity) pair of longs per bid level and per ask level, best
+ *   first, then the instrument.  Only sent when {@code depth > 1}.</li>
+ * </ul>
+ *
+ * <p>{@link #onBookChanged} and {@link #onBatchEnd()} must be called on the
+ * matching thread.</p>
+ */
+public final class MarketDataPublisher {
+    static final int TOP_OF_BOOK_MSG = 1;
+    static final int DEPTH_MSG = 2;
+    static final int TOP_OF_BOOK_INSTRUMENT_OFFSET = 32;
+    static final int DEPTH_LEVELS_OFFSET = 8;
+    static final int LEVEL_LENGTH = 16;
+
+    private final int depth;
+    private final UnsafeBuffer broadcastBuffer;
+    private final BroadcastTransmitter transmitter;
+    private final ExpandableArrayBuffer message = new ExpandableArrayBuffer(256);
+    /** Images indexed by instrument ID, grown as new instruments change. */
+    private BookImage[] images = new BookImage[16];
+    private final List<BookImage> changed = new ArrayList<>();
+
+    /**
+     * Creates a publisher of {@code depth} levels per side over a broadcast
+     * buffer of {@code capacity} bytes, which must be a power of two.
+     */
+    public MarketDataPublisher(int depth, int capacity) {
+        if (depth <= 0) {
+            throw new IllegalArgumentException("depth must be positive: " + depth);
+        }
+        this.depth = depth;
+        this.broadcastBuffer = new UnsafeBuffer(
+                ByteBuffer.allocateDirect(capacity + BroadcastBufferDescriptor.TRAILER_LENGTH));
+        this.transmitter = new BroadcastTransmitter(broadcastBuffer);
+    }
+
+    /**
+     * Returns the number of levels published per side.
+     */
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * Creates a subscriber that receives messages transmitted from now on.
+     * Each subscriber must be polled by a single thread.
+     */
+    public Subscriber newSubscriber() {
+        return new Subscriber(new BroadcastReceiver(broadcastBuffer));
+    }
+
+    /**
+     * Records that {@code book} changed in the current batch.
+     */
+    void onBookChanged(int instrumentId, String instrument, OrderBook book) {
+        if (instrumentId >= images.length) {
+            images = Arrays.copyOf(images, Math.max(instrumentId + 1, images.length * 2));
+        }
+        BookImage image = images[instrumentId];
+        if (image == null) {
+            image = new BookImage(instrument, book, depth);
+            images[instrumentId] = image;
+        }
+        if (!image.changed) {
+            image.changed = true;
+            changed.add(image);
+        }
+    }
+
+    /**
+     * Publishes the new L1 and L2 state of every book changed in the batch.
+     */
+    void onBatchEnd() {
+        for (int i = 0; i < changed.size(); i++) {
+            BookImage image = changed.get(i);
+            image.changed = false;
+            publish(image);
+        }
+        changed.clear();
+    }
+
+    private void publish(BookImage image) {
+        OrderBook book = image.book;
+        int bidCount = book.depth(Side.BUY, depth, image.nextBidPrices, image.nextBidQuantities, null);
+        int askCount = book.depth(Side.SELL, depth, image.nextAskPrices, image.nextAskQuantities, null);
+        boolean topChanged = !sameLevels(image.bidPrices, image.bidQuantities, Math.min(image.bidCount, 1),
+                image.nextBidPrices, image.nextBidQuantities, Math.min(bidCount, 1))
+                || !sameLevels(image.askPrices, image.askQuantities, Math.min(image.askCount, 1),
+                image.nextAskPrices, image.nextAskQuantities, Math.min(askCount, 1));
+        boolean depthChanged = topChanged
+                || !sameLevels(image.bidPrices, image.bidQuantities, image.bidCount,
+                image.nextBidPrices, image.nextBidQuantities, bidCount)
+                || !sameLevels(image.askPrices, image.askQuantities, image.askCount,
+                image.nextAskPrices, image.nextAskQuantities, askCount);
+        image.swap(bidCount, askCount);
+        if (topChanged) {
+            transmitTopOfBook(image);
+        }
+        if (depthChanged && depth > 1) {
+            transmitDepth(image);
+        }
+    }
+
+    private void transmitTopOfBook(BookImage image) {
+        boolean hasBid = image.bidCount > 0;
+        boolean hasAsk = image.askCount > 0;
+        message.putLong(0, hasBid ? image.bidPrices[0] : 0);
+        message.putLong(8, hasBid ? image.bidQuantities[0] : 0);
+        message.putLong(16, hasAsk ? image.askPrices[0] : 0);
+        message.putLong(24, hasAsk ? image.askQuantities[0] : 0);
+        int length = TOP_OF_BOOK_INSTRUMENT_OFFSET
+                + message.putStringAscii(TOP_OF_BOOK_INSTRUMENT_OFFSET, image.instrument);
+        transmitter.transmit(TOP_OF_BOOK_MSG, message, 0, length);
+    }
+
+    private void transmitDepth(BookImage image) {
+        message.putInt(0, image.bidCount);
+        message.putInt(4, image.askCount);
+        int position = DEPTH_LEVELS_OFFSET;
+        for (int i = 0; i < image.bidCount; i++) {
+            message.putLong(position, image.bidPrices[i]);
+            message.putLong(position + 8, image.bidQuantities[i]);
+            position += LEVEL_LENGTH;
+        }
+        for (int i = 0; i < image.askCount; i++) {
+            message.putLong(position, image.askPrices[i]);
+            message.putLong(position + 8, image.askQuantities[i]);
+            position += LEVEL_LENGTH;
+        }
+        position += message.putStringAscii(position, image.instrument);
+        transmitter.transmit(DEPTH_MSG, message, 0, position);
+    }
+
+    private static boolean sameLevels(long[] prices, long[] quantities, int count,
+                                      long[] otherPrices, long[] otherQuantities, int otherCount) {
+        if (count != otherCount) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            if (prices[i] != otherPrices[i] || quantities[i] != otherQuantities[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Last published levels of one instrument, plus scratch arrays the next
+     * levels are read into before comparing.
+     */
+    private static final class BookImage {
+        final String instrument;
+        final OrderBook book;
+        boolean changed;
+        int bidCount;
+        int askCount;
+        long[] bidPrices;
+        long[] bidQuantities;
+        long[] askPrices;
+        long[] askQuantities;
+        long[] nextBidPrices;
+        long[] nextBidQuantities;
+        long[] nextAskPrices;
+        long[] nextAskQuantities;
+
+        BookImage(String instrument, OrderBook book, int depth) {
+            this.instrument = instrument;
+            this.book = book;
+            bidPrices = new long[depth];
+            bidQuantities = new long[depth];
+            askPrices = new long[depth];
+            askQuantities = new long[depth];
+            nextBidPrices = new long[depth];
+            nextBidQuantities = new long[depth];
+            nextAskPrices = new long[depth];
+            nextAskQuantities = new long[depth];
+        }
+
+        /** Makes the levels just read the published image. */
+        void swap(int newBidCount, int newAskCount) {
+            long[] t = bidPrices;
+            bidPrices = nextBidPrices;
+            nextBidPrices = t;
+            t = bidQuantities;
+            bidQuantities = nextBidQuantities;
+            nextBidQuantities = t;
+            t = askPrices;
+            askPrices = nextAskPrices;
+            nextAskPrices = t;
+            t = askQuantities;
+            askQuantities = nextAskQuantities;
+            nextAskQuantities = t;
+            bidCount = newBidCount;
+            askCount = newAskCount;
+        }
+    }
+
+    /**
+     * Reads the market data stream.  Each message is copied out of the
+     * broadcast buffer and checked for having been overwritten before it is
+     * handed on, so handlers always see a consistent message.
+     */
+    public static final class Subscriber {
+        private final BroadcastReceiver receiver;
+        private final ExpandableArrayBuffer scratch = new ExpandableArrayBuffer(256);
+
+        Subscriber(BroadcastReceiver receiver) {
+            this.receiver = receiver;
+        }
+
+        /**
+         * Hands every message available now to {@code handler} and returns the
+         * number handled.
+         */
+        public int poll(MessageHandler handler) {
+            int received = 0;
+            while (receiver.receiveNext()) {
+                int typeId = receiver.typeId();
+                int length = receiver.length();
+                scratch.putBytes(0, receiver.buffer(), receiver.offset(), length);
+                if (receiver.validate()) {
+                    handler.onMessage(typeId, scratch, 0, length);
+                    received++;
+                }
+            }
+            return received;
+        }
+
+        /**
+         * Returns how many times this subscriber fell a full buffer behind and
+         * skipped ahead.
+         */
+        public long lappedCount() {
+            return receiver.lappedCount();
+        }
+    }
+
+    /**
+     * Returns the instrument of a {@link #TOP_OF_BOOK_MSG} or {@link #DEPTH_MSG}
+     * message, allocating a string.  Intended for tools and tests.
+     */
+    static String instrument(int typeId, MutableDirectBuffer buffer, int index) {
+        if (typeId == TOP_OF_BOOK_MSG) {
+            return buffer.getStringAscii(index + TOP_OF_BOOK_INSTRUMENT_OFFSET);
+        }
+        int levels = buffer.getInt(index) + buffer.getInt(index + 4);
+        return buffer.getStringAscii(index + DEPTH_LEVELS_OFFSET + levels * LEVEL_LENGTH);
+    }
+}
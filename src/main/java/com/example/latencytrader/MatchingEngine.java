@@ -1,59 +1,138 @@
 package com.example.latencytrader;
 
-import java.util.ArrayList;
-import java.util.Deque;
-import java.util.List;
-import java.util.NavigableMap;
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+
+import java.nio.ByteOrder;
+import java.util.function.LongConsumer;
 
 /**
  * Core matching engine responsible for maintaining the order book, matching incoming
  * orders, and emitting acknowledgements and fills.  The engine is single
  * threaded: all calls to its public methods must be serialized on the same
  * thread in order to guarantee deterministic behaviour and avoid locks.
+ * Other threads observe the engine through an {@link EngineView}.
  */
 public final class MatchingEngine {
-    // Order books keyed by instrument.  Each instrument maintains its own bid/ask book.
-    private final java.util.Map<String, OrderBook> books = new java.util.HashMap<>();
+    // Order books indexed by instrument ID.  Each instrument maintains its own bid/ask book.
+    private final OrderBook[] books;
+    private final SymbolRegistry symbols;
     private final RiskManager riskManager;
-    private final MatchListener listener;
+    private MatchListener listener;
+    private MarketDataPublisher marketData;
+    private EngineView view;
+    private LongConsumer orderDone;
 
-    // Track side per client order ID to support replace requests.  Real systems
-    // would use an order management component.
-    private final java.util.Map<Long, Side> sideMap = new java.util.HashMap<>();
+    // Server order ID, side, account and instrument IDs and resting order per live client
+    // order ID.  Used for robust cancel/replace.  Real systems would use an order
+    // management component.
+    private final OrderStateStore orderStates = new OrderStateStore(1024);
 
-    // Track account per client order ID to support replace requests.
-    private final java.util.Map<Long, String> accountMap = new java.util.HashMap<>();
+    // Recycled resting orders, chained through Order.next while in the pool.
+    private Order freeOrders;
 
-    // Track instrument per client order ID.
-    private final java.util.Map<Long, String> instrumentMap = new java.util.HashMap<>();
+    // Reused by every writeSnapshot so capturing a snapshot does not allocate.
+    private final SnapshotEncoder snapshotEncoder = new SnapshotEncoder();
 
-    // Map client order ID to server-assigned order ID.  Used for robust cancel/replace.
-    private final java.util.Map<Long, Long> clientToServerIdMap = new java.util.HashMap<>();
+    static final ByteOrder SNAPSHOT_BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+    /** Bytes per resting order in a snapshot. */
+    static final int SNAPSHOT_ORDER_LENGTH = 42;
 
     // simple order ID generator for accepted orders
     private long nextOrderId = 1;
     private long nextTradeId = 1;
 
-    // Latest observed market prices per instrument.  For this MVP we track a
-    // single instrument and simply store the best bid/ask.
-    private volatile long lastBidPrice = 0;
-    private volatile long lastAskPrice = 0;
-
+    /**
+     * Creates an engine that shares {@code riskManager}'s {@link SymbolRegistry}:
+     * instruments and accounts are resolved to the registry's IDs, and the
+     * books are indexed by instrument ID.
+     */
     public MatchingEngine(RiskManager riskManager, MatchListener listener) {
         this.riskManager = riskManager;
         this.listener = listener;
+        this.symbols = riskManager.symbols();
+        this.books = new OrderBook[symbols.maxInstruments()];
+    }
+
+    /**
+     * Returns the registry that maps this engine's instruments and accounts to IDs.
+     */
+    public SymbolRegistry symbols() {
+        return symbols;
     }
 
     /**
-     * Returns the order book for inspection (read-only).  This method is
-     * primarily intended for use by components such as the market data feeder.
+     * Replaces the listener that receives acknowledgements, fills and market
+     * data.  Only call while no events are being processed, for example to
+     * silence output while state is rebuilt from a {@link Journal}.
      */
+    public void setListener(MatchListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Publishes the state of every book changed in a batch to
+     * {@code marketData} at the end of the batch.  Must be set before events
+     * are processed.
+     */
+    public void setMarketDataPublisher(MarketDataPublisher marketData) {
+        this.marketData = marketData;
+    }
+
+    /**
+     * Publishes the top of book of changed books and the positions of filled
+     * accounts to {@code view} at the end of every batch, for other threads to
+     * read.  Must be set before events are processed.
+     */
+    public void setView(EngineView view) {
+        this.view = view;
+    }
+
+    /**
+     * Reports the client order ID of every order that reaches a terminal state
+     * to {@code orderDone}: rejected, fully filled, cancelled, or left without
+     * a resting remainder.  An order replaced by cancel and new is only
+     * reported if the new order does not rest.  Nothing is reported while
+     * another live order uses the same client order ID.  Called on the
+     * matching thread; must be set before events are processed.
+     */
+    public void setOrderDoneListener(LongConsumer orderDone) {
+        this.orderDone = orderDone;
+    }
+
     /**
      * Returns the order book for the given instrument, creating it lazily if
      * necessary.
      */
     public OrderBook getOrderBook(String instrument) {
-        return books.computeIfAbsent(instrument, k -> new OrderBook());
+        return getOrderBook(symbols.instrumentId(instrument));
+    }
+
+    /**
+     * Returns the order book for the given instrument ID, creating it lazily if
+     * necessary.
+     */
+    OrderBook getOrderBook(int instrumentId) {
+        OrderBook book = books[instrumentId];
+        if (book == null) {
+            book = new TreeOrderBook();
+            books[instrumentId] = book;
+        }
+        return book;
+    }
+
+    /**
+     * Installs a specific order book implementation for an instrument, for
+     * example an {@link ArrayOrderBook} for instruments with a bounded tick
+     * range.  Must be called before the first order for the instrument is
+     * processed; instruments without a registered book get a {@link TreeOrderBook}.
+     */
+    public void registerOrderBook(String instrument, OrderBook book) {
+        int instrumentId = symbols.instrumentId(instrument);
+        if (books[instrumentId] != null) {
+            throw new IllegalStateException("Order book already exists for instrument " + instrument);
+        }
+        books[instrumentId] = book;
     }
     /**
      * Convenience method returning the default order book (used by tests).
@@ -63,17 +142,21 @@ public final class MatchingEngine {
     }
 
     /**
-     * Processes an incoming market data event.  Updates the internal best bid
-     * and ask prices and publishes the update to the listener.  In a real
+     * Processes an incoming market data event by publishing the update to the
+     * listener.  In a real
      * implementation this method might trigger order book recalculations,
      * strategy evaluations or risk checks.
      */
     public void onMarketData(MarketDataEvent event) {
-        // Update last seen market prices
-        this.lastBidPrice = event.bidPrice();
-        this.lastAskPrice = event.askPrice();
-        // Notify listener of the update
-        listener.onMarketData(event.instrument(), event.bidPrice(), event.askPrice());
+        onMarketData(event.seq(), event.tsIn(), event.instrument(), event.bidPrice(), event.askPrice());
+    }
+
+    /**
+     * Field-wise variant of {@link #onMarketData(MarketDataEvent)} used by the
+     * sequencer to dispatch from preallocated ring slots without allocating.
+     */
+    public void onMarketData(long seq, long tsIn, String instrument, long bidPrice, long askPrice) {
+        listener.onMarketData(instrument, bidPrice, askPrice);
     }
 
     /**
@@ -82,98 +165,109 @@ public final class MatchingEngine {
      * remaining quantity to the book as a resting order.
      */
     public void onNewOrder(OrderEvent event) {
-        // Pre-trade risk check
-        if (!riskManager.accept(event)) {
-            listener.onAck(event.clientOrderId(), -1, "REJECTED_RISK");
-            return;
-        }
+        onNewOrder(event.seq(), event.tsIn(), event.clientOrderId(), event.side(), event.quantity(),
+                event.price(), event.account(), event.instrument());
+    }
 
-        int qtyRemaining = event.quantity();
-        final boolean isBuy = event.side() == Side.BUY;
-        long price = event.price();
+    /**
+     * Field-wise variant of {@link #onNewOrder(OrderEvent)}.
+     */
+    public void onNewOrder(long seq, long tsIn, long clientOrderId, Side side, int quantity, long price,
+                           String account, String instrument) {
+        onNewOrder(seq, tsIn, clientOrderId, side, quantity, price,
+                symbols.accountId(account), symbols.instrumentId(instrument));
+    }
 
+    /**
+     * Variant of {@link #onNewOrder(OrderEvent)} taking {@link SymbolRegistry}
+     * IDs, used by the sequencer to dispatch from preallocated ring slots
+     * without allocating or hashing strings.
+     */
+    public void onNewOrder(long seq, long tsIn, long clientOrderId, Side side, int quantity, long price,
+                           int accountId, int instrumentId) {
         // Determine the book for this instrument
-        OrderBook book = getOrderBook(event.instrument());
-        // Match against resting orders on the opposite side
-        List<Fill> fills = new ArrayList<>();
-        if (isBuy) {
-            // buy order matches against lowest asks
-            NavigableMap<Long, Deque<Order>> asks = book.asks();
-            while (qtyRemaining > 0 && !asks.isEmpty()) {
-                Long bestAskPrice = asks.firstKey();
-                // For a market order (price == 0) or limit order with price >= best ask
-                if (price == 0 || price >= bestAskPrice) {
-                    Deque<Order> level = asks.get(bestAskPrice);
-                    Order resting = level.peekFirst();
-                    if (resting == null) {
-                        asks.pollFirstEntry();
-                        continue;
-                    }
-                    int matched = Math.min(qtyRemaining, resting.getQuantity());
-                    qtyRemaining -= matched;
-                    resting.setQuantity(resting.getQuantity() - matched);
-                    fills.add(new Fill(nextTradeId++, event.clientOrderId(), resting.getOrderId(), matched, bestAskPrice, event.account(), event.tsIn()));
-                    if (resting.getQuantity() == 0) {
-                        level.removeFirst();
-                        if (level.isEmpty()) {
-                            asks.remove(bestAskPrice);
-                        }
-                    }
-                } else {
-                    break;
-                }
+        OrderBook book = getOrderBook(instrumentId);
+
+        // Pre-trade risk checks, against the current top of book
+        RiskManager.Result risk = riskManager.check(accountId, side, quantity, price, book, tsIn);
+        if (risk != RiskManager.Result.ACCEPTED) {
+            listener.onAck(clientOrderId, -1, risk.status(), tsIn);
+            orderDone(clientOrderId);
+            return;
+        }
+
+        int qtyRemaining = quantity;
+        final boolean isBuy = side == Side.BUY;
+        if (price != 0 && !book.acceptsPrice(price)) {
+            listener.onAck(clientOrderId, -1, "REJECTED_PRICE", tsIn);
+            orderDone(clientOrderId);
+            return;
+        }
+        // Match against resting orders on the opposite side: buys lift the lowest
+        // asks, sells hit the highest bids
+        final Side contraSide = isBuy ? Side.SELL : Side.BUY;
+        // Side multiplier for position updates: positive for buys (long) and
+        // negative for sells (short)
+        final int sideMultiplier = isBuy ? 1 : -1;
+        boolean filled = false;
+        while (qtyRemaining > 0) {
+            Order resting = book.bestOrder(contraSide);
+            if (resting == null) {
+                break;
             }
-        } else {
-            // sell order matches against highest bids
-            NavigableMap<Long, Deque<Order>> bids = book.bids();
-            while (qtyRemaining > 0 && !bids.isEmpty()) {
-                Long bestBidPrice = bids.firstKey();
-                // For a market order (price == 0) or limit order with price <= best bid
-                if (price == 0 || price <= bestBidPrice) {
-                    Deque<Order> level = bids.get(bestBidPrice);
-                    Order resting = level.peekFirst();
-                    if (resting == null) {
-                        bids.pollFirstEntry();
-                        continue;
-                    }
-                    int matched = Math.min(qtyRemaining, resting.getQuantity());
-                    qtyRemaining -= matched;
-                    resting.setQuantity(resting.getQuantity() - matched);
-                    fills.add(new Fill(nextTradeId++, event.clientOrderId(), resting.getOrderId(), matched, bestBidPrice, event.account(), event.tsIn()));
-                    if (resting.getQuantity() == 0) {
-                        level.removeFirst();
-                        if (level.isEmpty()) {
-                            bids.remove(bestBidPrice);
-                        }
-                    }
-                } else {
-                    break;
+            long restingPrice = resting.getPrice();
+            // A market order (price == 0) matches any level; a limit order must cross
+            if (price != 0 && (isBuy ? price < restingPrice : price > restingPrice)) {
+                break;
+            }
+            int matched = Math.min(qtyRemaining, resting.getQuantity());
+            qtyRemaining -= matched;
+            filled = true;
+            long restingOrderId = resting.getOrderId();
+            int restingAccountId = resting.accountId;
+            book.fill(resting, matched);
+            riskManager.onOrderReduced(restingAccountId, contraSide, matched, restingPrice);
+            if (resting.getQuantity() == 0) {
+                // Fully filled resting orders are no longer cancellable
+                long restingClientOrderId = resting.getClientOrderId();
+                releaseOrder(resting);
+                if (orderStates.remove(restingClientOrderId, restingOrderId)) {
+                    orderDone(restingClientOrderId);
                 }
             }
+            // Both counterparties' positions move: the resting order's account
+            // takes the opposite side of the aggressor's.  Emit the fill straight
+            // away rather than buffering it.
+            riskManager.onFill(restingAccountId, matched, -sideMultiplier);
+            riskManager.onFill(accountId, matched, sideMultiplier);
+            if (view != null) {
+                view.onPositionChanged(restingAccountId);
+                view.onPositionChanged(accountId);
+            }
+            listener.onFill(clientOrderId, restingOrderId, nextTradeId++, matched, restingPrice, tsIn);
         }
-
-        // Emit fills
-        for (Fill f : fills) {
-            // Update positions for the account.  The side multiplier is positive for buys (long) and
-            // negative for sells (short).
-            riskManager.onFill(f.account, f.quantity, isBuy ? 1 : -1);
-            listener.onFill(f.clientOrderId, f.restingOrderId, f.tradeId, f.quantity, f.price, f.tsIn);
+        if (filled) {
+            bookChanged(instrumentId, book);
         }
 
-        // If quantity remains, add to book as a new resting order
-        if (qtyRemaining > 0) {
+        // If quantity remains, add to book as a new resting order.  A market order
+        // remainder is cancelled if the book cannot hold an order at price zero.
+        if (qtyRemaining > 0 && price == 0 && !book.acceptsPrice(price)) {
+            listener.onAck(clientOrderId, -1, filled ? "PARTIALLY_FILLED" : "REJECTED", tsIn);
+            orderDone(clientOrderId);
+        } else if (qtyRemaining > 0) {
             long assignedId = nextOrderId++;
-            Order resting = new Order(assignedId, event.clientOrderId(), event.side(), qtyRemaining, price, event.tsIn());
+            Order resting = acquireOrder(assignedId, clientOrderId, side, qtyRemaining, price, tsIn, accountId);
             book.add(resting);
+            riskManager.onOrderRested(accountId, side, qtyRemaining, price);
+            bookChanged(instrumentId, book);
             // Track the side, account and instrument of the order for future replaces
-            sideMap.put(event.clientOrderId(), event.side());
-            accountMap.put(event.clientOrderId(), event.account());
-            instrumentMap.put(event.clientOrderId(), event.instrument());
-            clientToServerIdMap.put(event.clientOrderId(), assignedId);
-            listener.onAck(event.clientOrderId(), assignedId, fills.isEmpty() ? "NEW_ACCEPTED" : "PARTIALLY_FILLED", event.tsIn());
+            orderStates.add(clientOrderId, assignedId, side, accountId, instrumentId).order = resting;
+            listener.onAck(clientOrderId, assignedId, filled ? "PARTIALLY_FILLED" : "NEW_ACCEPTED", tsIn);
         } else {
             // fully filled
-            listener.onAck(event.clientOrderId(), -1, fills.isEmpty() ? "REJECTED" : "FILLED", event.tsIn());
+            listener.onAck(clientOrderId, -1, filled ? "FILLED" : "REJECTED", tsIn);
+            orderDone(clientOrderId);
         }
     }
 
@@ -182,22 +276,26 @@ public final class MatchingEngine {
      * removes it if found.  Emits an acknowledgement indicating success or failure.
      */
     public void onCancel(CancelEvent event) {
-        Long serverOrderId = clientToServerIdMap.get(event.clientOrderId());
-        boolean removed = false;
-        if (serverOrderId != null) {
-            String instrument = instrumentMap.get(event.clientOrderId());
-            OrderBook book = getBook(instrument);
-            removed = book.remove(serverOrderId);
-        }
-        if (removed) {
-            listener.onAck(event.clientOrderId(), serverOrderId, "CANCELLED", event.tsIn());
+        onCancel(event.seq(), event.tsIn(), event.clientOrderId());
+    }
+
+    /**
+     * Field-wise variant of {@link #onCancel(CancelEvent)}.
+     */
+    public void onCancel(long seq, long tsIn, long clientOrderId) {
+        OrderStateStore.Entry state = orderStates.get(clientOrderId);
+        OrderBook book = state == null ? null : getOrderBook(state.instrumentId);
+        if (book != null && book.remove(state.serverOrderId)) {
+            bookChanged(state.instrumentId, book);
+            Order order = state.order;
+            riskManager.onOrderReduced(order.accountId, order.getSide(), order.getQuantity(), order.getPrice());
+            listener.onAck(clientOrderId, state.serverOrderId, "CANCELLED", tsIn);
             // Remove tracked state
-            sideMap.remove(event.clientOrderId());
-            accountMap.remove(event.clientOrderId());
-            instrumentMap.remove(event.clientOrderId());
-            clientToServerIdMap.remove(event.clientOrderId());
+            releaseOrder(order);
+            orderStates.remove(clientOrderId);
+            orderDone(clientOrderId);
         } else {
-            listener.onAck(event.clientOrderId(), -1, "CANCEL_REJECT", event.tsIn());
+            listener.onAck(clientOrderId, -1, "CANCEL_REJECT", tsIn);
         }
     }
 
@@ -205,61 +303,225 @@ public final class MatchingEngine {
      * Processes a replace request.  Implemented as a cancel followed by a new order.
      */
     public void onReplace(ReplaceEvent event) {
-        Long serverOrderId = clientToServerIdMap.get(event.clientOrderId());
-        Side originalSide = sideMap.get(event.clientOrderId());
-        String originalAccount = accountMap.get(event.clientOrderId());
-        String originalInstrument = instrumentMap.get(event.clientOrderId());
-        if (serverOrderId == null || originalSide == null || originalAccount == null || originalInstrument == null) {
-            listener.onAck(event.clientOrderId(), -1, "REPLACE_REJECT", event.tsIn());
+        onReplace(event.seq(), event.tsIn(), event.clientOrderId(), event.newQuantity(), event.newPrice());
+    }
+
+    /**
+     * Field-wise variant of {@link #onReplace(ReplaceEvent)}.
+     */
+    public void onReplace(long seq, long tsIn, long clientOrderId, int newQuantity, long newPrice) {
+        OrderStateStore.Entry state = orderStates.get(clientOrderId);
+        if (state == null) {
+            listener.onAck(clientOrderId, -1, "REPLACE_REJECT", tsIn);
             return;
         }
+        long serverOrderId = state.serverOrderId;
+        Side originalSide = state.side;
+        int originalAccount = state.accountId;
+        int originalInstrument = state.instrumentId;
         // Attempt in-place modification: update price and quantity on the existing order
         // Determine the book based on the original instrument
-        OrderBook book = getBook(originalInstrument);
-        boolean modified = book.modify(serverOrderId, event.newPrice(), event.newQuantity());
+        OrderBook book = getOrderBook(originalInstrument);
+        if (newPrice != 0 && !book.acceptsPrice(newPrice)) {
+            listener.onAck(clientOrderId, -1, "REPLACE_REJECT", tsIn);
+            return;
+        }
+        // The replaced order is checked as if new, without the exposure of the order it replaces
+        Order order = state.order;
+        int oldQuantity = order.getQuantity();
+        long oldPrice = order.getPrice();
+        riskManager.onOrderReduced(originalAccount, originalSide, oldQuantity, oldPrice);
+        if (riskManager.check(originalAccount, originalSide, newQuantity, newPrice, book, tsIn) != RiskManager.Result.ACCEPTED) {
+            riskManager.onOrderRested(originalAccount, originalSide, oldQuantity, oldPrice);
+            listener.onAck(clientOrderId, -1, "REPLACE_REJECT", tsIn);
+            return;
+        }
+        boolean modified = book.modify(serverOrderId, newPrice, newQuantity);
         if (modified) {
+            bookChanged(originalInstrument, book);
+            riskManager.onOrderRested(originalAccount, originalSide, order.getQuantity(), order.getPrice());
             // Send acknowledgement using existing server order ID
-            listener.onAck(event.clientOrderId(), serverOrderId, "REPLACED", event.tsIn());
+            listener.onAck(clientOrderId, serverOrderId, "REPLACED", tsIn);
         } else {
             // Fall back to cancel + new if modification not possible
             boolean removed = book.remove(serverOrderId);
             if (removed) {
-                sideMap.remove(event.clientOrderId());
-                accountMap.remove(event.clientOrderId());
-                instrumentMap.remove(event.clientOrderId());
-                clientToServerIdMap.remove(event.clientOrderId());
-                OrderEvent newOrder = new OrderEvent(event.seq(), event.tsIn(), event.clientOrderId(), originalSide, event.newQuantity(), event.newPrice(), originalAccount, originalInstrument);
-                onNewOrder(newOrder);
-                listener.onAck(event.clientOrderId(), -1, "REPLACED", event.tsIn());
+                bookChanged(originalInstrument, book);
+                releaseOrder(order);
+                orderStates.remove(clientOrderId);
+                onNewOrder(seq, tsIn, clientOrderId, originalSide, newQuantity, newPrice, originalAccount, originalInstrument);
+                listener.onAck(clientOrderId, -1, "REPLACED", tsIn);
             } else {
-                listener.onAck(event.clientOrderId(), -1, "REPLACE_REJECT", event.tsIn());
+                riskManager.onOrderRested(originalAccount, originalSide, oldQuantity, oldPrice);
+                listener.onAck(clientOrderId, -1, "REPLACE_REJECT", tsIn);
             }
         }
     }
 
     /**
-     * Small internal representation of a fill for convenience.
+     * Signals that the current batch of events has been processed.  Called by
+     * the {@link Sequencer} after the last event of every consumed batch so the
+     * listener can coalesce work, such as flushing output, once per batch, and
+     * so changed books are published to the {@link MarketDataPublisher} and
+     * the {@link EngineView}.
      */
-    private static final class Fill {
-        final long tradeId;
-        final long clientOrderId;
-        final long restingOrderId;
-        final int quantity;
-        final long price;
-        final String account;
-        final long tsIn;
-
-        Fill(long tradeId, long clientOrderId, long restingOrderId, int quantity, long price, String account, long tsIn) {
-            this.tradeId = tradeId;
-            this.clientOrderId = clientOrderId;
-            this.restingOrderId = restingOrderId;
-            this.quantity = quantity;
-            this.price = price;
-            this.account = account;
-            this.tsIn = tsIn;
+    public void onBatchEnd() {
+        if (marketData != null) {
+            marketData.onBatchEnd();
+        }
+        if (view != null) {
+            view.onBatchEnd();
+        }
+        listener.onBatchEnd();
+    }
+
+    private void orderDone(long clientOrderId) {
+        if (orderDone != null && orderStates.get(clientOrderId) == null) {
+            orderDone.accept(clientOrderId);
+        }
+    }
+
+    private void bookChanged(int instrumentId, OrderBook book) {
+        if (marketData != null) {
+            marketData.onBookChanged(instrumentId, symbols.instrument(instrumentId), book);
+        }
+        if (view != null) {
+            view.onBookChanged(instrumentId, book);
         }
     }
 
+    /**
+     * Writes the engine's complete state at {@code offset}: ID counters, the
+     * account names, every book's resting orders in priority order with their
+     * client order tracking state, and the risk manager's per-account state.
+     * Returns the offset just past the written state.  Orders refer to their
+     * account by its index in the name table, so each is a fixed
+     * {@link #SNAPSHOT_ORDER_LENGTH} bytes.  The buffer must be expandable or
+     * large enough.  Must be called on the matching thread; the cost is a
+     * single pass over the resting orders.
+     */
+    int writeSnapshot(MutableDirectBuffer buffer, int offset) {
+        buffer.putLong(offset, nextOrderId, SNAPSHOT_BYTE_ORDER);
+        buffer.putLong(offset + 8, nextTradeId, SNAPSHOT_BYTE_ORDER);
+        int accountCount = symbols.accountCount();
+        buffer.putInt(offset + 20, accountCount, SNAPSHOT_BYTE_ORDER);
+        int position = offset + 24;
+        for (int accountId = 0; accountId < accountCount; accountId++) {
+            position += buffer.putStringAscii(position, symbols.account(accountId), SNAPSHOT_BYTE_ORDER);
+        }
+        SnapshotEncoder encoder = snapshotEncoder;
+        encoder.buffer = buffer;
+        encoder.position = position;
+        int bookCount = 0;
+        for (int instrumentId = 0; instrumentId < books.length; instrumentId++) {
+            OrderBook book = books[instrumentId];
+            if (book == null) {
+                continue;
+            }
+            encoder.position += buffer.putStringAscii(encoder.position, symbols.instrument(instrumentId), SNAPSHOT_BYTE_ORDER);
+            int countOffset = encoder.position;
+            encoder.position += 4;
+            encoder.count = 0;
+            book.forEachOrder(encoder);
+            buffer.putInt(countOffset, encoder.count, SNAPSHOT_BYTE_ORDER);
+            bookCount++;
+        }
+        buffer.putInt(offset + 16, bookCount, SNAPSHOT_BYTE_ORDER);
+        encoder.buffer = null;
+        return riskManager.writeSnapshot(buffer, encoder.position);
+    }
+
+    /**
+     * Restores state written by {@link #writeSnapshot} into this engine, which
+     * must not have processed any events.  Books registered beforehand keep
+     * their implementation; other instruments get a {@link TreeOrderBook}.
+     * Returns the offset just past the snapshot.
+     */
+    int loadSnapshot(DirectBuffer buffer, int offset) {
+        nextOrderId = buffer.getLong(offset, SNAPSHOT_BYTE_ORDER);
+        nextTradeId = buffer.getLong(offset + 8, SNAPSHOT_BYTE_ORDER);
+        int bookCount = buffer.getInt(offset + 16, SNAPSHOT_BYTE_ORDER);
+        int[] accountIds = new int[buffer.getInt(offset + 20, SNAPSHOT_BYTE_ORDER)];
+        int position = offset + 24;
+        for (int i = 0; i < accountIds.length; i++) {
+            String account = buffer.getStringAscii(position, SNAPSHOT_BYTE_ORDER);
+            position += 4 + account.length();
+            accountIds[i] = symbols.accountId(account);
+        }
+        for (int b = 0; b < bookCount; b++) {
+            String instrument = buffer.getStringAscii(position, SNAPSHOT_BYTE_ORDER);
+            position += 4 + instrument.length();
+            int instrumentId = symbols.instrumentId(instrument);
+            OrderBook book = getOrderBook(instrumentId);
+            int orderCount = buffer.getInt(position, SNAPSHOT_BYTE_ORDER);
+            position += 4;
+            for (int i = 0; i < orderCount; i++) {
+                long orderId = buffer.getLong(position, SNAPSHOT_BYTE_ORDER);
+                long clientOrderId = buffer.getLong(position + 8, SNAPSHOT_BYTE_ORDER);
+                long price = buffer.getLong(position + 16, SNAPSHOT_BYTE_ORDER);
+                long tsIn = buffer.getLong(position + 24, SNAPSHOT_BYTE_ORDER);
+                int quantity = buffer.getInt(position + 32, SNAPSHOT_BYTE_ORDER);
+                Side side = buffer.getByte(position + 36) == 0 ? Side.BUY : Side.SELL;
+                boolean tracked = buffer.getByte(position + 37) != 0;
+                int accountId = accountIds[buffer.getInt(position + 38, SNAPSHOT_BYTE_ORDER)];
+                position += SNAPSHOT_ORDER_LENGTH;
+                Order order = acquireOrder(orderId, clientOrderId, side, quantity, price, tsIn, accountId);
+                book.add(order);
+                riskManager.onOrderRested(accountId, side, quantity, price);
+                if (tracked) {
+                    orderStates.add(clientOrderId, orderId, side, accountId, instrumentId).order = order;
+                }
+            }
+        }
+        return riskManager.loadSnapshot(buffer, position);
+    }
+
+    /**
+     * Encodes resting orders for {@link #writeSnapshot}, each with its
+     * account.  An order is marked as tracked only if it is still the order
+     * its client order ID refers to.
+     */
+    private final class SnapshotEncoder implements java.util.function.Consumer<Order> {
+        MutableDirectBuffer buffer;
+        int position;
+        int count;
+
+        @Override
+        public void accept(Order order) {
+            OrderStateStore.Entry state = orderStates.get(order.getClientOrderId());
+            boolean tracked = state != null && state.order == order;
+            buffer.putLong(position, order.getOrderId(), SNAPSHOT_BYTE_ORDER);
+            buffer.putLong(position + 8, order.getClientOrderId(), SNAPSHOT_BYTE_ORDER);
+            buffer.putLong(position + 16, order.getPrice(), SNAPSHOT_BYTE_ORDER);
+            buffer.putLong(position + 24, order.getTsIn(), SNAPSHOT_BYTE_ORDER);
+            buffer.putInt(position + 32, order.getQuantity(), SNAPSHOT_BYTE_ORDER);
+            buffer.putByte(position + 36, (byte) (order.getSide() == Side.BUY ? 0 : 1));
+            buffer.putByte(position + 37, (byte) (tracked ? 1 : 0));
+            buffer.putInt(position + 38, order.accountId, SNAPSHOT_BYTE_ORDER);
+            position += SNAPSHOT_ORDER_LENGTH;
+            count++;
+        }
+    }
+
+    private Order acquireOrder(long orderId, long clientOrderId, Side side, int quantity, long price, long tsIn,
+                               int accountId) {
+        Order order = freeOrders;
+        if (order == null) {
+            order = new Order(orderId, clientOrderId, side, quantity, price, tsIn);
+        } else {
+            freeOrders = order.next;
+            order.next = null;
+            order.init(orderId, clientOrderId, side, quantity, price, tsIn);
+        }
+        order.accountId = accountId;
+        return order;
+    }
+
+    private void releaseOrder(Order order) {
+        order.next = freeOrders;
+        freeOrders = order;
+    }
+
     /**
      * Listener interface used by the matching engine to emit acknowledgements and fills.
      * The implementation may log to the console, publish to network subscribers, or
@@ -274,5 +536,11 @@ public final class MatchingEngine {
          * update UI components.
          */
         default void onMarketData(String instrument, long bidPrice, long askPrice) {}
+        /**
+         * Invoked after the last event of a sequenced batch.  Listeners may
+         * buffer output from the other callbacks and flush it here, once per
+         * batch rather than once per message.
+         */
+        default void onBatchEnd() {}
     }
 }
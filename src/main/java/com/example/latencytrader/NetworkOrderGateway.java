@@ -1,12 +1,10 @@
 package com.example.latencytrader;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.net.SocketException;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * A network-based order gateway that listens for incoming TCP connections on a
@@ -17,38 +15,76 @@ import java.util.regex.Pattern;
  * <pre>
  * NEW,clOrdId=123,side=B,qty=100,px=101.25,acct=ABC,sym=XYZ
  * CXL,clOrdId=123
- * RPL,clOrdId=123,qty=50,px=101.00
+ * RPL,clOrdId=123,qty=50,px=101.00[,sym=XYZ]
  * </pre>
+ *
+ * <p>Each session parses its lines from bytes with its own
+ * {@link TextCommandParser}.</p>
+ *
+ * <p>Each client session runs on its own thread, either a platform thread or,
+ * on Java 21, a virtual thread (see {@link SessionThreads}).  Virtual threads
+ * suit large numbers of low-rate sessions; {@link NioOrderGateway} gives the
+ * tightest control over I/O threads.</p>
  */
 public final class NetworkOrderGateway implements Runnable {
-    private final Sequencer sequencer;
+    private final EventPublisher sequencer;
     private final int port;
+    private final ThreadFactory sessionThreads;
+    private final TickSizes tickSizes;
     private volatile boolean running = true;
+    private volatile ServerSocket server;
 
-    // Regex patterns for parsing commands
-    private static final Pattern NEW_PATTERN = Pattern.compile(
-            "NEW,clOrdId=(\\d+),side=([BS]),qty=(\\d+),px=([0-9.]+),acct=([A-Za-z0-9]+),sym=([A-Za-z0-9]+)");
-    private static final Pattern CXL_PATTERN = Pattern.compile(
-            "CXL,clOrdId=(\\d+)");
-    private static final Pattern RPL_PATTERN = Pattern.compile(
-            "RPL,clOrdId=(\\d+),qty=(\\d+),px=([0-9.]+)");
+    public NetworkOrderGateway(EventPublisher sequencer, int port) {
+        this(sequencer, port, SessionThreads.PLATFORM);
+    }
 
-    public NetworkOrderGateway(Sequencer sequencer, int port) {
+    public NetworkOrderGateway(EventPublisher sequencer, int port, SessionThreads sessionThreads) {
+        this(sequencer, port, sessionThreads, TickSizes.DEFAULT);
+    }
+
+    public NetworkOrderGateway(EventPublisher sequencer, int port, SessionThreads sessionThreads, TickSizes tickSizes) {
         this.sequencer = sequencer;
         this.port = port;
+        this.sessionThreads = sessionThreads.factory("OrderClientHandler");
+        this.tickSizes = tickSizes;
     }
 
+    /**
+     * Stops accepting connections.  Open sessions run until their clients
+     * disconnect.
+     */
     public void stop() {
         running = false;
+        ServerSocket socket = server;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Returns the bound port, which differs from the configured port when that
+     * was 0.  Returns -1 until the gateway is listening.
+     */
+    public int localPort() {
+        ServerSocket socket = server;
+        return socket == null ? -1 : socket.getLocalPort();
     }
 
     @Override
     public void run() {
-        try (ServerSocket server = new ServerSocket(port)) {
+        try (ServerSocket socket = new ServerSocket(port)) {
+            server = socket;
             System.out.println("NetworkOrderGateway listening on port " + port);
             while (running) {
-                Socket client = server.accept();
-                new Thread(() -> handleClient(client), "OrderClientHandler").start();
+                Socket client = socket.accept();
+                sessionThreads.newThread(() -> handleClient(client)).start();
+            }
+        } catch (SocketException e) {
+            if (running) {
+                throw new RuntimeException("Network order gateway failed", e);
             }
         } catch (IOException e) {
             throw new RuntimeException("Failed to start network order gateway", e);
@@ -56,55 +92,11 @@ public final class NetworkOrderGateway implements Runnable {
     }
 
     private void handleClient(Socket client) {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(client.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-                if (line.isEmpty()) {
-                    continue;
-                }
-                try {
-                    processLine(line);
-                } catch (Exception ex) {
-                    System.err.println("Invalid message: " + line + "; " + ex.getMessage());
-                }
-            }
+        LineFrameDecoder decoder = new LineFrameDecoder(sequencer, new TextCommandParser(tickSizes, null));
+        try (Socket socket = client) {
+            decoder.readFrom(socket.getInputStream());
         } catch (IOException e) {
             System.err.println("Client disconnected: " + e.getMessage());
         }
     }
-
-    private void processLine(String line) {
-        Matcher m;
-        if ((m = NEW_PATTERN.matcher(line)).matches()) {
-            long clOrdId = Long.parseLong(m.group(1));
-            Side side = m.group(2).equals("B") ? Side.BUY : Side.SELL;
-            int qty = Integer.parseInt(m.group(3));
-            double px = Double.parseDouble(m.group(4));
-            long priceTicks = (long) Math.round(px * 100);
-            String account = m.group(5);
-            String instrument = m.group(6);
-            long seq = System.nanoTime();
-            long tsIn = seq;
-            OrderEvent evt = new OrderEvent(seq, tsIn, clOrdId, side, qty, priceTicks, account, instrument);
-            sequencer.publish(evt);
-        } else if ((m = CXL_PATTERN.matcher(line)).matches()) {
-            long clOrdId = Long.parseLong(m.group(1));
-            long seq = System.nanoTime();
-            long tsIn = seq;
-            CancelEvent evt = new CancelEvent(seq, tsIn, clOrdId);
-            sequencer.publish(evt);
-        } else if ((m = RPL_PATTERN.matcher(line)).matches()) {
-            long clOrdId = Long.parseLong(m.group(1));
-            int qty = Integer.parseInt(m.group(2));
-            double px = Double.parseDouble(m.group(3));
-            long priceTicks = (long) Math.round(px * 100);
-            long seq = System.nanoTime();
-            long tsIn = seq;
-            ReplaceEvent evt = new ReplaceEvent(seq, tsIn, clOrdId, qty, priceTicks, null);
-            sequencer.publish(evt);
-        } else {
-            throw new IllegalArgumentException("Unrecognized command");
-        }
-    }
 }
@@ -0,0 +1,246 @@
+package com.example.latencytrader;
+
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * A non-blocking order gateway that multiplexes all client sessions over a
+ * fixed number of I/O threads, each running its own {@link Selector} event
+ * loop.  The I/O thread count is set independently of the number of sessions,
+ * unlike {@link NetworkOrderGateway} which dedicates a thread to every client.
+ *
+ * <p>The thread running {@link #run()} accepts connections and hands them to
+ * the I/O loops round-robin.  Each session reads into its own direct buffer and
+ * decodes complete frames with a {@link FrameDecoder}; partial frames stay at
+ * the start of the buffer until the rest arrives.  Decoded events are staged
+ * in a per-loop {@link EventBatch} and published to the {@link Sequencer} once
+ * per selector wake-up, so a burst read from many sessions costs a single ring
+ * claim.</p>
+ */
+public final class NioOrderGateway implements Runnable {
+    /** Receive buffer size per session; must exceed the longest frame or line. */
+    static final int RECEIVE_BUFFER_SIZE = 64 * 1024;
+    /** Events staged per I/O loop before a batch is published early. */
+    static final int BATCH_SIZE = 256;
+
+    /**
+     * Wire protocols the gateway can serve.
+     */
+    public enum Protocol {
+        /** Newline-delimited text commands, as read by {@link NetworkOrderGateway}. */
+        LINE((publisher, tickSizes) -> new LineFrameDecoder(publisher, new TextCommandParser(tickSizes, null))),
+        /** Fixed-layout {@link BinaryProtocol} frames, with prices already in ticks. */
+        BINARY((publisher, tickSizes) -> new BinaryFrameDecoder(publisher));
+
+        private final BiFunction<EventPublisher, TickSizes, FrameDecoder> decoderFactory;
+
+        Protocol(BiFunction<EventPublisher, TickSizes, FrameDecoder> decoderFactory) {
+            this.decoderFactory = decoderFactory;
+        }
+    }
+
+    private final EventPublisher sequencer;
+    private final int port;
+    private final Protocol protocol;
+    private final TickSizes tickSizes;
+    private final IoLoop[] loops;
+    private volatile boolean running = true;
+    private volatile ServerSocketChannel server;
+
+    public NioOrderGateway(EventPublisher sequencer, int port, int ioThreads, Protocol protocol) {
+        this(sequencer, port, ioThreads, protocol, TickSizes.DEFAULT);
+    }
+
+    /**
+     * Creates a gateway whose text sessions convert prices with {@code tickSizes}.
+     */
+    public NioOrderGateway(EventPublisher sequencer, int port, int ioThreads, Protocol protocol, TickSizes tickSizes) {
+        if (ioThreads < 1) {
+            throw new IllegalArgumentException("ioThreads must be at least 1");
+        }
+        this.sequencer = sequencer;
+        this.port = port;
+        this.protocol = protocol;
+        this.tickSizes = tickSizes;
+        this.loops = new IoLoop[ioThreads];
+    }
+
+    /**
+     * Stops accepting connections and shuts down the I/O loops, closing all
+     * sessions.
+     */
+    public void stop() {
+        running = false;
+        ServerSocketChannel channel = server;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+        for (IoLoop loop : loops) {
+            if (loop != null) {
+                loop.selector.wakeup();
+            }
+        }
+    }
+
+    /**
+     * Returns the bound port, which differs from the configured port when that
+     * was 0.  Returns -1 until the gateway is listening.
+     */
+    public int localPort() {
+        ServerSocketChannel channel = server;
+        try {
+            return channel == null ? -1 : ((InetSocketAddress) channel.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void run() {
+        try (ServerSocketChannel channel = ServerSocketChannel.open()) {
+            channel.bind(new InetSocketAddress(port));
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new IoLoop(Selector.open());
+                new Thread(loops[i], "NioOrderGateway-io-" + i).start();
+            }
+            server = channel;
+            System.out.println("NioOrderGateway (" + protocol + ", " + loops.length + " I/O threads) listening on port " + port);
+            int next = 0;
+            while (running) {
+                SocketChannel client = channel.accept();
+                loops[next].register(client);
+                next = (next + 1) % loops.length;
+            }
+        } catch (ClosedChannelException e) {
+            // stop() closed the server socket
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to start NIO order gateway", e);
+        } finally {
+            stop();
+        }
+    }
+
+    /**
+     * A selector event loop serving a subset of the sessions.
+     */
+    private final class IoLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+        private final EventBatch batch = new EventBatch(sequencer, BATCH_SIZE);
+        private final Consumer<SelectionKey> onReady = this::onReady;
+
+        IoLoop(Selector selector) {
+            this.selector = selector;
+        }
+
+        void register(SocketChannel client) {
+            pending.add(client);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try (Selector s = selector) {
+                while (running) {
+                    registerPending();
+                    s.select(onReady);
+                    batch.flush();
+                }
+                for (SelectionKey key : s.keys()) {
+                    closeQuietly(key);
+                }
+            } catch (IOException e) {
+                System.err.println("I/O loop failed: " + e.getMessage());
+            }
+        }
+
+        private void registerPending() {
+            SocketChannel client;
+            while ((client = pending.poll()) != null) {
+                try {
+                    client.configureBlocking(false);
+                    client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    client.register(selector, SelectionKey.OP_READ,
+                            new Session(client, protocol.decoderFactory.apply(batch, tickSizes)));
+                } catch (IOException e) {
+                    System.err.println("Failed to register client: " + e.getMessage());
+                    try {
+                        client.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        }
+
+        private void onReady(SelectionKey key) {
+            Session session = (Session) key.attachment();
+            try {
+                if (!session.read()) {
+                    closeQuietly(key);
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Client disconnected: " + e.getMessage());
+                closeQuietly(key);
+            }
+        }
+
+        private void closeQuietly(SelectionKey key) {
+            key.cancel();
+            try {
+                key.channel().close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Per-connection receive state.
+     */
+    private static final class Session {
+        private final SocketChannel channel;
+        private final FrameDecoder decoder;
+        private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(RECEIVE_BUFFER_SIZE);
+        private final UnsafeBuffer view = new UnsafeBuffer(receiveBuffer);
+
+        Session(SocketChannel channel, FrameDecoder decoder) {
+            this.channel = channel;
+            this.decoder = decoder;
+        }
+
+        /**
+         * Reads what is available and decodes complete frames.  Returns false
+         * once the peer has closed the connection.
+         */
+        boolean read() throws IOException {
+            int read = channel.read(receiveBuffer);
+            if (read < 0) {
+                return false;
+            }
+            int available = receiveBuffer.position();
+            int consumed = decoder.decode(view, 0, available);
+            // Keep any partial frame at the start of the buffer
+            receiveBuffer.limit(available).position(consumed);
+            receiveBuffer.compact();
+            if (!receiveBuffer.hasRemaining()) {
+                throw new IOException("Frame exceeds receive buffer");
+            }
+            return true;
+        }
+    }
+}
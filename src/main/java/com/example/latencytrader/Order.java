@@ -4,18 +4,34 @@ package com.example.latencytrader;
  * Represents a resting order inside the order book.  Once an order is accepted it
  * is converted into this lightweight mutable representation used by the matching
  * engine.  Mutable state allows quantity to be decremented on fills without
- * allocations.  This class is deliberately kept simple; risk checks and
- * persistence are handled elsewhere.
+ * allocations.  Instances are recycled by the matching engine once they leave
+ * the book, so identity fields are reassigned through {@link #init}.  This class
+ * is deliberately kept simple; risk checks and persistence are handled elsewhere.
  */
 public final class Order {
-    private final long orderId;
-    private final long clientOrderId;
-    private final Side side;
+    private long orderId;
+    private long clientOrderId;
+    private Side side;
     private int quantity;
     private long price;
-    private final long tsIn;
+    private long tsIn;
+
+    // Intrusive list links maintained by PriceLevel so that books can unlink an
+    // order in O(1) without allocating list nodes.
+    Order prev;
+    Order next;
+    PriceLevel level;
+    /** {@link SymbolRegistry} ID of the owning account, set by the matching engine. */
+    int accountId;
 
     public Order(long orderId, long clientOrderId, Side side, int quantity, long price, long tsIn) {
+        init(orderId, clientOrderId, side, quantity, price, tsIn);
+    }
+
+    /**
+     * Reinitialises a pooled order for reuse.
+     */
+    void init(long orderId, long clientOrderId, Side side, int quantity, long price, long tsIn) {
         this.orderId = orderId;
         this.clientOrderId = clientOrderId;
         this.side = side;
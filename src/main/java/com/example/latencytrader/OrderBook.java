@@ -1,122 +1,113 @@
 package com.example.latencytrader;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
-import java.util.NavigableMap;
-import java.util.TreeMap;
+import java.util.function.Consumer;
 
 /**
- * Simple in-memory order book keyed by price.  Uses separate maps for bids and
- * asks so that the best price on either side can be accessed efficiently.
+ * Price-time priority order book for a single instrument.  The matching engine
+ * works exclusively through this interface so that the book representation can
+ * be chosen per instrument (see {@link MatchingEngine#registerOrderBook}).
  *
- * <p>Bids are stored in descending order (highest price first) and asks are stored
- * in ascending order (lowest price first).  Each price level holds a FIFO queue
- * of {@link Order} instances to enforce price-time priority.</p>
+ * <p>Two implementations are provided: {@link TreeOrderBook}, which supports an
+ * unbounded price range, and {@link ArrayOrderBook}, which indexes price levels
+ * in an array for instruments with a bounded tick range.</p>
+ *
+ * <p>Implementations are not thread-safe and must only be used from the
+ * matching thread.</p>
  */
-public final class OrderBook {
-    /** Map of bid price to queue of resting orders. */
-    private final NavigableMap<Long, Deque<Order>> bids = new TreeMap<>((a, b) -> Long.compare(b, a));
-    /** Map of ask price to queue of resting orders. */
-    private final NavigableMap<Long, Deque<Order>> asks = new TreeMap<>();
+public interface OrderBook {
+    /** Returned by {@link #bestBidPrice()} and {@link #bestAskPrice()} when that side is empty. */
+    long NO_PRICE = Long.MIN_VALUE;
 
     /**
      * Adds a new resting order to the book.  The order must already have been
      * validated by pre-trade risk checks.
      */
-    public void add(Order order) {
-        NavigableMap<Long, Deque<Order>> map = order.getSide() == Side.BUY ? bids : asks;
-        map.computeIfAbsent(order.getPrice(), p -> new ArrayDeque<>()).addLast(order);
-    }
+    void add(Order order);
 
     /**
      * Removes an order from the book completely.  This method is called when
-     * a cancel request is processed.  The order is searched by order ID; if not
-     * found, nothing is removed.  In a real system, order ID to position mapping
-     * should be used to locate orders faster.
+     * a cancel request is processed.  Returns {@code true} if the order was found.
      */
-    public boolean remove(long orderId) {
-        // search both sides; this is O(n) across all price levels but acceptable
-        for (NavigableMap<Long, Deque<Order>> side : new NavigableMap[]{bids, asks}) {
-            for (Deque<Order> deque : side.values()) {
-                for (Order ord : deque) {
-                    if (ord.getOrderId() == orderId) {
-                        deque.remove(ord);
-                        if (deque.isEmpty()) {
-                            side.values().removeIf(Deque::isEmpty);
-                        }
-                        return true;
-                    }
-                }
-            }
-        }
-        return false;
-    }
+    boolean remove(long orderId);
+
+    /**
+     * Modifies an existing order's price and quantity.  The order loses its
+     * time priority and is re-inserted at the back of the new price level.
+     * Returns {@code true} if the order was found and modified.
+     */
+    boolean modify(long orderId, long newPrice, int newQuantity);
 
     /**
-     * Modifies an existing order's price and quantity.  Locates the order by
-     * server-assigned ID, removes it from its current price level, applies
-     * the new values and re-inserts it at the back of the new price level
-     * queue.  Returns {@code true} if the order was found and modified.
+     * Returns the order at the head of the best price level on the given side,
+     * or {@code null} if that side is empty.
      */
-    public boolean modify(long orderId, long newPrice, int newQuantity) {
-        // Determine the side based on where the order is found
-        for (NavigableMap<Long, Deque<Order>> side : new NavigableMap[]{bids, asks}) {
-            for (Long priceKey : side.keySet()) {
-                Deque<Order> deque = side.get(priceKey);
-                for (Order ord : deque) {
-                    if (ord.getOrderId() == orderId) {
-                        // Remove from current queue
-                        deque.remove(ord);
-                        if (deque.isEmpty()) {
-                            side.remove(priceKey);
-                        }
-                        // Update quantity and price
-                        ord.setQuantity(newQuantity);
-                        ord.setPrice(newPrice);
-                        // Insert into new price level
-                        side.computeIfAbsent(newPrice, p -> new ArrayDeque<>()).addLast(ord);
-                        return true;
-                    }
-                }
-            }
-        }
-        return false;
+    Order bestOrder(Side side);
+
+    /**
+     * Applies a fill to a resting order, removing it from the book once its
+     * quantity is exhausted.  The order must be the one most recently returned
+     * by {@link #bestOrder(Side)} for its side.
+     */
+    void fill(Order order, int quantity);
+
+    /**
+     * Returns whether an order at the given price may rest in this book.
+     */
+    default boolean acceptsPrice(long price) {
+        return true;
     }
 
     /**
-     * Returns the best bid price or null if no bids are present.
+     * Returns the best bid price, or {@link #NO_PRICE} if no bids are present.
+     * Does not allocate; use this rather than {@link #bestBid()} on the
+     * matching path.
+     */
+    long bestBidPrice();
+
+    /**
+     * Returns the best ask price, or {@link #NO_PRICE} if no asks are present.
+     * Does not allocate.
+     */
+    long bestAskPrice();
+
+    /**
+     * Returns the best bid price or null if no bids are present.  Boxes the
+     * price; prefer {@link #bestBidPrice()} on hot paths.
      */
-    public Long bestBid() {
-        return bids.isEmpty() ? null : bids.firstKey();
+    default Long bestBid() {
+        long price = bestBidPrice();
+        return price == NO_PRICE ? null : price;
     }
 
     /**
-     * Returns the best ask price or null if no asks are present.
+     * Returns the best ask price or null if no asks are present.  Boxes the
+     * price; prefer {@link #bestAskPrice()} on hot paths.
      */
-    public Long bestAsk() {
-        return asks.isEmpty() ? null : asks.firstKey();
+    default Long bestAsk() {
+        long price = bestAskPrice();
+        return price == NO_PRICE ? null : price;
     }
 
     /**
      * Returns whether the book has any resting orders.
      */
-    public boolean isEmpty() {
-        return bids.isEmpty() && asks.isEmpty();
-    }
+    boolean isEmpty();
 
     /**
-     * Returns the entire bid map for iteration (read-only).  The returned map
-     * should not be modified.
+     * Copies up to {@code maxLevels} price levels on {@code side}, best price
+     * first, into the caller's arrays and returns the number of levels copied.
+     * For each level {@code quantities} receives the total resting quantity and
+     * {@code orderCounts}, unless it is {@code null}, the number of orders.
+     * Levels keep these aggregates up to date, so the cost is proportional to
+     * the levels copied and nothing is allocated.
      */
-    public NavigableMap<Long, Deque<Order>> bids() {
-        return bids;
-    }
+    int depth(Side side, int maxLevels, long[] prices, long[] quantities, int[] orderCounts);
 
     /**
-     * Returns the entire ask map for iteration (read-only).  The returned map
-     * should not be modified.
+     * Visits every resting order: bids then asks, best price first, and in time
+     * priority within a level.  Adding the visited orders to an empty book in
+     * this sequence reproduces the book.  Intended for snapshots rather than
+     * the matching path.
      */
-    public NavigableMap<Long, Deque<Order>> asks() {
-        return asks;
-    }
+    void forEachOrder(Consumer<Order> visitor);
 }
@@ -0,0 +1,115 @@
+package com.example.latencytrader;
+
+import org.agrona.collections.Hashing;
+import org.agrona.collections.Long2ObjectHashMap;
+
+/**
+ * Tracks the state the matching engine needs for every live client order:
+ * server order ID, side, account ID and instrument ID.  Entries are keyed by client
+ * order ID in an open-addressing primitive map and recycled through a free list,
+ * so once the store has grown to its working size adding and removing orders
+ * does not allocate.
+ *
+ * <p>An entry returned by {@link #get(long)} is only valid until it is removed;
+ * callers must copy any fields they need before calling {@link #remove}.
+ * This class is not thread-safe and is owned by the matching thread.</p>
+ */
+final class OrderStateStore {
+    /**
+     * Mutable, pooled per-order state.
+     */
+    static final class Entry {
+        long clientOrderId;
+        long serverOrderId;
+        Side side;
+        int accountId;
+        int instrumentId;
+        /** The resting order, so it can be recycled when the order leaves the book. */
+        Order order;
+        Entry nextFree;
+    }
+
+    private final Long2ObjectHashMap<Entry> entries;
+    private Entry freeList;
+
+    /**
+     * Creates a store with room for {@code initialCapacity} live orders
+     * before its map resizes or its pool allocates new entries.
+     */
+    OrderStateStore(int initialCapacity) {
+        this.entries = new Long2ObjectHashMap<>(initialCapacity, Hashing.DEFAULT_LOAD_FACTOR);
+        for (int i = 0; i < initialCapacity; i++) {
+            release(new Entry());
+        }
+    }
+
+    /**
+     * Records a newly rested order.  Any previous entry for the same client order
+     * ID is replaced and returned to the pool.
+     */
+    Entry add(long clientOrderId, long serverOrderId, Side side, int accountId, int instrumentId) {
+        Entry entry = freeList;
+        if (entry == null) {
+            entry = new Entry();
+        } else {
+            freeList = entry.nextFree;
+            entry.nextFree = null;
+        }
+        entry.clientOrderId = clientOrderId;
+        entry.serverOrderId = serverOrderId;
+        entry.side = side;
+        entry.accountId = accountId;
+        entry.instrumentId = instrumentId;
+        Entry previous = entries.put(clientOrderId, entry);
+        if (previous != null) {
+            release(previous);
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the state for a client order ID, or {@code null} if the order is not live.
+     */
+    Entry get(long clientOrderId) {
+        return entries.get(clientOrderId);
+    }
+
+    /**
+     * Removes the state for a client order ID.  Returns {@code false} if the
+     * order was not live.
+     */
+    boolean remove(long clientOrderId) {
+        Entry entry = entries.remove(clientOrderId);
+        if (entry == null) {
+            return false;
+        }
+        release(entry);
+        return true;
+    }
+
+    /**
+     * Removes the state for a client order ID only if it still refers to the
+     * given server order, guarding against client order IDs that were reused.
+     */
+    boolean remove(long clientOrderId, long serverOrderId) {
+        Entry entry = entries.get(clientOrderId);
+        if (entry == null || entry.serverOrderId != serverOrderId) {
+            return false;
+        }
+        return remove(clientOrderId);
+    }
+
+    /**
+     * Returns the number of live orders being tracked.
+     */
+    int size() {
+        return entries.size();
+    }
+
+    private void release(Entry entry) {
+        entry.side = null;
+        entry.order = null;
+        entry.nextFree = freeList;
+        freeList = entry;
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.latencytrader;
+
+import java.util.function.Consumer;
+
+/**
+ * A single price level holding resting orders in time priority.  Orders are
+ * chained through their own {@code prev}/{@code next} fields (an intrusive
+ * doubly-linked list), so appending and unlinking an order is O(1) and does
+ * not allocate.
+ *
+ * <p>The level also keeps the total quantity and number of its orders, updated
+ * as orders are linked, unlinked and filled, so depth queries are O(levels)
+ * rather than O(orders).  Resting quantities must only change through
+ * {@link #reduce} while the order is on the level.</p>
+ */
+final class PriceLevel {
+    final long price;
+    /** Boxed price used as the tree key by {@link TreeOrderBook}, so removing the level does not box. */
+    Long priceKey;
+    Order head;
+    Order tail;
+    /** Sum of the remaining quantity of the orders at this level. */
+    long quantity;
+    /** Number of orders at this level. */
+    int orderCount;
+
+    PriceLevel(long price) {
+        this.price = price;
+    }
+
+    boolean isEmpty() {
+        return head == null;
+    }
+
+    /**
+     * Visits the orders at this level in time priority.
+     */
+    void forEach(Consumer<Order> visitor) {
+        for (Order order = head; order != null; order = order.next) {
+            visitor.accept(order);
+        }
+    }
+
+    void addLast(Order order) {
+        order.level = this;
+        order.prev = tail;
+        order.next = null;
+        if (tail == null) {
+            head = order;
+        } else {
+            tail.next = order;
+        }
+        tail = order;
+        quantity += order.getQuantity();
+        orderCount++;
+    }
+
+    /**
+     * Takes {@code filled} off the remaining quantity of {@code order}, which
+     * rests on this level, keeping the level total in step.
+     */
+    void reduce(Order order, int filled) {
+        order.setQuantity(order.getQuantity() - filled);
+        quantity -= filled;
+    }
+
+    void remove(Order order) {
+        if (order.prev == null) {
+            head = order.next;
+        } else {
+            order.prev.next = order.next;
+        }
+        if (order.next == null) {
+            tail = order.prev;
+        } else {
+            order.next.prev = order.prev;
+        }
+        order.prev = null;
+        order.next = null;
+        order.level = null;
+        quantity -= order.getQuantity();
+        orderCount--;
+    }
+}
@@ -1,59 +1,394 @@
 package com.example.latencytrader;
 
 import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.SingleWriterRecorder;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.BackoffIdleStrategy;
+import org.agrona.concurrent.IdleStrategy;
+import org.agrona.concurrent.MessageHandler;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.ringbuffer.OneToOneRingBuffer;
+import org.agrona.concurrent.ringbuffer.RingBuffer;
+import org.agrona.concurrent.ringbuffer.RingBufferDescriptor;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Publishes acknowledgements and fills to standard output and records basic
  * latency statistics using HdrHistogram.  In a production system this class
  * would broadcast messages to subscribed clients or downstream services.
+ *
+ * <p>The listener callbacks run on the matching thread and do no formatting or
+ * I/O: each one copies its fields as a small binary record into a single
+ * producer, single consumer {@link OneToOneRingBuffer}.  {@link #run()} is the
+ * output thread; it drains the ring and encodes each record as a text line
+ * straight into a direct buffer.  {@link #onBatchEnd()} marks the end of each
+ * sequenced batch in the ring, and the output thread writes to the channel
+ * once it has encoded a batch end (or the buffer fills, or the ring runs
+ * empty), so a burst costs one write rather than one per message.  If
+ * the output thread falls far enough behind to fill the ring, records are
+ * dropped and counted rather than stalling the engine.</p>
+ *
+ * <p>Latencies are recorded into {@link SingleWriterRecorder}s, which the
+ * matching thread updates wait-free while {@link #writeMetrics} takes the
+ * interval recorded since its previous call on another thread.</p>
+ *
+ * <p>With {@link StageLatencies} set, acknowledgement and tick records also
+ * carry the type and receive time of the event being dispatched and the time
+ * they were emitted, and the output thread reports each of them as published
+ * once the write containing its line returns.</p>
  */
-public final class Publisher implements MatchingEngine.MatchListener {
-    private final Histogram ackLatencyHist = new Histogram(3600000000000L, 3);
-    private final Histogram fillLatencyHist = new Histogram(3600000000000L, 3);
-    private long ackCount = 0;
-    private long fillCount = 0;
-    private long mdCount = 0;
+public final class Publisher implements MatchingEngine.MatchListener, Runnable {
+    /** Default ring capacity in bytes; must be a power of two. */
+    static final int DEFAULT_RING_CAPACITY = 1 << 20;
+    /** Size of the output staging buffer written to the channel in one call. */
+    static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    private static final int ACK_RECORD = 1;
+    private static final int FILL_RECORD = 2;
+    private static final int MD_RECORD = 3;
+    private static final int BATCH_END_RECORD = 4;
+    /** Room reserved in the output buffer for the fixed text of one line. */
+    private static final int MAX_LINE_OVERHEAD = 256;
+    /** Most lines awaiting their publish time; no line is shorter than 32 bytes. */
+    private static final int MAX_PENDING_LINES = OUTPUT_BUFFER_SIZE / 32;
+    /** Event type of a record emitted outside a dispatch with latencies recorded. */
+    private static final int NO_EVENT_TYPE = -1;
+
+    private static final byte[] ACK_CL_ORD_ID = ascii("ACK clOrdId=");
+    private static final byte[] ORD_ID = ascii(" ordId=");
+    private static final byte[] STAT = ascii(" stat=");
+    private static final byte[] LATENCY = ascii(" latency=");
+    private static final byte[] NS = ascii(" ns\n");
+    private static final byte[] FILL_CL_ORD_ID = ascii("FILL clOrdId=");
+    private static final byte[] REST_ORD_ID = ascii(" restOrdId=");
+    private static final byte[] TRADE_ID = ascii(" tradeId=");
+    private static final byte[] QTY = ascii(" qty=");
+    private static final byte[] PX = ascii(" px=");
+    private static final byte[] MD_INSTRUMENT = ascii("MD_TICK instrument=");
+    private static final byte[] BID = ascii(" bid=");
+    private static final byte[] ASK = ascii(" ask=");
+    private static final byte[] NEWLINE = ascii("\n");
+    private static final byte[] DROPPED = ascii("DROPPED output records=");
+
+    /** Tag of acknowledgement latencies in interval logs. */
+    static final String ACK_LATENCY_TAG = "ack";
+    /** Tag of fill latencies in interval logs. */
+    static final String FILL_LATENCY_TAG = "fill";
+
+    private final SingleWriterRecorder ackLatency = new SingleWriterRecorder(3600000000000L, 3);
+    private final SingleWriterRecorder fillLatency = new SingleWriterRecorder(3600000000000L, 3);
+    /** Written only by the matching thread. */
+    private volatile long mdCount;
+    // Interval state, touched only under the lock of writeMetrics.
+    private Histogram ackInterval;
+    private Histogram fillInterval;
+    private long reportedMdCount;
+
+    private final RingBuffer ring;
+    private final WritableByteChannel channel;
+    private final ByteBuffer output = ByteBuffer.allocateDirect(OUTPUT_BUFFER_SIZE);
+    private final UnsafeBuffer outputView = new UnsafeBuffer(output);
+    private final MessageHandler encoder = this::encode;
+    private final IdleStrategy idleStrategy = new BackoffIdleStrategy(
+            100, 10, TimeUnit.MICROSECONDS.toNanos(1), TimeUnit.MILLISECONDS.toNanos(1));
+    private int outputLength;
+    private boolean batchEnded;
+    /** Written only by the matching thread. */
+    private volatile long droppedRecords;
+    private long reportedDrops;
+    private volatile boolean running = true;
+    private StageLatencies latencies;
+    // Acknowledgements and ticks encoded but not yet written, touched only by the output thread.
+    private final int[] pendingTypes = new int[MAX_PENDING_LINES];
+    private final long[] pendingTsIn = new long[MAX_PENDING_LINES];
+    private final long[] pendingEmittedAt = new long[MAX_PENDING_LINES];
+    private int pendingCount;
+
+    /**
+     * Creates a publisher that writes to standard output.
+     */
+    public Publisher() {
+        this(Channels.newChannel(new FileOutputStream(FileDescriptor.out)), DEFAULT_RING_CAPACITY);
+    }
+
+    /**
+     * Creates a publisher that writes to {@code channel} through a ring of
+     * {@code ringCapacity} bytes, which must be a power of two.
+     */
+    public Publisher(WritableByteChannel channel, int ringCapacity) {
+        this.channel = channel;
+        this.ring = new OneToOneRingBuffer(new UnsafeBuffer(
+                ByteBuffer.allocateDirect(ringCapacity + RingBufferDescriptor.TRAILER_LENGTH)));
+    }
+
+    /**
+     * Reports the publish time of acknowledgements and ticks to
+     * {@code latencies}, shared with the engine's {@link Sequencer}.  Must be
+     * called before the matching and output threads are started.
+     */
+    public void setLatencies(StageLatencies latencies) {
+        this.latencies = latencies;
+    }
 
     @Override
     public void onAck(long clientOrderId, long orderId, String status, long tsIn) {
-        long latency = System.nanoTime() - tsIn;
-        ackLatencyHist.recordValue(latency);
-        ackCount++;
-        System.out.printf("ACK clOrdId=%d ordId=%d stat=%s latency=%d ns%n", clientOrderId, orderId, status, latency);
+        long now = System.nanoTime();
+        long latency = now - tsIn;
+        ackLatency.recordValue(latency);
+        int index = ring.tryClaim(ACK_RECORD, 40 + status.length());
+        if (index < 0) {
+            droppedRecords++;
+            return;
+        }
+        MutableDirectBuffer buffer = ring.buffer();
+        buffer.putLong(index, clientOrderId);
+        buffer.putLong(index + 8, orderId);
+        buffer.putLong(index + 16, latency);
+        buffer.putLong(index + 24, now);
+        buffer.putInt(index + 32, currentEventType());
+        buffer.putStringAscii(index + 36, status);
+        ring.commit(index);
     }
 
     @Override
     public void onFill(long clientOrderId, long restingOrderId, long tradeId, int quantity, long price, long tsIn) {
         long latency = System.nanoTime() - tsIn;
-        fillLatencyHist.recordValue(latency);
-        fillCount++;
-        System.out.printf("FILL clOrdId=%d restOrdId=%d tradeId=%d qty=%d px=%d latency=%d ns%n", clientOrderId, restingOrderId, tradeId, quantity, price, latency);
+        fillLatency.recordValue(latency);
+        int index = ring.tryClaim(FILL_RECORD, 44);
+        if (index < 0) {
+            droppedRecords++;
+            return;
+        }
+        MutableDirectBuffer buffer = ring.buffer();
+        buffer.putLong(index, clientOrderId);
+        buffer.putLong(index + 8, restingOrderId);
+        buffer.putLong(index + 16, tradeId);
+        buffer.putLong(index + 24, price);
+        buffer.putLong(index + 32, latency);
+        buffer.putInt(index + 40, quantity);
+        ring.commit(index);
     }
 
     @Override
     public void onMarketData(String instrument, long bidPrice, long askPrice) {
         mdCount++;
-        System.out.printf("MD_TICK instrument=%s bid=%d ask=%d%n", instrument, bidPrice, askPrice);
+        int index = ring.tryClaim(MD_RECORD, 40 + instrument.length());
+        if (index < 0) {
+            droppedRecords++;
+            return;
+        }
+        MutableDirectBuffer buffer = ring.buffer();
+        buffer.putLong(index, bidPrice);
+        buffer.putLong(index + 8, askPrice);
+        int eventType = currentEventType();
+        if (eventType != NO_EVENT_TYPE) {
+            buffer.putLong(index + 16, System.nanoTime());
+            buffer.putLong(index + 24, latencies.eventTsIn());
+        }
+        buffer.putInt(index + 32, eventType);
+        buffer.putStringAscii(index + 36, instrument);
+        ring.commit(index);
+    }
+
+    private int currentEventType() {
+        EventType type = latencies != null ? latencies.eventType() : null;
+        return type != null ? type.ordinal() : NO_EVENT_TYPE;
+    }
+
+    /**
+     * Marks the end of a sequenced batch so the output thread writes what it
+     * has encoded so far.  A marker that does not fit in a full ring is simply
+     * skipped; the output thread also writes whenever the ring runs empty.
+     */
+    @Override
+    public void onBatchEnd() {
+        int index = ring.tryClaim(BATCH_END_RECORD, 0);
+        if (index >= 0) {
+            ring.commit(index);
+        }
+    }
+
+    /**
+     * Stops the output thread once it has written everything already queued.
+     * Call after the matching thread has stopped.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Drains the ring and writes the encoded lines until {@link #stop()} is
+     * called, then writes whatever remains.  Lines are written when a batch
+     * end has been encoded or nothing more is waiting in the ring.
+     */
+    @Override
+    public void run() {
+        while (running) {
+            int read = ring.read(encoder);
+            reportDrops();
+            if (batchEnded || read == 0) {
+                flush();
+                batchEnded = false;
+            }
+            idleStrategy.idle(read);
+        }
+        while (ring.read(encoder) > 0) {
+            // Drain records published before stop()
+        }
+        reportDrops();
+        flush();
+    }
+
+    private void encode(int recordType, MutableDirectBuffer buffer, int index, int length) {
+        if (OUTPUT_BUFFER_SIZE - outputLength < length + MAX_LINE_OVERHEAD || pendingCount == MAX_PENDING_LINES) {
+            flush();
+        }
+        switch (recordType) {
+            case ACK_RECORD:
+                put(ACK_CL_ORD_ID);
+                putLong(buffer.getLong(index));
+                put(ORD_ID);
+                putLong(buffer.getLong(index + 8));
+                put(STAT);
+                putAscii(buffer, index + 36);
+                put(LATENCY);
+                putLong(buffer.getLong(index + 16));
+                put(NS);
+                addPending(buffer.getInt(index + 32), buffer.getLong(index + 24) - buffer.getLong(index + 16),
+                        buffer.getLong(index + 24));
+                break;
+            case FILL_RECORD:
+                put(FILL_CL_ORD_ID);
+                putLong(buffer.getLong(index));
+                put(REST_ORD_ID);
+                putLong(buffer.getLong(index + 8));
+                put(TRADE_ID);
+                putLong(buffer.getLong(index + 16));
+                put(QTY);
+                putLong(buffer.getInt(index + 40));
+                put(PX);
+                putLong(buffer.getLong(index + 24));
+                put(LATENCY);
+                putLong(buffer.getLong(index + 32));
+                put(NS);
+                break;
+            case MD_RECORD:
+                put(MD_INSTRUMENT);
+                putAscii(buffer, index + 36);
+                put(BID);
+                putLong(buffer.getLong(index));
+                put(ASK);
+                putLong(buffer.getLong(index + 8));
+                put(NEWLINE);
+                addPending(buffer.getInt(index + 32), buffer.getLong(index + 24), buffer.getLong(index + 16));
+                break;
+            case BATCH_END_RECORD:
+                batchEnded = true;
+                break;
+            default:
+                throw new IllegalStateException("Unknown output record type " + recordType);
+        }
+    }
+
+    private void addPending(int eventType, long tsIn, long emittedAt) {
+        if (eventType == NO_EVENT_TYPE) {
+            return;
+        }
+        pendingTypes[pendingCount] = eventType;
+        pendingTsIn[pendingCount] = tsIn;
+        pendingEmittedAt[pendingCount] = emittedAt;
+        pendingCount++;
+    }
+
+    private void reportDrops() {
+        long dropped = droppedRecords;
+        if (dropped != reportedDrops) {
+            put(DROPPED);
+            putLong(dropped - reportedDrops);
+            put(NEWLINE);
+            reportedDrops = dropped;
+        }
+    }
+
+    private void put(byte[] text) {
+        outputView.putBytes(outputLength, text);
+        outputLength += text.length;
+    }
+
+    private void putLong(long value) {
+        outputLength += outputView.putLongAscii(outputLength, value);
+    }
+
+    /** Copies a length-prefixed ASCII string from a ring record. */
+    private void putAscii(MutableDirectBuffer buffer, int index) {
+        int length = buffer.getInt(index);
+        outputView.putBytes(outputLength, buffer, index + 4, length);
+        outputLength += length;
+    }
+
+    private void flush() {
+        if (outputLength == 0) {
+            return;
+        }
+        output.limit(outputLength).position(0);
+        try {
+            while (output.hasRemaining()) {
+                channel.write(output);
+            }
+            if (pendingCount > 0) {
+                long publishedAt = System.nanoTime();
+                for (int i = 0; i < pendingCount; i++) {
+                    latencies.onPublished(pendingTypes[i], pendingTsIn[i], pendingEmittedAt[i], publishedAt);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write publisher output", e);
+        } finally {
+            output.clear();
+            outputLength = 0;
+            pendingCount = 0;
+        }
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
     }
 
     /**
-     * Writes latency histograms and message counts to a CSV file.  Each call
-     * appends a line with timestamp, counts and summary statistics.  After
-     * writing the histograms are reset.
+     * Takes the acknowledgement and fill latencies recorded since the previous
+     * call, writes them to {@code log} as interval histograms tagged
+     * {@value #ACK_LATENCY_TAG} and {@value #FILL_LATENCY_TAG}, and appends a
+     * summary line to the CSV file {@code csvFileName}: timestamp, counts of
+     * acknowledgements, fills and market data ticks, and the median and 99th
+     * percentile of each latency.  Never blocks the matching thread.
      */
-    public synchronized void writeMetricsCsv(String fileName) {
-        try (java.io.FileWriter fw = new java.io.FileWriter(fileName, true)) {
+    public synchronized void writeMetrics(HistogramLogWriter log, String csvFileName) {
+        ackInterval = ackLatency.getIntervalHistogram(ackInterval);
+        fillInterval = fillLatency.getIntervalHistogram(fillInterval);
+        long md = mdCount;
+        long mdInterval = md - reportedMdCount;
+        reportedMdCount = md;
+        ackInterval.setTag(ACK_LATENCY_TAG);
+        fillInterval.setTag(FILL_LATENCY_TAG);
+        log.outputIntervalHistogram(ackInterval);
+        log.outputIntervalHistogram(fillInterval);
+        try (java.io.FileWriter fw = new java.io.FileWriter(csvFileName, true)) {
             long timestamp = System.currentTimeMillis();
-            double ackMedian = ackLatencyHist.getValueAtPercentile(50.0);
-            double ackP99 = ackLatencyHist.getValueAtPercentile(99.0);
-            double fillMedian = fillLatencyHist.getValueAtPercentile(50.0);
-            double fillP99 = fillLatencyHist.getValueAtPercentile(99.0);
-            fw.write(timestamp + "," + ackCount + "," + fillCount + "," + mdCount + "," + ackMedian + "," + ackP99 + "," + fillMedian + "," + fillP99 + "\n");
-            ackLatencyHist.reset();
-            fillLatencyHist.reset();
-            ackCount = 0;
-            fillCount = 0;
-            mdCount = 0;
+            double ackMedian = ackInterval.getValueAtPercentile(50.0);
+            double ackP99 = ackInterval.getValueAtPercentile(99.0);
+            double fillMedian = fillInterval.getValueAtPercentile(50.0);
+            double fillP99 = fillInterval.getValueAtPercentile(99.0);
+            fw.write(timestamp + "," + ackInterval.getTotalCount() + "," + fillInterval.getTotalCount() + ","
+                    + mdInterval + "," + ackMedian + "," + ackP99 + "," + fillMedian + "," + fillP99 + "\n");
         } catch (java.io.IOException e) {
             throw new RuntimeException("Failed to write metrics CSV", e);
         }
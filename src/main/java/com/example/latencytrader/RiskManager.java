@@ -1,79 +1,412 @@
 package com.example.latencytrader;
 
-import java.util.HashMap;
-import java.util.Map;
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
- * Simple risk manager enforcing per-account order and position limits.  This MVP
- * implementation checks that incoming orders do not exceed a maximum order size
- * and that the resulting positions stay within defined bounds.  It maintains
- * running positions per account and updates them upon fills.
+ * Risk manager enforcing pre-trade limits per account.  Incoming orders are
+ * checked by {@link #check} against, in order: an order rate throttle, the
+ * maximum order size, a price band around the current top of book, notional
+ * limits, and the position limit.  Running positions are updated upon fills,
+ * for the accounts on both sides of each fill.
+ *
+ * <p>The position limit counts open-order exposure: the quantity an account
+ * has resting on the buy side is added to its position, and the quantity
+ * resting on the sell side subtracted, before the new order is added.  The
+ * engine reports resting quantity through {@link #onOrderRested} and
+ * {@link #onOrderReduced}, so an account cannot exceed its limit by resting
+ * many orders that each pass on their own.</p>
+ *
+ * <p>All state is held in atomic primitive arrays indexed by the account IDs
+ * of a {@link SymbolRegistry}, so every check is a handful of array reads, the
+ * matching path neither hashes account names nor allocates, and one risk
+ * manager can be shared by the engines of several shards (see
+ * {@link ShardRouter}): an account trading instruments on different shards is
+ * checked against a single net position.  Checks on different shards are not
+ * atomic with each other, so concurrent orders for the same account may
+ * together overshoot a limit by at most one order per shard.</p>
+ *
+ * <p>The notional, price band and throttle limits are disabled until set, and
+ * must be set before orders are processed.</p>
  */
 public final class RiskManager {
+    /** Outcome of a pre-trade {@link #check}, with the status acknowledged for a rejection. */
+    public enum Result {
+        ACCEPTED(null),
+        ORDER_SIZE("REJECTED_RISK"),
+        POSITION("REJECTED_RISK"),
+        NOTIONAL("REJECTED_NOTIONAL"),
+        PRICE_BAND("REJECTED_PRICE_BAND"),
+        THROTTLED("REJECTED_THROTTLED");
+
+        private final String status;
+
+        Result(String status) {
+            this.status = status;
+        }
+
+        /**
+         * Returns the acknowledgement status of a rejection, or {@code null}
+         * for {@link #ACCEPTED}.
+         */
+        public String status() {
+            return status;
+        }
+    }
+
+    private static final long NO_WINDOW = Long.MIN_VALUE;
+
     /** Maximum quantity permitted for any single order. */
     private final int maxOrderSize;
     /** Maximum absolute position permitted per account. */
     private final int maxPosition;
-    /** Running position per account.  Positive for net long, negative for net short. */
-    private final Map<String, Integer> positions = new HashMap<>();
+    private final SymbolRegistry symbols;
+    /** Running position per account ID.  Positive for net long, negative for net short. */
+    private final AtomicIntegerArray positions;
+    /** Resting buy and sell quantity and resting notional per account ID. */
+    private final AtomicLongArray openBuyQuantities;
+    private final AtomicLongArray openSellQuantities;
+    private final AtomicLongArray openNotionals;
+    /** Number of fills that took each account's position beyond the limit. */
+    private final AtomicIntegerArray limitBreaches;
+
+    /** Maximum price times quantity of a single order, or 0 for no limit. */
+    private long maxOrderNotional;
+    /** Maximum notional an account may have resting, including the new order, or 0 for no limit. */
+    private long maxOpenNotional;
+    /** Maximum distance of a limit price through the top of book, in basis points, or 0 for no band. */
+    private int priceBandBps;
+    /** Maximum new orders per account per window, or 0 for no throttle. */
+    private int maxOrdersPerWindow;
+    private long throttleWindowNanos;
+    /**
+     * Start time and order count of each account's current throttle window.
+     * Ingress timestamps come from {@link System#nanoTime()} and may be
+     * negative, so an account without a window is marked {@link #NO_WINDOW}.
+     */
+    private AtomicLongArray windowStarts;
+    private AtomicIntegerArray windowCounts;
 
+    /**
+     * Creates a risk manager with its own {@link SymbolRegistry}.
+     */
     public RiskManager(int maxOrderSize, int maxPosition) {
+        this(new SymbolRegistry(), maxOrderSize, maxPosition);
+    }
+
+    /**
+     * Creates a risk manager tracking positions for the accounts of
+     * {@code symbols}.  Engines built on this risk manager use the same
+     * registry.
+     */
+    public RiskManager(SymbolRegistry symbols, int maxOrderSize, int maxPosition) {
+        this.symbols = symbols;
         this.maxOrderSize = maxOrderSize;
         this.maxPosition = maxPosition;
+        int maxAccounts = symbols.maxAccounts();
+        this.positions = new AtomicIntegerArray(maxAccounts);
+        this.openBuyQuantities = new AtomicLongArray(maxAccounts);
+        this.openSellQuantities = new AtomicLongArray(maxAccounts);
+        this.openNotionals = new AtomicLongArray(maxAccounts);
+        this.limitBreaches = new AtomicIntegerArray(maxAccounts);
+    }
+
+    /**
+     * Returns the registry whose account IDs index this risk manager.
+     */
+    public SymbolRegistry symbols() {
+        return symbols;
+    }
+
+    /**
+     * Limits the notional (price times quantity) of a single order to
+     * {@code maxOrderNotional}, and the notional an account has resting plus
+     * that of the new order to {@code maxOpenNotional}.  Zero disables either
+     * limit.  A market order is valued at the opposite best price.
+     */
+    public void setNotionalLimits(long maxOrderNotional, long maxOpenNotional) {
+        this.maxOrderNotional = maxOrderNotional;
+        this.maxOpenNotional = maxOpenNotional;
     }
 
     /**
-     * Returns whether the order passes pre-trade risk checks.  If the quantity
-     * exceeds the maximum order size, the order is rejected.  This method does
-     * not check positions because position impact depends on fills; positions
-     * are updated via {@link #onFill(long, int, int)}.
+     * Rejects limit orders priced more than {@code priceBandBps} basis points
+     * through the top of book: a buy above the best ask, or a sell below the
+     * best bid, by more than the band.  If the opposite side is empty the best
+     * price on the order's own side is the reference instead; if the book is
+     * empty the order is not checked.  Zero disables the band.
+     */
+    public void setPriceBand(int priceBandBps) {
+        this.priceBandBps = priceBandBps;
+    }
+
+    /**
+     * Allows each account at most {@code maxOrders} new orders per
+     * {@code windowNanos}, measured on the events' ingress timestamps so that
+     * replaying a journal makes the same decisions.  Windows are fixed rather
+     * than sliding: a window starts with the first order after the previous
+     * one expired.  Rejected orders count towards the limit.  Zero disables
+     * the throttle.
+     */
+    public void setOrderRateLimit(int maxOrders, long windowNanos) {
+        this.maxOrdersPerWindow = maxOrders;
+        this.throttleWindowNanos = windowNanos;
+        if (maxOrders > 0 && windowStarts == null) {
+            windowStarts = new AtomicLongArray(symbols.maxAccounts());
+            for (int accountId = 0; accountId < symbols.maxAccounts(); accountId++) {
+                windowStarts.set(accountId, NO_WINDOW);
+            }
+            windowCounts = new AtomicIntegerArray(symbols.maxAccounts());
+        }
+    }
+
+    /**
+     * Returns whether the order passes the size and position checks.  Checks
+     * that need the book or a timestamp are not applied; the matching engine
+     * uses {@link #check} instead.
      */
     public boolean accept(OrderEvent event) {
-        // Basic size check
-        if (event.quantity() <= 0 || event.quantity() > maxOrderSize) {
-            return false;
+        return accept(event.account(), event.side(), event.quantity());
+    }
+
+    /**
+     * Field-wise variant of {@link #accept(OrderEvent)}.
+     */
+    public boolean accept(String account, Side side, int quantity) {
+        return accept(symbols.accountId(account), side, quantity);
+    }
+
+    /**
+     * Variant of {@link #accept(OrderEvent)} by account ID.
+     */
+    public boolean accept(int accountId, Side side, int quantity) {
+        return checkSize(quantity) && checkPosition(accountId, side, quantity);
+    }
+
+    /**
+     * Runs every pre-trade check on a new order for {@code book} and returns
+     * the first that fails, or {@link Result#ACCEPTED}.  A {@code price} of
+     * zero denotes a market order.  Used on the matching path; does not
+     * allocate.
+     */
+    public Result check(int accountId, Side side, int quantity, long price, OrderBook book, long tsIn) {
+        if (maxOrdersPerWindow > 0 && !checkRate(accountId, tsIn)) {
+            return Result.THROTTLED;
+        }
+        if (!checkSize(quantity)) {
+            return Result.ORDER_SIZE;
+        }
+        boolean isBuy = side == Side.BUY;
+        long reference = 0;
+        if (book != null && (priceBandBps > 0 || maxOrderNotional > 0 || maxOpenNotional > 0)) {
+            reference = isBuy ? book.bestAskPrice() : book.bestBidPrice();
+            if (reference == OrderBook.NO_PRICE) {
+                reference = isBuy ? book.bestBidPrice() : book.bestAskPrice();
+            }
+            if (reference == OrderBook.NO_PRICE) {
+                reference = 0;
+            }
         }
-        // Position check: approximate new position if this order fully executes
-        String account = event.account();
-        int currentPos = positions.getOrDefault(account, 0);
-        int sideMultiplier = event.side() == Side.BUY ? 1 : -1;
-        long predicted = (long) currentPos + sideMultiplier * event.quantity();
-        return Math.abs(predicted) <= maxPosition;
+        if (priceBandBps > 0 && price != 0 && reference != 0) {
+            long band = reference * priceBandBps / 10_000;
+            if (isBuy ? price > reference + band : price < reference - band) {
+                return Result.PRICE_BAND;
+            }
+        }
+        long notional = (long) quantity * (price != 0 ? price : reference);
+        if ((maxOrderNotional > 0 && notional > maxOrderNotional)
+                || (maxOpenNotional > 0 && openNotionals.get(accountId) + notional > maxOpenNotional)) {
+            return Result.NOTIONAL;
+        }
+        if (!checkPosition(accountId, side, quantity)) {
+            return Result.POSITION;
+        }
+        return Result.ACCEPTED;
+    }
+
+    private boolean checkSize(int quantity) {
+        return quantity > 0 && quantity <= maxOrderSize;
+    }
+
+    /**
+     * Checks the position the account would have if this order and all its
+     * resting orders on the same side fully executed.
+     */
+    private boolean checkPosition(int accountId, Side side, int quantity) {
+        long position = positions.get(accountId);
+        if (side == Side.BUY) {
+            return position + openBuyQuantities.get(accountId) + quantity <= maxPosition;
+        }
+        return position - openSellQuantities.get(accountId) - quantity >= -maxPosition;
+    }
+
+    private boolean checkRate(int accountId, long tsIn) {
+        long windowStart = windowStarts.get(accountId);
+        if ((windowStart == NO_WINDOW || tsIn - windowStart >= throttleWindowNanos)
+                && windowStarts.compareAndSet(accountId, windowStart, tsIn)) {
+            windowCounts.set(accountId, 1);
+            return true;
+        }
+        return windowCounts.incrementAndGet(accountId) <= maxOrdersPerWindow;
     }
 
     /**
-     * Updates the position for an account upon receiving a fill.  The side is
-     * indicated by +1 for buys and -1 for sells.  This method is called from
-     * within the matching engine and should not be invoked concurrently.
+     * Records that {@code quantity} of an account's order now rests in a book
+     * at {@code price}.  Called by the matching engine.
      */
-    public void onFill(long clientOrderId, int quantity, int sideMultiplier) {
-        // Determine account from clientOrderId mapping.  In this simplified
-        // implementation, the account is not deduced from clientOrderId; instead,
-        // callers should provide the account separately.  See overloaded method.
+    public void onOrderRested(int accountId, Side side, int quantity, long price) {
+        (side == Side.BUY ? openBuyQuantities : openSellQuantities).addAndGet(accountId, quantity);
+        openNotionals.addAndGet(accountId, quantity * price);
+    }
+
+    /**
+     * Records that {@code quantity} of an account's resting order at
+     * {@code price} left the book, filled, cancelled or replaced.  Called by
+     * the matching engine.
+     */
+    public void onOrderReduced(int accountId, Side side, int quantity, long price) {
+        (side == Side.BUY ? openBuyQuantities : openSellQuantities).addAndGet(accountId, -quantity);
+        openNotionals.addAndGet(accountId, -quantity * price);
+    }
+
+    /**
+     * Returns the quantity the given account has resting on {@code side}, or
+     * zero for an unknown account.  May be called from any thread.
+     */
+    public long openQuantity(String account, Side side) {
+        int accountId = symbols.findAccountId(account);
+        return accountId < 0 ? 0 : (side == Side.BUY ? openBuyQuantities : openSellQuantities).get(accountId);
     }
 
     /**
      * Updates the position for the given account.  Used by the matching engine
-     * to record filled quantities.  Positive sideMultiplier indicates a buy
-     * (long position), negative indicates a sell (short position).  If the new
-     * position would exceed configured limits, an {@link IllegalStateException}
-     * is thrown.  In a real system, positions would be updated atomically and
-     * violations would cause trading to halt.
-     */
-    public void onFill(String account, int quantity, int sideMultiplier) {
-        positions.putIfAbsent(account, 0);
-        int current = positions.get(account);
-        long newPos = (long) current + sideMultiplier * quantity;
+     * to record filled quantities, once for each side of every fill.  Positive sideMultiplier indicates a buy
+     * (long position), negative indicates a sell (short position).  The update
+     * is atomic, so engines on different shards may record fills for the same
+     * account concurrently.
+     *
+     * <p>A fill has already happened in the book, so it is always applied and
+     * this method never throws.  If it takes the position beyond the limit,
+     * which the pre-trade checks only allow through the cross-shard overshoot
+     * described above, the breach is counted against the account and false is
+     * returned.  The position check then rejects every order that would
+     * increase the account's exposure until it is back within the limit.</p>
+     */
+    public boolean onFill(String account, int quantity, int sideMultiplier) {
+        return onFill(symbols.accountId(account), quantity, sideMultiplier);
+    }
+
+    /**
+     * Variant of {@link #onFill(String, int, int)} by account ID, used on the
+     * matching path.
+     */
+    public boolean onFill(int accountId, int quantity, int sideMultiplier) {
+        long newPos = (long) positions.addAndGet(accountId, sideMultiplier * quantity);
         if (Math.abs(newPos) > maxPosition) {
-            throw new IllegalStateException("Position limit exceeded for account " + account);
+            limitBreaches.incrementAndGet(accountId);
+            return false;
         }
-        positions.put(account, (int) newPos);
+        return true;
     }
 
     /**
-     * Returns the current position for the given account.
+     * Returns how many fills took the given account beyond its position
+     * limit, or zero for an unknown account.  May be called from any thread.
+     */
+    public int limitBreaches(String account) {
+        int accountId = symbols.findAccountId(account);
+        return accountId < 0 ? 0 : limitBreaches.get(accountId);
+    }
+
+    /**
+     * Writes the position, limit breach count and throttle window of every
+     * account that has any at {@code offset} and returns the offset just past
+     * them.  The throttle windows are part of the state because a restart
+     * replays only the journal tail: without them, orders throttled in the
+     * live run would be accepted on recovery.  Used by
+     * {@link MatchingEngine#writeSnapshot}.
+     */
+    int writeSnapshot(MutableDirectBuffer buffer, int offset) {
+        int countOffset = offset;
+        int position = offset + 4;
+        int count = 0;
+        int accountCount = symbols.accountCount();
+        for (int accountId = 0; accountId < accountCount; accountId++) {
+            int value = positions.get(accountId);
+            int breaches = limitBreaches.get(accountId);
+            long windowStart = windowStarts == null ? NO_WINDOW : windowStarts.get(accountId);
+            if (value != 0 || breaches != 0 || windowStart != NO_WINDOW) {
+                position += buffer.putStringAscii(position, symbols.account(accountId), MatchingEngine.SNAPSHOT_BYTE_ORDER);
+                buffer.putInt(position, value, MatchingEngine.SNAPSHOT_BYTE_ORDER);
+                buffer.putInt(position + 4, breaches, MatchingEngine.SNAPSHOT_BYTE_ORDER);
+                buffer.putLong(position + 8, windowStart, MatchingEngine.SNAPSHOT_BYTE_ORDER);
+                buffer.putInt(position + 16, windowStart == NO_WINDOW ? 0 : windowCounts.get(accountId),
+                        MatchingEngine.SNAPSHOT_BYTE_ORDER);
+                position += 20;
+                count++;
+            }
+        }
+        buffer.putInt(countOffset, count, MatchingEngine.SNAPSHOT_BYTE_ORDER);
+        return position;
+    }
+
+    /**
+     * Restores the state written by {@link #writeSnapshot} and returns the
+     * offset just past it.  The order rate limit must already be set for the
+     * throttle windows to be restored.
+     */
+    int loadSnapshot(DirectBuffer buffer, int offset) {
+        int count = buffer.getInt(offset, MatchingEngine.SNAPSHOT_BYTE_ORDER);
+        int position = offset + 4;
+        for (int i = 0; i < count; i++) {
+            String account = buffer.getStringAscii(position, MatchingEngine.SNAPSHOT_BYTE_ORDER);
+            position += 4 + account.length();
+            int accountId = symbols.accountId(account);
+            positions.set(accountId, buffer.getInt(position, MatchingEngine.SNAPSHOT_BYTE_ORDER));
+            limitBreaches.set(accountId, buffer.getInt(position + 4, MatchingEngine.SNAPSHOT_BYTE_ORDER));
+            if (windowStarts != null) {
+                windowStarts.set(accountId, buffer.getLong(position + 8, MatchingEngine.SNAPSHOT_BYTE_ORDER));
+                windowCounts.set(accountId, buffer.getInt(position + 16, MatchingEngine.SNAPSHOT_BYTE_ORDER));
+            }
+            position += 20;
+        }
+        return position;
+    }
+
+    /**
+     * Returns the current position for the given account, or zero for an
+     * unknown account.  May be called from any thread: positions are read
+     * atomically and the account is looked up without being interned.
      */
     public int position(String account) {
-        return positions.getOrDefault(account, 0);
+        int accountId = symbols.findAccountId(account);
+        return accountId < 0 ? 0 : positions.get(accountId);
+    }
+
+    /**
+     * Returns the current position for an account ID.  May be called from any
+     * thread.
+     */
+    public int position(int accountId) {
+        return positions.get(accountId);
+    }
+
+    /**
+     * Copies the positions of accounts {@code 0..n-1} into {@code into},
+     * where {@code n} is the number of accounts or the length of {@code into}
+     * if smaller, and returns {@code n}.  Intended for monitoring threads: it
+     * neither allocates nor blocks the engine.  Each position is read
+     * atomically, but fills on the matching thread may land between reads, so
+     * the copy is not a consistent cut across accounts.
+     */
+    public int copyPositions(int[] into) {
+        int count = Math.min(symbols.accountCount(), into.length);
+        for (int accountId = 0; accountId < count; accountId++) {
+            into[accountId] = positions.get(accountId);
+        }
+        return count;
     }
 }
@@ -1,35 +1,341 @@
 package com.example.latencytrader;
 
+import com.lmax.disruptor.BatchEventProcessor;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.RingBuffer;
+
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 /**
  * The Sequencer acts as an ingress queue for all events into the matching engine.
- * It serializes incoming events by placing them on a single-writer ring buffer
- * (implemented here with an {@link ArrayBlockingQueue}).  A dedicated thread
- * consumes events from the queue and dispatches them to the engine.  This
+ * It serializes incoming events by placing them on a ring buffer which a
+ * dedicated thread consumes, dispatching each event to the engine.  This
  * decouples I/O threads from the matching thread and preserves determinism.
  *
- * <p>In a production system you would likely use the LMAX Disruptor here;
- * swapping the {@code queue} with a Disruptor ring buffer is straightforward.</p>
+ * <p>Two modes are supported:</p>
+ * <ul>
+ *   <li><b>Queue mode</b> uses an {@link ArrayBlockingQueue}.  Simple, but every
+ *   publish takes a lock and the consumer wakes via a condition variable.</li>
+ *   <li><b>Disruptor mode</b> uses an LMAX Disruptor multi-producer
+ *   {@link RingBuffer} of preallocated {@link EventSlot}s.  Producers claim a
+ *   slot, overwrite it in place and publish, so no objects are allocated per
+ *   event.  The consumer waits according to a {@link SequencerWaitStrategy}.</li>
+ * </ul>
+ *
+ * <p>In Disruptor mode the sequence number of each event is the ring sequence
+ * assigned at publish time.</p>
+ *
+ * <p>Both modes consume in batches: the Disruptor processor hands over every
+ * event published since its last wake-up, and queue mode drains up to
+ * {@link #DRAIN_LIMIT} waiting events at once.  After the last event of each
+ * batch the engine's listener receives
+ * {@link MatchingEngine.MatchListener#onBatchEnd()}.</p>
+ *
+ * <p>If a {@link Journal} is set, the consumer appends each event to it before
+ * dispatching, and signals the end of every consumed batch so the journal can
+ * sync according to its {@link JournalSyncPolicy}.  A {@link Snapshotter}, if
+ * set, captures the engine state at the end of a batch when one is due.</p>
+ *
+ * <p>With {@link StageLatencies} set, each ring slot is stamped as it is
+ * published and the consumer reports when it starts dispatching each event
+ * and when the engine has finished with it.</p>
+ *
+ * <p>A new order's account and instrument are interned in the
+ * {@link SymbolRegistry} before a ring slot or queue entry is claimed, so an
+ * order whose symbols cannot be interned because the registry is full is
+ * never sequenced.  The typed publish methods throw the registry's
+ * {@link IllegalStateException} to the caller; {@link #publishBatch} drops
+ * just that order and reports it on standard error, since a batch carries
+ * events of many sessions.</p>
  */
-public final class Sequencer implements Runnable {
+public final class Sequencer implements Runnable, EventPublisher {
+    /** Maximum number of events taken from the queue in one batch in queue mode. */
+    static final int DRAIN_LIMIT = 256;
+    /** Instrument ID of a staged new order whose symbols could not be interned. */
+    private static final int UNRESOLVED = -1;
+
     private final BlockingQueue<Event> queue;
+    private final List<Event> drained;
+    private final RingBuffer<EventSlot> ringBuffer;
+    private final BatchEventProcessor<EventSlot> processor;
     private final MatchingEngine engine;
+    private final SymbolRegistry symbols;
+    private Journal journal;
+    private Snapshotter snapshotter;
+    private StageLatencies latencies;
     private volatile boolean running = true;
+    private volatile boolean consumerExited = false;
 
+    /**
+     * Creates a sequencer in queue mode backed by an {@link ArrayBlockingQueue}.
+     */
     public Sequencer(MatchingEngine engine, int capacity) {
         this.engine = engine;
+        this.symbols = engine.symbols();
         this.queue = new ArrayBlockingQueue<>(capacity);
+        this.drained = new ArrayList<>(DRAIN_LIMIT);
+        this.ringBuffer = null;
+        this.processor = null;
+    }
+
+    /**
+     * Creates a sequencer in Disruptor mode.  The capacity must be a power of
+     * two.  The ring is created for multiple producers so that the network,
+     * console and market data threads may publish concurrently.
+     */
+    public Sequencer(MatchingEngine engine, int capacity, SequencerWaitStrategy waitStrategy) {
+        this.engine = engine;
+        this.symbols = engine.symbols();
+        this.queue = null;
+        this.drained = null;
+        this.ringBuffer = RingBuffer.createMultiProducer(EventSlot::new, capacity, waitStrategy.create());
+        EventHandler<EventSlot> handler = (slot, sequence, endOfBatch) -> {
+            if (latencies != null) {
+                latencies.onDispatch(slot.type, slot.tsIn, slot.tsEnqueue);
+            }
+            if (journal != null) {
+                journal.append(slot);
+            }
+            dispatch(slot);
+            if (latencies != null) {
+                latencies.onMatched();
+            }
+            if (endOfBatch) {
+                endOfBatch();
+            }
+        };
+        this.processor = new BatchEventProcessor<>(ringBuffer, ringBuffer.newBarrier(), handler);
+        this.ringBuffer.addGatingSequences(processor.getSequence());
+    }
+
+    /**
+     * Returns the engine this sequencer dispatches to.
+     */
+    MatchingEngine engine() {
+        return engine;
+    }
+
+    /**
+     * Records every event in {@code journal} before it is dispatched.  Must be
+     * called before the sequencer thread is started.
+     */
+    public void setJournal(Journal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Lets {@code snapshotter} capture the engine state between batches.  Must
+     * be called before the sequencer thread is started, together with
+     * {@link #setJournal}.
+     */
+    public void setSnapshotter(Snapshotter snapshotter) {
+        this.snapshotter = snapshotter;
     }
 
     /**
-     * Publishes an event into the sequencer.  If the queue is full the call
-     * will block until space becomes available.  In a high-performance system
-     * you might prefer to drop or reject events when the buffer is full.
+     * Records per-stage latencies of every event in {@code latencies}, which
+     * the engine's {@link Publisher} should share.  Must be called before the
+     * sequencer thread and any publishing thread are started.
+     */
+    public void setLatencies(StageLatencies latencies) {
+        this.latencies = latencies;
+    }
+
+    /**
+     * Publishes an event into the sequencer.  If the buffer is full the call
+     * will block (or spin, in Disruptor mode) until space becomes available.
+     * In a high-performance system you might prefer to drop or reject events
+     * when the buffer is full.
+     *
+     * <p>In Disruptor mode the event's fields are copied into a ring slot;
+     * prefer the typed {@code publishXxx} methods to avoid allocating the
+     * event object in the first place.</p>
      */
     public void publish(Event event) {
+        int accountId = 0;
+        int instrumentId = 0;
+        if (event instanceof OrderEvent) {
+            OrderEvent order = (OrderEvent) event;
+            accountId = symbols.accountId(order.account());
+            instrumentId = symbols.instrumentId(order.instrument());
+        }
+        if (ringBuffer == null) {
+            put(event);
+            return;
+        }
+        long sequence = ringBuffer.next();
+        try {
+            EventSlot slot = ringBuffer.get(sequence);
+            slot.copyFrom(event, sequence);
+            slot.accountId = accountId;
+            slot.instrumentId = instrumentId;
+            stamp(slot);
+        } finally {
+            ringBuffer.publish(sequence);
+        }
+    }
+
+    /**
+     * Publishes a new order without allocating in Disruptor mode.
+     */
+    @Override
+    public void publishNewOrder(long tsIn, long clientOrderId, Side side, int quantity, long price, String account, String instrument) {
+        // Intern before claiming: a claimed sequence must be published, whatever happens
+        int accountId = symbols.accountId(account);
+        int instrumentId = symbols.instrumentId(instrument);
+        if (ringBuffer == null) {
+            put(new OrderEvent(tsIn, tsIn, clientOrderId, side, quantity, price, account, instrument));
+            return;
+        }
+        long sequence = ringBuffer.next();
+        try {
+            EventSlot slot = ringBuffer.get(sequence);
+            slot.setNewOrder(sequence, tsIn, clientOrderId, side, quantity, price, account, instrument);
+            slot.accountId = accountId;
+            slot.instrumentId = instrumentId;
+            stamp(slot);
+        } finally {
+            ringBuffer.publish(sequence);
+        }
+    }
+
+    /**
+     * Publishes a cancel request without allocating in Disruptor mode.
+     */
+    @Override
+    public void publishCancel(long tsIn, long clientOrderId) {
+        if (ringBuffer == null) {
+            put(new CancelEvent(tsIn, tsIn, clientOrderId));
+            return;
+        }
+        long sequence = ringBuffer.next();
+        try {
+            EventSlot slot = ringBuffer.get(sequence);
+            slot.setCancel(sequence, tsIn, clientOrderId);
+            stamp(slot);
+        } finally {
+            ringBuffer.publish(sequence);
+        }
+    }
+
+    /**
+     * Publishes a replace request without allocating in Disruptor mode.
+     */
+    @Override
+    public void publishReplace(long tsIn, long clientOrderId, int newQuantity, long newPrice) {
+        if (ringBuffer == null) {
+            put(new ReplaceEvent(tsIn, tsIn, clientOrderId, newQuantity, newPrice, null));
+            return;
+        }
+        long sequence = ringBuffer.next();
+        try {
+            EventSlot slot = ringBuffer.get(sequence);
+            slot.setReplace(sequence, tsIn, clientOrderId, newQuantity, newPrice, null);
+            stamp(slot);
+        } finally {
+            ringBuffer.publish(sequence);
+        }
+    }
+
+    /**
+     * Publishes a top-of-book market data update without allocating in Disruptor mode.
+     */
+    @Override
+    public void publishMarketData(long tsIn, String instrument, long bidPrice, long askPrice) {
+        if (ringBuffer == null) {
+            put(new MarketDataEvent(tsIn, tsIn, instrument, bidPrice, askPrice));
+            return;
+        }
+        long sequence = ringBuffer.next();
+        try {
+            EventSlot slot = ringBuffer.get(sequence);
+            slot.setMarketData(sequence, tsIn, instrument, bidPrice, askPrice);
+            stamp(slot);
+        } finally {
+            ringBuffer.publish(sequence);
+        }
+    }
+
+    /**
+     * Publishes {@code count} staged events as one batch.  In Disruptor mode the
+     * ring slots are claimed with a single sequence claim and made visible to
+     * the consumer together.  The count must not exceed the ring capacity.
+     * New orders whose symbols cannot be interned are dropped from the batch.
+     */
+    @Override
+    public void publishBatch(EventSlot[] events, int offset, int count) {
+        int resolved = 0;
+        for (int i = offset; i < offset + count; i++) {
+            if (resolveSymbols(events[i])) {
+                resolved++;
+            }
+        }
+        if (resolved == 0) {
+            return;
+        }
+        if (ringBuffer == null) {
+            for (int i = offset; i < offset + count; i++) {
+                EventSlot event = events[i];
+                if (event.instrumentId != UNRESOLVED) {
+                    event.seq = event.tsIn;
+                    put(event.toEvent());
+                }
+            }
+            return;
+        }
+        long hi = ringBuffer.next(resolved);
+        long lo = hi - resolved + 1;
+        try {
+            long enqueuedAt = latencies != null ? System.nanoTime() : 0;
+            long sequence = lo;
+            for (int i = offset; i < offset + count; i++) {
+                EventSlot event = events[i];
+                if (event.instrumentId != UNRESOLVED) {
+                    EventSlot slot = ringBuffer.get(sequence);
+                    slot.copyFrom(event, sequence);
+                    slot.tsEnqueue = enqueuedAt;
+                    sequence++;
+                }
+            }
+        } finally {
+            ringBuffer.publish(lo, hi);
+        }
+    }
+
+    /**
+     * Resolves a staged new order's account and instrument to registry IDs on
+     * the publishing thread, keeping string hashing off the matching thread.
+     * Returns false, marking the slot's instrument ID {@link #UNRESOLVED}, if
+     * the registry is full.
+     */
+    private boolean resolveSymbols(EventSlot slot) {
+        if (slot.type != EventType.NEW) {
+            slot.instrumentId = 0;
+            return true;
+        }
+        try {
+            slot.accountId = symbols.accountId(slot.account);
+            slot.instrumentId = symbols.instrumentId(slot.instrument);
+            return true;
+        } catch (IllegalStateException e) {
+            System.err.println("Dropped NEW clOrdId=" + slot.clientOrderId + ": " + e.getMessage());
+            slot.instrumentId = UNRESOLVED;
+            return false;
+        }
+    }
+
+    /**
+     * Stamps the slot with its enqueue time when latencies are recorded.
+     */
+    private void stamp(EventSlot slot) {
+        slot.tsEnqueue = latencies != null ? System.nanoTime() : 0;
+    }
+
+    private void put(Event event) {
         try {
             queue.put(event);
         } catch (InterruptedException e) {
@@ -39,26 +345,107 @@ public final class Sequencer implements Runnable {
 
     /**
      * Stops the sequencer loop.  The thread will exit after processing all
-     * currently queued events.
+     * currently queued events.  In Disruptor mode this method waits for the
+     * consumer to catch up, so the sequencer thread must already have been
+     * started.
      */
     public void stop() {
         running = false;
+        if (processor != null) {
+            // Let the consumer catch up with everything published so far before halting
+            long published = ringBuffer.getCursor();
+            while (!consumerExited && processor.getSequence().get() < published) {
+                Thread.onSpinWait();
+            }
+            processor.halt();
+        }
     }
 
     @Override
     public void run() {
+        if (processor != null) {
+            try {
+                processor.run();
+            } finally {
+                consumerExited = true;
+            }
+            return;
+        }
         try {
             while (running || !queue.isEmpty()) {
-                Event event = queue.poll(100, TimeUnit.MILLISECONDS);
-                if (event != null) {
+                Event first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                // Take everything else already waiting with a single lock acquisition
+                drained.add(first);
+                queue.drainTo(drained, DRAIN_LIMIT - 1);
+                for (int i = 0; i < drained.size(); i++) {
+                    Event event = drained.get(i);
+                    if (latencies != null) {
+                        latencies.onDispatch(typeOf(event), event.tsIn(), 0);
+                    }
+                    if (journal != null) {
+                        journal.append(event);
+                    }
                     dispatch(event);
+                    if (latencies != null) {
+                        latencies.onMatched();
+                    }
                 }
+                drained.clear();
+                endOfBatch();
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
     }
 
+    private void endOfBatch() {
+        if (journal != null) {
+            journal.endOfBatch();
+        }
+        if (snapshotter != null) {
+            snapshotter.endOfBatch();
+        }
+        engine.onBatchEnd();
+        if (latencies != null) {
+            latencies.onBatchEnd();
+        }
+    }
+
+    private void dispatch(EventSlot slot) {
+        switch (slot.type) {
+            case NEW:
+                engine.onNewOrder(slot.seq, slot.tsIn, slot.clientOrderId, slot.side, slot.quantity, slot.price, slot.accountId, slot.instrumentId);
+                break;
+            case CANCEL:
+                engine.onCancel(slot.seq, slot.tsIn, slot.clientOrderId);
+                break;
+            case REPLACE:
+                engine.onReplace(slot.seq, slot.tsIn, slot.clientOrderId, slot.quantity, slot.price);
+                break;
+            case MD_TICK:
+                engine.onMarketData(slot.seq, slot.tsIn, slot.instrument, slot.bidPrice, slot.askPrice);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported event type: " + slot.type);
+        }
+    }
+
+    private static EventType typeOf(Event event) {
+        if (event instanceof OrderEvent) {
+            return EventType.NEW;
+        } else if (event instanceof CancelEvent) {
+            return EventType.CANCEL;
+        } else if (event instanceof ReplaceEvent) {
+            return EventType.REPLACE;
+        } else if (event instanceof MarketDataEvent) {
+            return EventType.MD_TICK;
+        }
+        throw new IllegalArgumentException("Unsupported event type: " + event.getClass());
+    }
+
     private void dispatch(Event event) {
         if (event instanceof OrderEvent) {
             engine.onNewOrder((OrderEvent) event);
@@ -0,0 +1,40 @@
+package com.example.latencytrader;
+
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.BusySpinWaitStrategy;
+import com.lmax.disruptor.SleepingWaitStrategy;
+import com.lmax.disruptor.WaitStrategy;
+import com.lmax.disruptor.YieldingWaitStrategy;
+
+/**
+ * Selects how the Disruptor-backed {@link Sequencer} waits for new events when
+ * the ring buffer is empty.  The choice trades CPU usage for wake-up latency.
+ */
+public enum SequencerWaitStrategy {
+    /** Spins on the cursor.  Lowest latency; burns a full core and should be pinned. */
+    BUSY_SPIN,
+    /** Spins briefly then yields the CPU.  Near busy-spin latency with less starvation risk. */
+    YIELDING,
+    /** Spins, yields, then parks for short periods.  Good default for shared hosts. */
+    SLEEPING,
+    /** Waits on a lock and condition variable.  Lowest CPU usage, highest wake-up latency. */
+    BLOCKING;
+
+    /**
+     * Creates a new Disruptor wait strategy instance for this option.
+     */
+    public WaitStrategy create() {
+        switch (this) {
+            case BUSY_SPIN:
+                return new BusySpinWaitStrategy();
+            case YIELDING:
+                return new YieldingWaitStrategy();
+            case SLEEPING:
+                return new SleepingWaitStrategy();
+            case BLOCKING:
+                return new BlockingWaitStrategy();
+            default:
+                throw new IllegalStateException("Unknown wait strategy: " + this);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.latencytrader;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Selects the kind of thread a thread-per-connection gateway runs each client
+ * session on.
+ *
+ * <p>Virtual threads need a Java 21 runtime.  They are looked up reflectively
+ * so the project still builds and runs on Java 17; build with {@code -Pjava21}
+ * to target 21 directly.  Client reads then unmount the virtual thread instead
+ * of blocking a carrier, so thousands of mostly idle sessions share a handful
+ * of platform threads.</p>
+ */
+public enum SessionThreads {
+    /** One platform thread per session.  Lowest hand-off cost, but each idle session holds a stack and a kernel thread. */
+    PLATFORM,
+    /** One virtual thread per session.  Requires Java 21. */
+    VIRTUAL;
+
+    /**
+     * Creates a factory for session threads named {@code name}.  Throws
+     * {@link UnsupportedOperationException} for {@link #VIRTUAL} when the
+     * runtime has no virtual threads.
+     */
+    public ThreadFactory factory(String name) {
+        switch (this) {
+            case PLATFORM:
+                return task -> new Thread(task, name);
+            case VIRTUAL:
+                return virtualThreadFactory(name);
+            default:
+                throw new IllegalStateException("Unknown session thread kind: " + this);
+        }
+    }
+
+    /**
+     * Returns true if the running JVM supports virtual threads.
+     */
+    public static boolean virtualThreadsAvailable() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static ThreadFactory virtualThreadFactory(String name) {
+        try {
+            // Equivalent to Thread.ofVirtual().name(name).factory()
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Class<?> virtualBuilderClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            MethodHandle ofVirtual = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(virtualBuilderClass));
+            MethodHandle named = lookup.findVirtual(virtualBuilderClass, "name", MethodType.methodType(virtualBuilderClass, String.class));
+            MethodHandle factory = lookup.findVirtual(builderClass, "factory", MethodType.methodType(ThreadFactory.class));
+            return (ThreadFactory) factory.invoke(named.invoke(ofVirtual.invoke(), name));
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21", e);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Failed to create virtual thread factory", t);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.latencytrader;
+
+import org.agrona.collections.Hashing;
+import org.agrona.collections.Long2LongHashMap;
+
+/**
+ * Routes events to one of several independent {@link Sequencer}/{@link MatchingEngine}
+ * shards, each consumed on its own thread.  Instruments are hashed to shards,
+ * so every event for an instrument is sequenced by the same shard and matching
+ * per instrument stays deterministic while different instruments match in
+ * parallel.
+ *
+ * <p>Cancel and replace requests carry only the client order ID, so the router
+ * remembers which shard each new order was sent to.  The route map is striped
+ * and each stripe is locked independently, as gateways publish from several
+ * threads.  A route is removed when the shard's engine reports that the order
+ * reached a terminal state (see {@link MatchingEngine#setOrderDoneListener}),
+ * so the map holds only orders that are in flight or live, and a rejected
+ * cancel leaves the route of a live order in place.  Requests for unknown IDs
+ * go to the first shard, whose engine rejects them.</p>
+ *
+ * <p>Position limits are enforced across shards by giving every shard's engine
+ * the same {@link RiskManager}.</p>
+ */
+public final class ShardRouter implements EventPublisher {
+    private static final int ROUTE_STRIPES = 64;
+    private static final long NO_ROUTE = -1;
+
+    private final Sequencer[] shards;
+    private final Long2LongHashMap[] routes = new Long2LongHashMap[ROUTE_STRIPES];
+
+    /**
+     * Creates a router over {@code shards} and registers it to hear of
+     * terminal orders from each shard's engine, which must not be processing
+     * events yet.
+     */
+    public ShardRouter(Sequencer... shards) {
+        if (shards.length == 0) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.shards = shards.clone();
+        for (int i = 0; i < ROUTE_STRIPES; i++) {
+            routes[i] = new Long2LongHashMap(NO_ROUTE);
+        }
+        for (int i = 0; i < shards.length; i++) {
+            int shard = i;
+            shards[i].engine().setOrderDoneListener(clientOrderId -> onOrderDone(shard, clientOrderId));
+        }
+    }
+
+    /**
+     * Returns the number of shards.
+     */
+    public int shardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Returns the shard that sequences events for {@code instrument}.
+     */
+    public int shardOf(String instrument) {
+        return Math.floorMod(Hashing.hash(instrument.hashCode()), shards.length);
+    }
+
+    @Override
+    public void publishNewOrder(long tsIn, long clientOrderId, Side side, int quantity, long price, String account, String instrument) {
+        shards[routeNewOrder(clientOrderId, instrument)]
+                .publishNewOrder(tsIn, clientOrderId, side, quantity, price, account, instrument);
+    }
+
+    @Override
+    public void publishCancel(long tsIn, long clientOrderId) {
+        shards[routeOf(clientOrderId)].publishCancel(tsIn, clientOrderId);
+    }
+
+    @Override
+    public void publishReplace(long tsIn, long clientOrderId, int newQuantity, long newPrice) {
+        shards[routeOf(clientOrderId)].publishReplace(tsIn, clientOrderId, newQuantity, newPrice);
+    }
+
+    @Override
+    public void publishMarketData(long tsIn, String instrument, long bidPrice, long askPrice) {
+        shards[shardOf(instrument)].publishMarketData(tsIn, instrument, bidPrice, askPrice);
+    }
+
+    /**
+     * Publishes each run of consecutive events bound for the same shard with a
+     * single {@link Sequencer#publishBatch} call, preserving the order of the
+     * events within every shard.
+     */
+    @Override
+    public void publishBatch(EventSlot[] events, int offset, int count) {
+        int end = offset + count;
+        int runStart = offset;
+        int runShard = -1;
+        for (int i = offset; i < end; i++) {
+            int shard = route(events[i]);
+            if (shard != runShard) {
+                if (runShard >= 0) {
+                    shards[runShard].publishBatch(events, runStart, i - runStart);
+                }
+                runStart = i;
+                runShard = shard;
+            }
+        }
+        if (runShard >= 0) {
+            shards[runShard].publishBatch(events, runStart, end - runStart);
+        }
+    }
+
+    private int route(EventSlot event) {
+        switch (event.type) {
+            case NEW:
+                return routeNewOrder(event.clientOrderId, event.instrument);
+            case CANCEL:
+            case REPLACE:
+                return routeOf(event.clientOrderId);
+            case MD_TICK:
+                return shardOf(event.instrument);
+            default:
+                throw new IllegalArgumentException("Unsupported event type: " + event.type);
+        }
+    }
+
+    private int routeNewOrder(long clientOrderId, String instrument) {
+        int shard = shardOf(instrument);
+        Long2LongHashMap stripe = stripe(clientOrderId);
+        synchronized (stripe) {
+            stripe.put(clientOrderId, shard);
+        }
+        return shard;
+    }
+
+    private int routeOf(long clientOrderId) {
+        Long2LongHashMap stripe = stripe(clientOrderId);
+        long shard;
+        synchronized (stripe) {
+            shard = stripe.get(clientOrderId);
+        }
+        return shard == NO_ROUTE ? 0 : (int) shard;
+    }
+
+    /**
+     * Removes the route of an order that reached a terminal state on
+     * {@code shard}, unless the client order ID has meanwhile been routed to
+     * another shard.  Called on that shard's matching thread.
+     */
+    private void onOrderDone(int shard, long clientOrderId) {
+        Long2LongHashMap stripe = stripe(clientOrderId);
+        synchronized (stripe) {
+            if (stripe.get(clientOrderId) == shard) {
+                stripe.remove(clientOrderId);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of orders the router currently holds a route for.
+     */
+    int routeCount() {
+        int count = 0;
+        for (Long2LongHashMap stripe : routes) {
+            synchronized (stripe) {
+                count += stripe.size();
+            }
+        }
+        return count;
+    }
+
+    private Long2LongHashMap stripe(long clientOrderId) {
+        return routes[Hashing.hash(clientOrderId, ROUTE_STRIPES - 1)];
+    }
+}
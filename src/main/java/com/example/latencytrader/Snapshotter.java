@@ -0,0 +1,224 @@
+package com.example.latencytrader;
+
+import org.agrona.ExpandableDirectByteBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Takes periodic binary snapshots of the {@link MatchingEngine} so a restart
+ * only has to replay the {@link Journal} tail written after the latest
+ * snapshot.
+ *
+ * <p>Taking a snapshot is split between two threads so the matching thread is
+ * never held up by I/O.  At the end of a sequencer batch the matching thread
+ * copies the engine state into a preallocated direct buffer, a single
+ * sequential pass over the resting orders, and notes the journal segment
+ * being appended to.  The snapshot thread ({@link #run()}) then forces that
+ * segment, so the snapshot is never ahead of the durable journal, writes the
+ * buffer to a temporary file, forces it and renames it into place.  While a
+ * write is in progress further snapshots are deferred rather than queued.</p>
+ *
+ * <p>The copy does stall the matching thread, once per interval: the batch
+ * that triggers it is followed by a pause linear in the number of resting
+ * orders, 42 bytes each.  {@code SnapshotBenchmark} measures about 20 &micro;s
+ * at 1,000 orders, 0.3 ms at 10,000 and about 20 ms at 100,000, where the
+ * walk over orders scattered across the heap is dominated by cache misses.
+ * Events arriving meanwhile queue in the ring buffer.  The copy does not
+ * allocate; the buffer starts at {@link #INITIAL_CAPACITY} and is grown on
+ * the snapshot thread to twice the size of the last snapshot, so only a
+ * first snapshot larger than that grows it on the matching thread.  Copying
+ * in bounded slices over several batches would need every book change made
+ * meanwhile to preserve the captured image, which the engine does not
+ * track.</p>
+ *
+ * <pre>
+ * snapshot-&lt;journalIndex&gt;.snap (little-endian)
+ *   0  int32  magic         {@link #MAGIC}
+ *   4  int32  version       {@link #VERSION}
+ *   8  int64  journalIndex  index of the first journal record not included
+ *   16 engine state         see MatchingEngine#writeSnapshot
+ * </pre>
+ */
+public final class Snapshotter implements Runnable {
+    static final int MAGIC = 0x534E4150; // "SNAP"
+    static final int VERSION = 5;
+    static final int HEADER_LENGTH = 16;
+    static final String PREFIX = "snapshot-";
+    static final String SUFFIX = ".snap";
+    /** Number of snapshot files kept; older ones are deleted after a successful write. */
+    static final int RETAINED_SNAPSHOTS = 2;
+    /** Initial size of the snapshot buffer, in bytes. */
+    static final int INITIAL_CAPACITY = 1 << 20;
+
+    private static final ByteOrder BYTE_ORDER = MatchingEngine.SNAPSHOT_BYTE_ORDER;
+
+    private final Path directory;
+    private final MatchingEngine engine;
+    private final Journal journal;
+    private final long intervalNanos;
+    private final ExpandableDirectByteBuffer buffer = new ExpandableDirectByteBuffer(INITIAL_CAPACITY);
+    private volatile boolean requested;
+    /** Length of the captured snapshot awaiting the writer, or 0 when the buffer is free. */
+    private volatile int pendingLength;
+    private volatile long pendingIndex;
+    private volatile Path pendingJournalSegment;
+    private volatile boolean running = true;
+
+    /**
+     * Creates a snapshotter writing to {@code directory} every
+     * {@code intervalMillis} milliseconds, or only on {@link #requestSnapshot()}
+     * if the interval is zero.
+     */
+    public Snapshotter(Path directory, MatchingEngine engine, Journal journal, long intervalMillis) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.engine = engine;
+        this.journal = journal;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+    }
+
+    /**
+     * Asks for a snapshot at the end of the next sequencer batch.  May be
+     * called from any thread.
+     */
+    public void requestSnapshot() {
+        requested = true;
+    }
+
+    /**
+     * Called by the sequencer on the matching thread after the last event of
+     * a consumed batch.  Captures the engine state if a snapshot is due and
+     * the writer is free.
+     */
+    void endOfBatch() {
+        if (!requested || pendingLength != 0) {
+            return;
+        }
+        requested = false;
+        long journalIndex = journal.nextIndex();
+        pendingJournalSegment = journal.segmentFile();
+        buffer.putInt(0, MAGIC, BYTE_ORDER);
+        buffer.putInt(4, VERSION, BYTE_ORDER);
+        buffer.putLong(8, journalIndex, BYTE_ORDER);
+        int length = engine.writeSnapshot(buffer, HEADER_LENGTH);
+        pendingIndex = journalIndex;
+        pendingLength = length;
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Requests snapshots at the configured interval and writes captured
+     * snapshots to disk until {@link #stop()} is called.
+     */
+    @Override
+    public void run() {
+        long nextDue = System.nanoTime() + intervalNanos;
+        while (running) {
+            if (intervalNanos > 0 && System.nanoTime() - nextDue >= 0) {
+                requestSnapshot();
+                nextDue += intervalNanos;
+            }
+            int length = pendingLength;
+            if (length == 0) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+                continue;
+            }
+            try {
+                forceJournal(pendingJournalSegment);
+                write(pendingIndex, length);
+                // Leave room for the next snapshot to grow without expanding on the matching thread
+                if (length > buffer.capacity() / 2) {
+                    buffer.checkLimit((int) Math.min(2L * length, ExpandableDirectByteBuffer.MAX_BUFFER_LENGTH));
+                }
+            } catch (IOException e) {
+                System.err.println("Failed to write snapshot: " + e.getMessage());
+            } finally {
+                pendingLength = 0;
+            }
+        }
+    }
+
+    /**
+     * Forces the journal segment holding the last record the snapshot
+     * includes.  Earlier segments were forced when the journal rolled past
+     * them, unless it does not sync at all.  A sync through a file channel
+     * also covers what was written through the journal's mapping.
+     */
+    private static void forceJournal(Path segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.force(false);
+        }
+    }
+
+    private void write(long journalIndex, int length) throws IOException {
+        Path target = directory.resolve(fileName(journalIndex));
+        Path temp = directory.resolve(fileName(journalIndex) + ".tmp");
+        ByteBuffer bytes = buffer.byteBuffer().duplicate();
+        bytes.limit(length).position(0);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        List<Path> snapshots = snapshots(directory);
+        for (int i = 0; i < snapshots.size() - RETAINED_SNAPSHOTS; i++) {
+            Files.deleteIfExists(snapshots.get(i));
+        }
+    }
+
+    static String fileName(long journalIndex) {
+        return String.format("%s%020d%s", PREFIX, journalIndex, SUFFIX);
+    }
+
+    /**
+     * Lists the snapshot files in {@code directory}, oldest first.
+     */
+    static List<Path> snapshots(Path directory) throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        if (Files.isDirectory(directory)) {
+            try (Stream<Path> files = Files.list(directory)) {
+                files.filter(p -> {
+                    String name = p.getFileName().toString();
+                    return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+                }).sorted().forEach(snapshots::add);
+            }
+        }
+        return snapshots;
+    }
+
+    /**
+     * Loads the latest snapshot in {@code directory} into a fresh engine and
+     * returns the journal index to replay from, or 0 if there is no snapshot.
+     */
+    public static long loadLatest(Path directory, MatchingEngine engine) throws IOException {
+        List<Path> snapshots = snapshots(directory);
+        if (snapshots.isEmpty()) {
+            return 0;
+        }
+        Path latest = snapshots.get(snapshots.size() - 1);
+        UnsafeBuffer buffer = new UnsafeBuffer(Files.readAllBytes(latest));
+        if (buffer.getInt(0, BYTE_ORDER) != MAGIC || buffer.getInt(4, BYTE_ORDER) != VERSION) {
+            throw new IOException("Not a version " + VERSION + " snapshot: " + latest);
+        }
+        engine.loadSnapshot(buffer, HEADER_LENGTH);
+        return buffer.getLong(8, BYTE_ORDER);
+    }
+}
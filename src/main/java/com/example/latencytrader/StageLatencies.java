@@ -0,0 +1,163 @@
+package com.example.latencytrader;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.SingleWriterRecorder;
+
+/**
+ * Latency of each stage of the event pipeline, with one HdrHistogram per
+ * {@link Stage} and {@link EventType}.  Five timestamps are taken per event:
+ * gateway receive (the event's {@code tsIn}), sequencer enqueue, dispatch
+ * start, match complete and publish complete, and the histograms hold the
+ * intervals between them.
+ *
+ * <p>The {@link Sequencer} stamps each ring slot as it publishes it and
+ * reports dispatch start and match complete from the matching thread, where
+ * one clock read per event serves as both the match complete of one event and
+ * the dispatch start of the next within a batch.  The {@link Publisher}
+ * output thread reports publish complete once an event's acknowledgement or
+ * tick line has been written.  Each stage therefore has a single writer, and
+ * records into a {@link SingleWriterRecorder}: recording is wait-free and
+ * does not allocate on the matching thread, while the metrics thread takes
+ * completed intervals with {@link #intervalHistogram} or
+ * {@link #writeIntervals}.  Queue-mode events carry no enqueue stamp and are
+ * recorded from dispatch start on.</p>
+ */
+public final class StageLatencies {
+    /** The intervals between the five timestamps taken per event. */
+    public enum Stage {
+        /** Gateway receive to sequencer enqueue: parsing, staging and claiming a ring slot. */
+        ENQUEUE,
+        /** Sequencer enqueue to dispatch start: waiting in the ring. */
+        QUEUE,
+        /** Dispatch start to match complete: journalling, risk checks and matching. */
+        MATCH,
+        /** Acknowledgement or tick emitted to its line written by the output thread. */
+        PUBLISH,
+        /** Gateway receive to publish complete. */
+        TOTAL
+    }
+
+    /** Highest latency tracked, one hour in nanoseconds, as for the {@link Publisher} histograms. */
+    static final long HIGHEST_TRACKABLE_NANOS = 3600000000000L;
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final EventType[] EVENT_TYPES = EventType.values();
+
+    private final SingleWriterRecorder[][] recorders = new SingleWriterRecorder[STAGES.length][EVENT_TYPES.length];
+    /** Interval histograms handed back to the recorders, touched only under the lock. */
+    private final Histogram[][] intervals = new Histogram[STAGES.length][EVENT_TYPES.length];
+
+    // Current event, touched only by the matching thread.
+    private EventType eventType;
+    private long eventTsIn;
+    private long dispatchedAt;
+    private long lastMatchedAt;
+    private boolean inBatch;
+
+    public StageLatencies() {
+        for (Stage stage : STAGES) {
+            for (EventType type : EVENT_TYPES) {
+                recorders[stage.ordinal()][type.ordinal()] = new SingleWriterRecorder(HIGHEST_TRACKABLE_NANOS, 3);
+            }
+        }
+    }
+
+    /**
+     * Returns the latencies of {@code stage} for events of {@code type}
+     * recorded since the previous call for them, and starts a new interval.
+     * The histogram is reused by the next call for the same stage and type.
+     * Never blocks the recording threads.
+     */
+    public synchronized Histogram intervalHistogram(Stage stage, EventType type) {
+        Histogram interval = recorders[stage.ordinal()][type.ordinal()]
+                .getIntervalHistogram(intervals[stage.ordinal()][type.ordinal()]);
+        intervals[stage.ordinal()][type.ordinal()] = interval;
+        return interval;
+    }
+
+    /**
+     * Writes the interval of every stage and event type with values recorded
+     * since the previous call to {@code log}, tagged {@code STAGE.TYPE} such
+     * as {@code MATCH.NEW}.
+     */
+    public synchronized void writeIntervals(HistogramLogWriter log) {
+        for (Stage stage : STAGES) {
+            for (EventType type : EVENT_TYPES) {
+                Histogram interval = intervalHistogram(stage, type);
+                if (interval.getTotalCount() > 0) {
+                    interval.setTag(stage + "." + type);
+                    log.outputIntervalHistogram(interval);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the start of dispatching an event received at {@code tsIn} and
+     * enqueued at {@code enqueuedAt}, or 0 if it carries no enqueue stamp.
+     * Called on the matching thread.
+     */
+    void onDispatch(EventType type, long tsIn, long enqueuedAt) {
+        long now = inBatch ? lastMatchedAt : System.nanoTime();
+        inBatch = true;
+        eventType = type;
+        eventTsIn = tsIn;
+        dispatchedAt = now;
+        if (enqueuedAt != 0) {
+            record(Stage.ENQUEUE, type, enqueuedAt - tsIn);
+            record(Stage.QUEUE, type, now - enqueuedAt);
+        }
+    }
+
+    /**
+     * Records that the engine has finished with the event being dispatched.
+     */
+    void onMatched() {
+        long now = System.nanoTime();
+        lastMatchedAt = now;
+        record(Stage.MATCH, eventType, now - dispatchedAt);
+    }
+
+    /**
+     * Ends the batch, so the next dispatch reads the clock afresh instead of
+     * reusing the last match complete time.
+     */
+    void onBatchEnd() {
+        inBatch = false;
+    }
+
+    /**
+     * Returns the type of the event being dispatched, or {@code null} before
+     * the first.  Only meaningful on the matching thread.
+     */
+    EventType eventType() {
+        return eventType;
+    }
+
+    /**
+     * Returns the receive time of the event being dispatched.  Only meaningful
+     * on the matching thread.
+     */
+    long eventTsIn() {
+        return eventTsIn;
+    }
+
+    /**
+     * Records that the output of an event of type {@code typeOrdinal},
+     * received at {@code tsIn} and emitted by the engine at {@code emittedAt},
+     * was written at {@code publishedAt}.  Called on the output thread.
+     */
+    void onPublished(int typeOrdinal, long tsIn, long emittedAt, long publishedAt) {
+        recorders[Stage.PUBLISH.ordinal()][typeOrdinal].recordValue(clamp(publishedAt - emittedAt));
+        recorders[Stage.TOTAL.ordinal()][typeOrdinal].recordValue(clamp(publishedAt - tsIn));
+    }
+
+    private void record(Stage stage, EventType type, long nanos) {
+        recorders[stage.ordinal()][type.ordinal()].recordValue(clamp(nanos));
+    }
+
+    private static long clamp(long nanos) {
+        return Math.max(0, Math.min(nanos, HIGHEST_TRACKABLE_NANOS));
+    }
+}
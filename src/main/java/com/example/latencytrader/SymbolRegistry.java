@@ -0,0 +1,150 @@
+package com.example.latencytrader;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps instrument and account symbols to dense integer IDs, starting at zero
+ * and assigned in order of first use.  Symbols are interned where events enter
+ * the system, on the publishing threads, so that the matching engine and risk
+ * manager index arrays by ID and never hash or compare strings on the
+ * matching path.
+ *
+ * <p>Each namespace has a fixed capacity so that the arrays indexed by its IDs
+ * can be sized up front; interning a new symbol once the namespace is full
+ * throws {@link IllegalStateException}.  IDs are never reused.</p>
+ *
+ * <p>The registry is thread-safe.  Looking up a known symbol is a single
+ * concurrent map read; assigning a new ID takes a lock.  One registry is shared
+ * by every engine shard so that IDs, and the account positions indexed by
+ * them, mean the same thing everywhere.</p>
+ */
+public final class SymbolRegistry {
+    public static final int DEFAULT_MAX_INSTRUMENTS = 1024;
+    public static final int DEFAULT_MAX_ACCOUNTS = 65536;
+
+    private final Namespace instruments;
+    private final Namespace accounts;
+
+    public SymbolRegistry() {
+        this(DEFAULT_MAX_INSTRUMENTS, DEFAULT_MAX_ACCOUNTS);
+    }
+
+    public SymbolRegistry(int maxInstruments, int maxAccounts) {
+        this.instruments = new Namespace("instruments", maxInstruments);
+        this.accounts = new Namespace("accounts", maxAccounts);
+    }
+
+    /**
+     * Returns the ID of {@code instrument}, assigning one on first use.
+     */
+    public int instrumentId(String instrument) {
+        return instruments.intern(instrument);
+    }
+
+    /**
+     * Returns the ID of {@code instrument}, or -1 if it has not been interned.
+     * Never assigns an ID.
+     */
+    public int findInstrumentId(String instrument) {
+        return instruments.find(instrument);
+    }
+
+    /**
+     * Returns the instrument symbol for an ID returned by {@link #instrumentId}.
+     */
+    public String instrument(int instrumentId) {
+        return instruments.symbols[instrumentId];
+    }
+
+    /**
+     * Returns the maximum number of instruments, and so the bound on their IDs.
+     */
+    public int maxInstruments() {
+        return instruments.symbols.length;
+    }
+
+    /**
+     * Returns the number of instruments interned so far; every lower ID is assigned.
+     */
+    public int instrumentCount() {
+        return instruments.size;
+    }
+
+    /**
+     * Returns the ID of {@code account}, assigning one on first use.
+     */
+    public int accountId(String account) {
+        return accounts.intern(account);
+    }
+
+    /**
+     * Returns the ID of {@code account}, or -1 if it has not been interned.
+     * Unlike {@link #accountId}, never assigns an ID, so readers such as
+     * monitoring threads cannot create accounts.
+     */
+    public int findAccountId(String account) {
+        return accounts.find(account);
+    }
+
+    /**
+     * Returns the account symbol for an ID returned by {@link #accountId}.
+     */
+    public String account(int accountId) {
+        return accounts.symbols[accountId];
+    }
+
+    /**
+     * Returns the maximum number of accounts, and so the bound on their IDs.
+     */
+    public int maxAccounts() {
+        return accounts.symbols.length;
+    }
+
+    /**
+     * Returns the number of accounts interned so far; every lower ID is assigned.
+     */
+    public int accountCount() {
+        return accounts.size;
+    }
+
+    private static final class Namespace {
+        private final String name;
+        private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+        /** Symbol per ID.  Written before the ID is published through {@link #ids}. */
+        final String[] symbols;
+        volatile int size;
+
+        Namespace(String name, int capacity) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("Capacity for " + name + " must be positive: " + capacity);
+            }
+            this.name = name;
+            this.symbols = new String[capacity];
+        }
+
+        int intern(String symbol) {
+            Integer id = ids.get(symbol);
+            return id != null ? id : assign(symbol);
+        }
+
+        int find(String symbol) {
+            Integer id = ids.get(symbol);
+            return id != null ? id : -1;
+        }
+
+        private synchronized int assign(String symbol) {
+            Integer id = ids.get(symbol);
+            if (id != null) {
+                return id;
+            }
+            int next = size;
+            if (next == symbols.length) {
+                throw new IllegalStateException("Too many " + name + ": limit is " + symbols.length);
+            }
+            symbols[next] = symbol;
+            size = next + 1;
+            ids.put(symbol, next);
+            return next;
+        }
+    }
+}
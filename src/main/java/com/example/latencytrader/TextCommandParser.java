@@ -0,0 +1,309 @@
+package com.example.latencytrader;
+
+import org.agrona.DirectBuffer;
+import org.agrona.collections.Long2ObjectHashMap;
+
+/**
+ * Parses the text order commands accepted by the text gateways directly from
+ * bytes into a reusable {@link EventSlot}:
+ *
+ * <pre>
+ * NEW,clOrdId=123,side=B,qty=100,px=101.25,acct=ABC,sym=XYZ
+ * CXL,clOrdId=123
+ * RPL,clOrdId=123,qty=50,px=101.00[,sym=XYZ]
+ * </pre>
+ *
+ * <p>Fields must appear in this order.  Integers are accumulated digit by
+ * digit with overflow checks, and prices are read in fixed point and divided
+ * by the instrument's tick size from {@link TickSizes}, so a price is
+ * converted exactly and a price off the tick grid is rejected rather than
+ * rounded.  A replace carries no instrument unless {@code sym} is given.
+ * Without it the price is converted with the default tick size, which is only
+ * safe when no instrument overrides it, so a replace without {@code sym} is
+ * rejected when {@link TickSizes} has per-instrument overrides.</p>
+ *
+ * <p>Account and instrument symbols of up to eight characters are resolved
+ * through a cache keyed by their packed bytes, so a {@code String} is only
+ * created the first time a parser sees a value; longer symbols allocate.
+ * Parsing a valid line allocates nothing else.  Invalid lines throw
+ * {@link IllegalArgumentException}.  Instances are not thread-safe; use one
+ * per session.</p>
+ */
+final class TextCommandParser {
+    private static final long[] POWERS_OF_TEN = new long[TickSizes.SCALE_DIGITS + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final TickSizes tickSizes;
+    private final String defaultInstrument;
+    private final EventSlot event = new EventSlot();
+    /** Symbols of up to eight bytes keyed by their packed bytes. */
+    private final Long2ObjectHashMap<Symbol> symbols = new Long2ObjectHashMap<>();
+
+    private DirectBuffer buffer;
+    private int start;
+    private int position;
+    private int end;
+
+    /**
+     * Creates a parser converting prices with {@code tickSizes}.  If
+     * {@code defaultInstrument} is not {@code null} the {@code sym} field of a
+     * NEW command is optional and defaults to it; otherwise it is required.
+     */
+    TextCommandParser(TickSizes tickSizes, String defaultInstrument) {
+        this.tickSizes = tickSizes;
+        this.defaultInstrument = defaultInstrument;
+    }
+
+    /**
+     * Parses the command in {@code [offset, offset + length)}, which must not
+     * include the line terminator, and returns the reused event holding it,
+     * stamped with the current time.
+     */
+    EventSlot parse(DirectBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.start = offset;
+        this.position = offset;
+        this.end = offset + length;
+        if (length < 4 || buffer.getByte(offset + 3) != ',') {
+            throw new IllegalArgumentException("Unrecognized command");
+        }
+        byte a = buffer.getByte(offset);
+        byte b = buffer.getByte(offset + 1);
+        byte c = buffer.getByte(offset + 2);
+        position = offset + 4;
+        if (a == 'N' && b == 'E' && c == 'W') {
+            parseNewOrder();
+        } else if (a == 'C' && b == 'X' && c == 'L') {
+            expect("clOrdId=");
+            long clOrdId = parseLong();
+            expectEnd();
+            event.setCancel(0, System.nanoTime(), clOrdId);
+        } else if (a == 'R' && b == 'P' && c == 'L') {
+            parseReplace();
+        } else {
+            throw new IllegalArgumentException("Unrecognized command");
+        }
+        return event;
+    }
+
+    private void parseNewOrder() {
+        expect("clOrdId=");
+        long clOrdId = parseLong();
+        expect(",side=");
+        Side side;
+        byte sideCode = position < end ? buffer.getByte(position) : 0;
+        if (sideCode == 'B') {
+            side = Side.BUY;
+        } else if (sideCode == 'S') {
+            side = Side.SELL;
+        } else {
+            throw new IllegalArgumentException("Expected side B or S at column " + column());
+        }
+        position++;
+        expect(",qty=");
+        int qty = parseInt();
+        expect(",px=");
+        long priceUnits = parseDecimal();
+        expect(",acct=");
+        Symbol account = parseSymbol();
+        Symbol instrument = null;
+        if (position < end) {
+            expect(",sym=");
+            instrument = parseSymbol();
+        }
+        expectEnd();
+        String instrumentName;
+        long tickUnits;
+        if (instrument != null) {
+            instrumentName = instrument.name;
+            tickUnits = instrument.tickUnits;
+        } else if (defaultInstrument != null) {
+            instrumentName = defaultInstrument;
+            tickUnits = tickSizes.tickUnits(defaultInstrument);
+        } else {
+            throw new IllegalArgumentException("Missing sym");
+        }
+        event.setNewOrder(0, System.nanoTime(), clOrdId, side, qty, toTicks(priceUnits, tickUnits),
+                account.name, instrumentName);
+    }
+
+    private void parseReplace() {
+        expect("clOrdId=");
+        long clOrdId = parseLong();
+        expect(",qty=");
+        int qty = parseInt();
+        expect(",px=");
+        long priceUnits = parseDecimal();
+        long tickUnits;
+        if (position < end) {
+            expect(",sym=");
+            tickUnits = parseSymbol().tickUnits;
+        } else if (tickSizes.hasOverrides()) {
+            throw new IllegalArgumentException("Missing sym: required on RPL when tick sizes differ per instrument");
+        } else {
+            tickUnits = tickSizes.defaultTickUnits();
+        }
+        expectEnd();
+        event.setReplace(0, System.nanoTime(), clOrdId, qty, toTicks(priceUnits, tickUnits), null);
+    }
+
+    private void expect(String literal) {
+        int length = literal.length();
+        if (end - position < length) {
+            throw new IllegalArgumentException("Expected " + literal + " at column " + column());
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.getByte(position + i) != literal.charAt(i)) {
+                throw new IllegalArgumentException("Expected " + literal + " at column " + column());
+            }
+        }
+        position += length;
+    }
+
+    private void expectEnd() {
+        if (position != end) {
+            throw new IllegalArgumentException("Unexpected input at column " + column());
+        }
+    }
+
+    private long parseLong() {
+        int first = position;
+        long value = 0;
+        while (position < end) {
+            int digit = buffer.getByte(position) - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            if (value > (Long.MAX_VALUE - digit) / 10) {
+                throw new IllegalArgumentException("Number too large at column " + column());
+            }
+            value = value * 10 + digit;
+            position++;
+        }
+        if (position == first) {
+            throw new IllegalArgumentException("Expected digits at column " + column());
+        }
+        return value;
+    }
+
+    private int parseInt() {
+        int first = position;
+        long value = parseLong();
+        if (value > Integer.MAX_VALUE) {
+            position = first;
+            throw new IllegalArgumentException("Number too large at column " + column());
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parses an unsigned decimal such as {@code 101}, {@code 101.25} or
+     * {@code .5} into fixed-point units of {@link TickSizes#SCALE_DIGITS}
+     * decimal places.
+     */
+    private long parseDecimal() {
+        int first = position;
+        long whole = 0;
+        boolean digits = false;
+        while (position < end) {
+            int digit = buffer.getByte(position) - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            if (whole > (Long.MAX_VALUE / POWERS_OF_TEN[TickSizes.SCALE_DIGITS] - digit) / 10) {
+                throw new IllegalArgumentException("Price too large at column " + column());
+            }
+            whole = whole * 10 + digit;
+            digits = true;
+            position++;
+        }
+        long fraction = 0;
+        int decimals = 0;
+        if (position < end && buffer.getByte(position) == '.') {
+            position++;
+            while (position < end) {
+                int digit = buffer.getByte(position) - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                if (decimals == TickSizes.SCALE_DIGITS) {
+                    if (digit != 0) {
+                        throw new IllegalArgumentException("Too many decimal places at column " + column());
+                    }
+                } else {
+                    fraction = fraction * 10 + digit;
+                    decimals++;
+                }
+                digits = true;
+                position++;
+            }
+        }
+        if (!digits) {
+            position = first;
+            throw new IllegalArgumentException("Expected price at column " + column());
+        }
+        return whole * POWERS_OF_TEN[TickSizes.SCALE_DIGITS]
+                + fraction * POWERS_OF_TEN[TickSizes.SCALE_DIGITS - decimals];
+    }
+
+    private static long toTicks(long priceUnits, long tickUnits) {
+        if (priceUnits % tickUnits != 0) {
+            throw new IllegalArgumentException("Price is not a multiple of the tick size");
+        }
+        return priceUnits / tickUnits;
+    }
+
+    /**
+     * Parses a non-empty run of ASCII letters and digits.
+     */
+    private Symbol parseSymbol() {
+        int first = position;
+        long key = 0;
+        while (position < end) {
+            byte value = buffer.getByte(position);
+            if (!(value >= 'A' && value <= 'Z' || value >= 'a' && value <= 'z' || value >= '0' && value <= '9')) {
+                break;
+            }
+            key = (key << 8) | value;
+            position++;
+        }
+        int length = position - first;
+        if (length == 0) {
+            throw new IllegalArgumentException("Expected symbol at column " + column());
+        }
+        if (length > Long.BYTES) {
+            return newSymbol(buffer.getStringWithoutLengthAscii(first, length));
+        }
+        Symbol symbol = symbols.get(key);
+        if (symbol == null) {
+            symbol = newSymbol(buffer.getStringWithoutLengthAscii(first, length));
+            symbols.put(key, symbol);
+        }
+        return symbol;
+    }
+
+    private Symbol newSymbol(String name) {
+        return new Symbol(name, tickSizes.tickUnits(name));
+    }
+
+    private int column() {
+        return position - start + 1;
+    }
+
+    /** A symbol string and, should it name an instrument, its tick size. */
+    private static final class Symbol {
+        final String name;
+        final long tickUnits;
+
+        Symbol(String name, long tickUnits) {
+            this.name = name;
+            this.tickUnits = tickUnits;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.example.latencytrader;
+
+import org.agrona.IoUtil;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recorded top-of-book ticks for any number of instruments in a compact
+ * binary file, read through memory mapping for replay by
+ * {@link TickReplayFeeder}.  Files are created from CSV with
+ * {@link #importCsv}.
+ *
+ * <pre>
+ * File (little-endian)
+ *   0  int32  magic         'TICK'
+ *   4  int32  version       1
+ *   8  int64  record count
+ *   16 int64  offset of the instrument table
+ *   24 records
+ *   instrument table: int32 count, then per instrument int32 length and ASCII bytes
+ *
+ * Record (28 bytes)
+ *   0  int64  timestamp     nanoseconds on any clock, non-decreasing
+ *   8  int64  bid price     in ticks of the instrument
+ *   16 int64  ask price     in ticks of the instrument
+ *   24 int32  instrument    index into the instrument table
+ * </pre>
+ *
+ * <p>Records are mapped in windows of at most {@link #MAX_WINDOW_RECORDS}, so
+ * files larger than a single mapping can be replayed.  Instrument names are
+ * created once when the file is opened, so reading records does not
+ * allocate.  Instances are not thread-safe.</p>
+ */
+public final class TickFile implements AutoCloseable {
+    static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+    static final int MAGIC = 'T' | 'I' << 8 | 'C' << 16 | 'K' << 24;
+    static final int VERSION = 1;
+    static final int HEADER_LENGTH = 24;
+    static final int RECORD_LENGTH = 28;
+    /** Most records mapped at once. */
+    static final int MAX_WINDOW_RECORDS = (1 << 30) / RECORD_LENGTH;
+
+    private final FileChannel channel;
+    private final long recordCount;
+    private final String[] instruments;
+    private final int windowRecords;
+    private final UnsafeBuffer buffer = new UnsafeBuffer(0, 0);
+    private MappedByteBuffer window;
+    private long windowStart = -1;
+
+    /**
+     * Opens the tick file at {@code file}.  Throws {@link IOException} if it is
+     * not a tick file of a supported version.
+     */
+    public TickFile(Path file) throws IOException {
+        this(file, MAX_WINDOW_RECORDS);
+    }
+
+    TickFile(Path file, int windowRecords) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.windowRecords = windowRecords;
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(BYTE_ORDER);
+            readFully(header, 0);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("Not a version " + VERSION + " tick file: " + file);
+            }
+            this.recordCount = header.getLong(8);
+            long tableOffset = header.getLong(16);
+            if (tableOffset != HEADER_LENGTH + recordCount * RECORD_LENGTH || tableOffset > channel.size()) {
+                throw new IOException("Truncated tick file: " + file);
+            }
+            ByteBuffer table = ByteBuffer.allocate((int) (channel.size() - tableOffset)).order(BYTE_ORDER);
+            readFully(table, tableOffset);
+            this.instruments = new String[table.getInt(0)];
+            int position = 4;
+            for (int i = 0; i < instruments.length; i++) {
+                int length = table.getInt(position);
+                instruments[i] = new String(table.array(), position + 4, length, StandardCharsets.US_ASCII);
+                position += 4 + length;
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void readFully(ByteBuffer target, long position) throws IOException {
+        while (target.hasRemaining()) {
+            if (channel.read(target, position + target.position()) < 0) {
+                throw new IOException("Unexpected end of tick file");
+            }
+        }
+    }
+
+    /**
+     * Returns the number of ticks in the file.
+     */
+    public long recordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Returns the instrument names, indexed as in the records.
+     */
+    public String[] instruments() {
+        return instruments.clone();
+    }
+
+    /**
+     * Returns the timestamp of tick {@code index} in nanoseconds.
+     */
+    public long timestamp(long index) {
+        return buffer.getLong(offset(index), BYTE_ORDER);
+    }
+
+    public long bidPrice(long index) {
+        return buffer.getLong(offset(index) + 8, BYTE_ORDER);
+    }
+
+    public long askPrice(long index) {
+        return buffer.getLong(offset(index) + 16, BYTE_ORDER);
+    }
+
+    public String instrument(long index) {
+        return instruments[buffer.getInt(offset(index) + 24, BYTE_ORDER)];
+    }
+
+    /**
+     * Returns the offset of tick {@code index} in the buffer, mapping the
+     * window holding it first if necessary.
+     */
+    private int offset(long index) {
+        if (index < 0 || index >= recordCount) {
+            throw new IndexOutOfBoundsException("Tick " + index + " of " + recordCount);
+        }
+        long start = index - index % windowRecords;
+        if (start != windowStart) {
+            map(start);
+        }
+        return (int) (index - start) * RECORD_LENGTH;
+    }
+
+    private void map(long start) {
+        if (window != null) {
+            IoUtil.unmap(window);
+            window = null;
+        }
+        long records = Math.min(windowRecords, recordCount - start);
+        try {
+            window = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_LENGTH + start * RECORD_LENGTH,
+                    records * RECORD_LENGTH);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to map tick file", e);
+        }
+        buffer.wrap(window);
+        windowStart = start;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (window != null) {
+            IoUtil.unmap(window);
+            window = null;
+        }
+        channel.close();
+    }
+
+    /**
+     * Converts a CSV file of {@code timestamp,instrument,bid,ask} lines into a
+     * tick file and returns the number of ticks written.  Timestamps are
+     * integer nanoseconds and must not decrease; prices are decimals converted
+     * exactly to ticks of {@code tickSizes}.  A first line that does not start
+     * with a digit is taken as a header and skipped.  Throws
+     * {@link IllegalArgumentException} naming the line of any malformed value.
+     */
+    public static long importCsv(Path csv, Path file, TickSizes tickSizes) throws IOException {
+        Map<String, Integer> instrumentIndexes = new HashMap<>();
+        List<String> instrumentNames = new ArrayList<>();
+        ByteBuffer records = ByteBuffer.allocate(RECORD_LENGTH * 4096).order(BYTE_ORDER);
+        long count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.US_ASCII);
+             FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.position(HEADER_LENGTH);
+            long lastTimestamp = Long.MIN_VALUE;
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || lineNumber == 1 && !Character.isDigit(line.charAt(0))) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                if (fields.length != 4) {
+                    throw new IllegalArgumentException("Expected timestamp,instrument,bid,ask at line " + lineNumber);
+                }
+                String instrument = fields[1].trim();
+                long timestamp;
+                long bid;
+                long ask;
+                try {
+                    timestamp = Long.parseLong(fields[0].trim());
+                    long tickUnits = tickSizes.tickUnits(instrument);
+                    bid = toTicks(fields[2].trim(), tickUnits);
+                    ask = toTicks(fields[3].trim(), tickUnits);
+                } catch (ArithmeticException | NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid value at line " + lineNumber + ": " + e.getMessage(), e);
+                }
+                if (timestamp < lastTimestamp) {
+                    throw new IllegalArgumentException("Timestamp goes backwards at line " + lineNumber);
+                }
+                lastTimestamp = timestamp;
+                Integer index = instrumentIndexes.get(instrument);
+                if (index == null) {
+                    index = instrumentNames.size();
+                    instrumentIndexes.put(instrument, index);
+                    instrumentNames.add(instrument);
+                }
+                records.putLong(timestamp).putLong(bid).putLong(ask).putInt(index);
+                if (!records.hasRemaining()) {
+                    write(out, records);
+                }
+                count++;
+            }
+            write(out, records);
+
+            long tableOffset = out.position();
+            int tableLength = 4;
+            for (String name : instrumentNames) {
+                tableLength += 4 + name.length();
+            }
+            ByteBuffer table = ByteBuffer.allocate(tableLength).order(BYTE_ORDER);
+            table.putInt(instrumentNames.size());
+            for (String name : instrumentNames) {
+                table.putInt(name.length()).put(name.getBytes(StandardCharsets.US_ASCII));
+            }
+            write(out, table);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(BYTE_ORDER);
+            header.putInt(MAGIC).putInt(VERSION).putLong(count).putLong(tableOffset);
+            out.position(0);
+            write(out, header);
+        }
+        return count;
+    }
+
+    /**
+     * Converts a decimal price to ticks of {@code tickUnits} fixed-point
+     * units, throwing {@link ArithmeticException} if it is off the tick grid.
+     */
+    private static long toTicks(String price, long tickUnits) {
+        long units = new BigDecimal(price).movePointRight(TickSizes.SCALE_DIGITS).longValueExact();
+        if (units % tickUnits != 0) {
+            throw new ArithmeticException("Price is not a multiple of the tick size: " + price);
+        }
+        return units / tickUnits;
+    }
+
+    private static void write(FileChannel out, ByteBuffer source) throws IOException {
+        source.flip();
+        while (source.hasRemaining()) {
+            out.write(source);
+        }
+        source.clear();
+    }
+}
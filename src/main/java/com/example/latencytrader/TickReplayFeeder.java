@@ -0,0 +1,104 @@
+package com.example.latencytrader;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a recorded {@link TickFile} as market data, reproducing the bursts
+ * of a real feed that {@link MarketDataFeeder}'s random walk cannot.  Ticks
+ * are replayed at their original timing, scaled by a speed multiplier, or
+ * with a speed of {@link #AS_FAST_AS_POSSIBLE} without any pacing.
+ *
+ * <p>Every tick that has fallen due is staged in a preallocated
+ * {@link EventSlot} and published with a single
+ * {@link EventPublisher#publishBatch} call of up to {@link #BATCH_SIZE}
+ * ticks, so a burst reaches the {@link Sequencer} with one ring claim per
+ * batch.  Each tick is stamped with the time it is published.  Replay does
+ * not allocate.</p>
+ */
+public final class TickReplayFeeder implements Runnable {
+    /** Speed at which ticks are published without waiting for their timestamps. */
+    public static final double AS_FAST_AS_POSSIBLE = 0;
+    /** Most ticks published in one batch. */
+    static final int BATCH_SIZE = 256;
+
+    private final EventPublisher sequencer;
+    private final TickFile ticks;
+    private final double speed;
+    private final EventSlot[] batch = new EventSlot[BATCH_SIZE];
+    private volatile boolean running = true;
+    private volatile long published;
+
+    /**
+     * Creates a feeder replaying {@code ticks} into {@code sequencer}.  With a
+     * {@code speed} of 1 ticks keep their original spacing, with 10 they come
+     * ten times as fast, and with {@link #AS_FAST_AS_POSSIBLE} as fast as the
+     * sequencer accepts them.
+     */
+    public TickReplayFeeder(EventPublisher sequencer, TickFile ticks, double speed) {
+        if (speed < 0 || Double.isNaN(speed)) {
+            throw new IllegalArgumentException("Speed must not be negative: " + speed);
+        }
+        this.sequencer = sequencer;
+        this.ticks = ticks;
+        this.speed = speed;
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch[i] = new EventSlot();
+        }
+    }
+
+    /**
+     * Parses a speed such as {@code 1}, {@code 10} or {@code max}, which stands
+     * for {@link #AS_FAST_AS_POSSIBLE}.
+     */
+    public static double parseSpeed(String speed) {
+        return "max".equalsIgnoreCase(speed.trim()) ? AS_FAST_AS_POSSIBLE : Double.parseDouble(speed);
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Returns the number of ticks published so far.
+     */
+    public long published() {
+        return published;
+    }
+
+    @Override
+    public void run() {
+        long count = ticks.recordCount();
+        if (count == 0) {
+            return;
+        }
+        long firstTimestamp = ticks.timestamp(0);
+        long start = System.nanoTime();
+        long index = 0;
+        while (running && index < count) {
+            long now = System.nanoTime();
+            // Ticks up to this recorded timestamp are due
+            long dueTimestamp = speed == AS_FAST_AS_POSSIBLE
+                    ? Long.MAX_VALUE : firstTimestamp + (long) ((now - start) * speed);
+            int staged = 0;
+            while (staged < BATCH_SIZE && index < count && ticks.timestamp(index) <= dueTimestamp) {
+                batch[staged++].setMarketData(0, now, ticks.instrument(index), ticks.bidPrice(index), ticks.askPrice(index));
+                index++;
+            }
+            if (staged > 0) {
+                sequencer.publishBatch(batch, 0, staged);
+                published = index;
+            } else {
+                long wait = (long) ((ticks.timestamp(index) - firstTimestamp) / speed) - (now - start);
+                if (wait > TimeUnit.MICROSECONDS.toNanos(100)) {
+                    LockSupport.parkNanos(wait - TimeUnit.MICROSECONDS.toNanos(50));
+                } else {
+                    Thread.yield();
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("Replayed %d ticks in %.1f ms (%.0f ticks/s)%n",
+                index, elapsed / 1e6, index * 1e9 / Math.max(1, elapsed));
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.latencytrader;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tick size per instrument, used by the text gateways to convert decimal
+ * prices to the integer ticks the engine works in.  Tick sizes are held in
+ * fixed point with {@link #SCALE_DIGITS} decimal places, so a price converts
+ * exactly or not at all: {@code 101.25} with a tick size of {@code 0.01} is
+ * 10125 ticks, while {@code 101.255} is rejected rather than rounded.
+ *
+ * <p>Instances are immutable and may be shared by every gateway thread.</p>
+ */
+public final class TickSizes {
+    /** Decimal places of the fixed-point representation of prices and tick sizes. */
+    public static final int SCALE_DIGITS = 8;
+    /** One tick of 0.01, the historical conversion of {@code px * 100}. */
+    public static final TickSizes DEFAULT = new TickSizes(toUnits("0.01"), Map.of());
+
+    private final long defaultTickUnits;
+    private final Map<String, Long> tickUnits;
+
+    private TickSizes(long defaultTickUnits, Map<String, Long> tickUnits) {
+        this.defaultTickUnits = defaultTickUnits;
+        this.tickUnits = tickUnits;
+    }
+
+    /**
+     * Parses a default tick size such as {@code 0.01} and per-instrument
+     * overrides of the form {@code XYZ:0.05,ABC:0.0001}, which may be empty or
+     * {@code null}.  Throws {@link IllegalArgumentException} on a malformed or
+     * non-positive tick size.
+     */
+    public static TickSizes parse(String defaultTickSize, String instrumentTickSizes) {
+        Map<String, Long> ticks = new HashMap<>();
+        if (instrumentTickSizes != null && !instrumentTickSizes.isBlank()) {
+            for (String entry : instrumentTickSizes.split(",")) {
+                int colon = entry.indexOf(':');
+                if (colon <= 0) {
+                    throw new IllegalArgumentException("Expected INSTRUMENT:TICK but got " + entry);
+                }
+                ticks.put(entry.substring(0, colon).trim(), toUnits(entry.substring(colon + 1).trim()));
+            }
+        }
+        return new TickSizes(toUnits(defaultTickSize), Map.copyOf(ticks));
+    }
+
+    /**
+     * Returns the tick size of {@code instrument} in fixed-point units.
+     */
+    long tickUnits(String instrument) {
+        Long units = tickUnits.get(instrument);
+        return units != null ? units : defaultTickUnits;
+    }
+
+    /**
+     * Returns whether any instrument has a tick size other than the default.
+     */
+    boolean hasOverrides() {
+        return !tickUnits.isEmpty();
+    }
+
+    /**
+     * Returns the tick size of instruments without an override, in fixed-point units.
+     */
+    long defaultTickUnits() {
+        return defaultTickUnits;
+    }
+
+    private static long toUnits(String tickSize) {
+        long units;
+        try {
+            units = new BigDecimal(tickSize).movePointRight(SCALE_DIGITS).longValueExact();
+        } catch (ArithmeticException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid tick size " + tickSize, e);
+        }
+        if (units <= 0) {
+            throw new IllegalArgumentException("Tick size must be positive: " + tickSize);
+        }
+        return units;
+    }
+}
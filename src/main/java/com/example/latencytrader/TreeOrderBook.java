@@ -0,0 +1,225 @@
+package com.example.latencytrader;
+
+import org.agrona.collections.Long2ObjectHashMap;
+
+import java.util.Comparator;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Simple in-memory order book keyed by price.  Uses separate maps for bids and
+ * asks so that the best price on either side can be accessed efficiently.
+ *
+ * <p>Bids are stored in descending order (highest price first) and asks are stored
+ * in ascending order (lowest price first).  Each {@link PriceLevel} chains its
+ * orders in an intrusive FIFO list to enforce price-time priority.</p>
+ *
+ * <p>Resting orders are also indexed by server order ID in a primitive-keyed map.
+ * Each order knows the level it rests on, so cancel, modify and fills unlink the
+ * order directly without searching the book.</p>
+ *
+ * <p>The trees are only used to keep levels ordered.  Levels are found by price
+ * through primitive-keyed maps and the best level per side is cached, so
+ * matching against existing levels neither boxes prices nor allocates.  Creating
+ * a new price level still allocates its tree node; use {@link ArrayOrderBook}
+ * where that matters.</p>
+ */
+public final class TreeOrderBook implements OrderBook {
+    /** Map of bid price to level of resting orders. */
+    private final NavigableMap<Long, PriceLevel> bids = new TreeMap<>(Comparator.reverseOrder());
+    /** Map of ask price to level of resting orders. */
+    private final NavigableMap<Long, PriceLevel> asks = new TreeMap<>();
+    /** Price levels keyed by primitive price, mirroring the trees. */
+    private final Long2ObjectHashMap<PriceLevel> bidLevelsByPrice = new Long2ObjectHashMap<>();
+    private final Long2ObjectHashMap<PriceLevel> askLevelsByPrice = new Long2ObjectHashMap<>();
+    /** Resting orders keyed by server-assigned order ID. */
+    private final Long2ObjectHashMap<Order> ordersById = new Long2ObjectHashMap<>();
+    /** Cached best level per side, or null when that side is empty. */
+    private PriceLevel bestBidLevel;
+    private PriceLevel bestAskLevel;
+
+    /**
+     * Adds a new resting order to the book.  The order must already have been
+     * validated by pre-trade risk checks.
+     */
+    @Override
+    public void add(Order order) {
+        link(order);
+        ordersById.put(order.getOrderId(), order);
+    }
+
+    /**
+     * Removes an order from the book completely.  This method is called when
+     * a cancel request is processed.  The order is located through the order ID
+     * index; if not found, nothing is removed.
+     */
+    @Override
+    public boolean remove(long orderId) {
+        Order order = ordersById.remove(orderId);
+        if (order == null) {
+            return false;
+        }
+        unlink(order);
+        return true;
+    }
+
+    /**
+     * Modifies an existing order's price and quantity.  Locates the order by
+     * server-assigned ID, removes it from its current price level, applies
+     * the new values and re-inserts it at the back of the new price level
+     * queue.  Returns {@code true} if the order was found and modified.
+     */
+    @Override
+    public boolean modify(long orderId, long newPrice, int newQuantity) {
+        Order order = ordersById.get(orderId);
+        if (order == null) {
+            return false;
+        }
+        unlink(order);
+        order.setQuantity(newQuantity);
+        order.setPrice(newPrice);
+        link(order);
+        return true;
+    }
+
+    @Override
+    public Order bestOrder(Side side) {
+        PriceLevel level = side == Side.BUY ? bestBidLevel : bestAskLevel;
+        return level == null ? null : level.head;
+    }
+
+    @Override
+    public void fill(Order order, int quantity) {
+        order.level.reduce(order, quantity);
+        if (order.getQuantity() == 0) {
+            ordersById.remove(order.getOrderId());
+            unlink(order);
+        }
+    }
+
+    @Override
+    public long bestBidPrice() {
+        return bestBidLevel == null ? NO_PRICE : bestBidLevel.price;
+    }
+
+    @Override
+    public long bestAskPrice() {
+        return bestAskLevel == null ? NO_PRICE : bestAskLevel.price;
+    }
+
+    /**
+     * Returns the best bid price or null if no bids are present, reusing the
+     * level's boxed key.
+     */
+    @Override
+    public Long bestBid() {
+        return bestBidLevel == null ? null : bestBidLevel.priceKey;
+    }
+
+    /**
+     * Returns the best ask price or null if no asks are present, reusing the
+     * level's boxed key.
+     */
+    @Override
+    public Long bestAsk() {
+        return bestAskLevel == null ? null : bestAskLevel.priceKey;
+    }
+
+    /**
+     * Returns whether the book has any resting orders.
+     */
+    @Override
+    public boolean isEmpty() {
+        return bids.isEmpty() && asks.isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Steps from the cached best level through the tree by key, which needs
+     * no iterator, so the query does not allocate.</p>
+     */
+    @Override
+    public int depth(Side side, int maxLevels, long[] prices, long[] quantities, int[] orderCounts) {
+        boolean isBid = side == Side.BUY;
+        NavigableMap<Long, PriceLevel> tree = isBid ? bids : asks;
+        Long2ObjectHashMap<PriceLevel> byPrice = isBid ? bidLevelsByPrice : askLevelsByPrice;
+        PriceLevel level = isBid ? bestBidLevel : bestAskLevel;
+        int count = 0;
+        while (level != null && count < maxLevels) {
+            prices[count] = level.price;
+            quantities[count] = level.quantity;
+            if (orderCounts != null) {
+                orderCounts[count] = level.orderCount;
+            }
+            count++;
+            Long next = tree.higherKey(level.priceKey);
+            level = next == null ? null : byPrice.get(next.longValue());
+        }
+        return count;
+    }
+
+    @Override
+    public void forEachOrder(Consumer<Order> visitor) {
+        for (PriceLevel level : bids.values()) {
+            level.forEach(visitor);
+        }
+        for (PriceLevel level : asks.values()) {
+            level.forEach(visitor);
+        }
+    }
+
+    private void link(Order order) {
+        long price = order.getPrice();
+        if (order.getSide() == Side.BUY) {
+            PriceLevel level = bidLevelsByPrice.get(price);
+            if (level == null) {
+                level = newLevel(price, bids, bidLevelsByPrice);
+                if (bestBidLevel == null || price > bestBidLevel.price) {
+                    bestBidLevel = level;
+                }
+            }
+            level.addLast(order);
+        } else {
+            PriceLevel level = askLevelsByPrice.get(price);
+            if (level == null) {
+                level = newLevel(price, asks, askLevelsByPrice);
+                if (bestAskLevel == null || price < bestAskLevel.price) {
+                    bestAskLevel = level;
+                }
+            }
+            level.addLast(order);
+        }
+    }
+
+    private static PriceLevel newLevel(long price, NavigableMap<Long, PriceLevel> tree,
+                                       Long2ObjectHashMap<PriceLevel> byPrice) {
+        PriceLevel level = new PriceLevel(price);
+        level.priceKey = price;
+        tree.put(level.priceKey, level);
+        byPrice.put(price, level);
+        return level;
+    }
+
+    private void unlink(Order order) {
+        PriceLevel level = order.level;
+        level.remove(order);
+        if (!level.isEmpty()) {
+            return;
+        }
+        if (order.getSide() == Side.BUY) {
+            bids.remove(level.priceKey);
+            bidLevelsByPrice.remove(level.price);
+            if (level == bestBidLevel) {
+                bestBidLevel = bids.isEmpty() ? null : bids.get(bids.firstKey());
+            }
+        } else {
+            asks.remove(level.priceKey);
+            askLevelsByPrice.remove(level.price);
+            if (level == bestAskLevel) {
+                bestAskLevel = asks.isEmpty() ? null : asks.get(asks.firstKey());
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.latencytrader;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the {@link MatchingEngineTest} scenarios against an {@link ArrayOrderBook}
+ * and adds checks specific to its bounded tick range.
+ */
+public class ArrayOrderBookMatchingEngineTest extends MatchingEngineTest {
+    @Override
+    protected MatchingEngine newEngine(RiskManager rm, MatchingEngine.MatchListener listener) {
+        MatchingEngine engine = new MatchingEngine(rm, listener);
+        engine.registerOrderBook("XYZ", new ArrayOrderBook(9000L, 2000));
+        return engine;
+    }
+
+    @Test
+    public void testBestPriceTracksNextLevelWhenEmptied() {
+        ArrayOrderBook book = new ArrayOrderBook(100L, 50);
+        book.add(new Order(1, 1, Side.BUY, 10, 120L, 0));
+        book.add(new Order(2, 2, Side.BUY, 10, 110L, 0));
+        book.add(new Order(3, 3, Side.SELL, 10, 130L, 0));
+        book.add(new Order(4, 4, Side.SELL, 10, 140L, 0));
+        assertEquals(120L, book.bestBid());
+        assertEquals(130L, book.bestAsk());
+        assertTrue(book.remove(1));
+        assertTrue(book.remove(3));
+        assertEquals(110L, book.bestBid());
+        assertEquals(140L, book.bestAsk());
+        assertEquals(110L, book.bestBidPrice());
+        assertEquals(140L, book.bestAskPrice());
+        assertTrue(book.remove(2));
+        assertTrue(book.remove(4));
+        assertTrue(book.isEmpty());
+        assertEquals(OrderBook.NO_PRICE, book.bestBidPrice());
+        assertEquals(OrderBook.NO_PRICE, book.bestAskPrice());
+        assertNull(book.bestAsk());
+        assertFalse(book.remove(4));
+    }
+
+    @Test
+    public void testRejectsPriceOutsideRange() {
+        RecordingAcks acks = new RecordingAcks();
+        MatchingEngine engine = newEngine(new RiskManager(1000, 1000), acks);
+        engine.onNewOrder(new OrderEvent(1, 1, 1L, Side.BUY, 100, 20000L, "A", "XYZ"));
+        assertEquals("REJECTED_PRICE", acks.lastStatus);
+        assertTrue(engine.getOrderBook("XYZ").isEmpty());
+    }
+
+    static class RecordingAcks extends NoopListener {
+        String lastStatus;
+
+        @Override
+        public void onAck(long clientOrderId, long orderId, String status, long tsIn) {
+            lastStatus = status;
+        }
+    }
+}
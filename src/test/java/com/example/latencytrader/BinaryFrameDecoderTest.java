@@ -0,0 +1,52 @@
+package com.example.latencytrader;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests decoding of {@link BinaryProtocol} frames, including frames split
+ * across reads.
+ */
+public class BinaryFrameDecoderTest {
+    @Test
+    public void testDecodesFramesSplitAcrossReads() throws InterruptedException {
+        SequencerTest.RecordingListener listener = new SequencerTest.RecordingListener();
+        MatchingEngine engine = new MatchingEngine(new RiskManager(1000, 1000), listener);
+        Sequencer sequencer = new Sequencer(engine, 1024, SequencerWaitStrategy.BLOCKING);
+        Thread thread = new Thread(sequencer, "BinaryFrameDecoderTest");
+        thread.start();
+
+        UnsafeBuffer wire = new UnsafeBuffer(ByteBuffer.allocateDirect(256));
+        int length = BinaryProtocol.encodeNewOrder(wire, 0, 7L, Side.BUY, 100, 10000L, "ACC", "XYZ");
+        length += BinaryProtocol.encodeReplace(wire, length, 7L, 50, 10001L);
+        length += BinaryProtocol.encodeCancel(wire, length, 7L);
+
+        BinaryFrameDecoder decoder = new BinaryFrameDecoder(sequencer);
+        // First read ends part-way through the second frame
+        int firstRead = BinaryProtocol.HEADER_LENGTH + BinaryProtocol.NEW_ORDER_BLOCK_LENGTH + 5;
+        int consumed = decoder.decode(wire, 0, firstRead);
+        assertEquals(BinaryProtocol.HEADER_LENGTH + BinaryProtocol.NEW_ORDER_BLOCK_LENGTH, consumed);
+        consumed += decoder.decode(wire, consumed, length - consumed);
+        assertEquals(length, consumed);
+
+        sequencer.stop();
+        thread.join(5000);
+        assertEquals(List.of("7:NEW_ACCEPTED", "7:REPLACED", "7:CANCELLED"), listener.acks);
+    }
+
+    @Test
+    public void testSymbolFieldsAreTrimmed() {
+        UnsafeBuffer wire = new UnsafeBuffer(ByteBuffer.allocateDirect(64));
+        BinaryProtocol.encodeNewOrder(wire, 0, 1L, Side.SELL, 1, 1L, "AB", "ABCDEFGH");
+        BinaryProtocol.NewOrderDecoder decoder = new BinaryProtocol.NewOrderDecoder()
+                .wrap(wire, BinaryProtocol.HEADER_LENGTH);
+        assertEquals("AB", BinaryProtocol.decodeSymbol(wire, decoder.accountOffset()));
+        assertEquals("ABCDEFGH", BinaryProtocol.decodeSymbol(wire, decoder.symbolOffset()));
+        assertEquals(BinaryProtocol.SIDE_SELL, decoder.side());
+    }
+}
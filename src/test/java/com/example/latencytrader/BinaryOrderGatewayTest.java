@@ -0,0 +1,34 @@
+package com.example.latencytrader;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that stopping the binary gateway ends its accept loop and releases
+ * its port without a client having to connect.
+ */
+public class BinaryOrderGatewayTest {
+    @Test
+    public void testStopReleasesThePort() throws Exception {
+        MatchingEngine engine = new MatchingEngine(new RiskManager(1000, 1000), new SequencerTest.RecordingListener());
+        Sequencer sequencer = new Sequencer(engine, 1024, SequencerWaitStrategy.BLOCKING);
+        BinaryOrderGateway gateway = new BinaryOrderGateway(sequencer, 0);
+        Thread thread = new Thread(gateway, "BinaryOrderGatewayTest");
+        thread.start();
+        while (gateway.localPort() < 0) {
+            Thread.sleep(1);
+        }
+        int port = gateway.localPort();
+
+        gateway.stop();
+        thread.join(5000);
+        assertFalse(thread.isAlive());
+        try (ServerSocketChannel rebound = ServerSocketChannel.open()) {
+            rebound.bind(new InetSocketAddress(port));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.latencytrader;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that the engine view publishes top of book and positions at batch
+ * ends, and that a concurrent reader only ever sees consistent images.
+ */
+public class EngineViewTest {
+    private final RiskManager risk = new RiskManager(1000, 10_000);
+    private final MatchingEngine engine = new MatchingEngine(risk, new SequencerTest.RecordingListener());
+    private final EngineView view = new EngineView(risk);
+    private final long[] top = new long[EngineView.TOP_OF_BOOK_LENGTH];
+    private final int[] positions = new int[8];
+
+    EngineViewTest() {
+        engine.setView(view);
+    }
+
+    @Test
+    public void testViewChangesOnlyAtBatchEnd() {
+        assertFalse(view.readTopOfBook("XYZ", top));
+        engine.onNewOrder(0, 0, 1L, Side.BUY, 100, 9_999L, "MM", "XYZ");
+        engine.onNewOrder(0, 0, 2L, Side.SELL, 50, 10_001L, "MM", "XYZ");
+        assertTrue(view.readTopOfBook("XYZ", top));
+        assertArrayEquals(new long[] {0, 0, 0, 0}, top);
+        engine.onBatchEnd();
+        view.readTopOfBook("XYZ", top);
+        assertArrayEquals(new long[] {9_999, 100, 10_001, 50}, top);
+        assertEquals(0, view.readPositions(positions));
+
+        engine.onNewOrder(0, 0, 3L, Side.BUY, 20, 10_001L, "A", "XYZ");
+        engine.onBatchEnd();
+        view.readTopOfBook("XYZ", top);
+        assertArrayEquals(new long[] {9_999, 100, 10_001, 30}, top);
+        assertEquals(2, view.readPositions(positions));
+        assertEquals(-20, positions[0]);
+        assertEquals(20, positions[1]);
+        assertEquals(2, view.version());
+
+        // A batch that changes nothing publishes nothing
+        engine.onCancel(0, 0, 99L);
+        engine.onBatchEnd();
+        assertEquals(2, view.version());
+    }
+
+    @Test
+    public void testConcurrentReaderSeesConsistentImages() throws InterruptedException {
+        engine.onNewOrder(0, 0, 1L, Side.SELL, 1000, 10_000L, "MM", "XYZ");
+        engine.onBatchEnd();
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            int[] positions = new int[8];
+            long[] top = new long[EngineView.TOP_OF_BOOK_LENGTH];
+            while (failure.get() == null && !Thread.currentThread().isInterrupted()) {
+                if (view.readPositions(positions) == 2 && positions[0] + positions[1] != 0) {
+                    failure.set("positions " + positions[0] + " and " + positions[1]);
+                }
+                view.readTopOfBook("XYZ", top);
+                if (top[2] != 10_000 && top[3] != 0) {
+                    failure.set("ask " + top[3] + "@" + top[2]);
+                }
+                Thread.yield();
+            }
+        }, "EngineViewTest-reader");
+        reader.start();
+        for (int i = 0; i < 999; i++) {
+            engine.onNewOrder(0, 0, 2L + i, Side.BUY, 1, 10_000L, "A", "XYZ");
+            engine.onBatchEnd();
+        }
+        reader.interrupt();
+        reader.join(5000);
+        assertNull(failure.get());
+        view.readTopOfBook("XYZ", top);
+        assertArrayEquals(new long[] {0, 0, 10_000, 1}, top);
+    }
+}
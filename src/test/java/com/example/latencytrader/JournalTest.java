@@ -0,0 +1,94 @@
+package com.example.latencytrader;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests journalling of sequenced events and replay into a fresh engine.
+ */
+public class JournalTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testReplayRebuildsEngineState() throws Exception {
+        SequencerTest.RecordingListener live = new SequencerTest.RecordingListener();
+        MatchingEngine engine = new MatchingEngine(new RiskManager(1000, 1000), live);
+        Sequencer sequencer = new Sequencer(engine, 1024, SequencerWaitStrategy.BLOCKING);
+        Journal journal = new Journal(directory, 1 << 16, JournalSyncPolicy.BATCH);
+        sequencer.setJournal(journal);
+        Thread thread = new Thread(sequencer, "JournalTest");
+        thread.start();
+        sequencer.publishNewOrder(1, 1L, Side.BUY, 100, 10000L, "ACC", "XYZ");
+        sequencer.publishNewOrder(2, 2L, Side.SELL, 40, 10000L, "ACC2", "XYZ");
+        sequencer.publishNewOrder(3, 3L, Side.BUY, 10, 9990L, "ACC", "XYZ");
+        sequencer.publishReplace(4, 1L, 30, 9995L);
+        sequencer.publishCancel(5, 3L);
+        sequencer.publishMarketData(6, "XYZ", 9990L, 10010L);
+        sequencer.stop();
+        thread.join(5000);
+        journal.close();
+
+        SequencerTest.RecordingListener replayed = new SequencerTest.RecordingListener();
+        MatchingEngine fresh = new MatchingEngine(new RiskManager(1000, 1000), replayed);
+        assertEquals(6, Journal.replay(directory, fresh));
+        assertEquals(live.acks, replayed.acks);
+        assertEquals(engine.getOrderBook("XYZ").bestBid(), fresh.getOrderBook("XYZ").bestBid());
+        assertEquals(Long.valueOf(9995L), fresh.getOrderBook("XYZ").bestBid());
+    }
+
+    @Test
+    public void testRollsSegmentsAndResumesAfterReopen() throws Exception {
+        try (Journal journal = new Journal(directory, 4096, JournalSyncPolicy.NONE)) {
+            for (int i = 0; i < 500; i++) {
+                journal.appendCancel(i, i, i);
+            }
+        }
+        assertTrue(Journal.segments(directory).size() > 1);
+
+        try (Journal journal = new Journal(directory, 4096, JournalSyncPolicy.EVERY_EVENT)) {
+            assertEquals(500, journal.nextIndex());
+            journal.appendNewOrder(500, 500, 1000L, Side.BUY, 5, 100L, "ACC", "XYZ");
+        }
+
+        SequencerTest.RecordingListener listener = new SequencerTest.RecordingListener();
+        MatchingEngine engine = new MatchingEngine(new RiskManager(1000, 1000), listener);
+        assertEquals(51, Journal.replay(directory, 450, engine));
+        assertEquals("450:CANCEL_REJECT", listener.acks.get(0));
+        assertEquals("1000:NEW_ACCEPTED", listener.acks.get(50));
+    }
+
+    @Test
+    public void testTornRecordIsClearedOnReopen() throws Exception {
+        try (Journal journal = new Journal(directory, 4096, JournalSyncPolicy.NONE)) {
+            journal.appendCancel(0, 0, 0);
+            journal.appendCancel(1, 1, 1);
+        }
+        // A crash mid-append leaves a long record's body without its length word
+        byte[] body = new byte[200];
+        Arrays.fill(body, (byte) 0x7F);
+        try (FileChannel channel = FileChannel.open(Journal.segments(directory).get(0), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(body), 2 * 32 + 4);
+        }
+
+        try (Journal journal = new Journal(directory, 4096, JournalSyncPolicy.NONE)) {
+            assertEquals(2, journal.nextIndex());
+            // Shorter than the torn record, so it ends inside the stale bytes
+            journal.appendCancel(2, 2, 2);
+        }
+        try (Journal journal = new Journal(directory, 4096, JournalSyncPolicy.NONE)) {
+            assertEquals(3, journal.nextIndex());
+        }
+        SequencerTest.RecordingListener listener = new SequencerTest.RecordingListener();
+        MatchingEngine engine = new MatchingEngine(new RiskManager(1000, 1000), listener);
+        assertEquals(3, Journal.replay(directory, engine));
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.latencytrader;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that the load generator drives the text gateway on schedule and
+ * matches every acknowledgement to the request that caused it.
+ */
+public class LoadGeneratorTest {
+    @Test
+    public void testEveryRequestIsAcknowledgedAndMatched() throws Exception {
+        LoadGenerator generator = new LoadGenerator(4, 2, LoadGenerator.parseMix("NEW:50,CXL:30,RPL:20"), 20, "XYZ");
+        MatchingEngine engine = new MatchingEngine(new RiskManager(Integer.MAX_VALUE, Integer.MAX_VALUE), generator);
+        Sequencer sequencer = new Sequencer(engine, 1024, SequencerWaitStrategy.YIELDING);
+        Thread sequencerThread = new Thread(sequencer, "LoadGeneratorTest-sequencer");
+        sequencerThread.start();
+        NioOrderGateway gateway = new NioOrderGateway(sequencer, 0, 1, NioOrderGateway.Protocol.LINE);
+        Thread gatewayThread = new Thread(gateway, "LoadGeneratorTest-gateway");
+        gatewayThread.start();
+        try {
+            while (gateway.localPort() < 0) {
+                Thread.sleep(1);
+            }
+            generator.connect(gateway.localPort());
+
+            LoadGenerator.Step step = generator.run(4000, TimeUnit.MILLISECONDS.toNanos(500), TimeUnit.SECONDS.toNanos(10));
+            assertEquals(2000, step.sent);
+            assertEquals(2000, step.acknowledged);
+            assertEquals(0, generator.unmatchedAcks());
+            long total = 0;
+            for (EventType type : new EventType[] {EventType.NEW, EventType.CANCEL, EventType.REPLACE}) {
+                assertTrue(step.corrected(type).getTotalCount() > 0, type.name());
+                total += step.corrected(type).getTotalCount();
+            }
+            assertEquals(2000, total);
+            assertEquals(2000, step.corrected(null).getTotalCount());
+            assertEquals(2000, step.uncorrected().getTotalCount());
+            // Latency from the due time is never below latency from the actual send
+            assertTrue(step.corrected(null).getMaxValue() >= step.uncorrected().getMaxValue());
+
+            // A second step starts from fresh histograms
+            LoadGenerator.Step next = generator.run(2000, TimeUnit.MILLISECONDS.toNanos(100), TimeUnit.SECONDS.toNanos(10));
+            assertEquals(200, next.corrected(null).getTotalCount());
+
+            // A step that stops waiting leaves requests in flight; their late
+            // acknowledgements belong to neither step
+            LoadGenerator.Step cut = generator.run(4000, TimeUnit.MILLISECONDS.toNanos(100), 0);
+            assertTrue(cut.acknowledged <= cut.sent);
+            LoadGenerator.Step after = generator.run(2000, TimeUnit.MILLISECONDS.toNanos(100), TimeUnit.SECONDS.toNanos(10));
+            assertEquals(200, after.acknowledged);
+            assertEquals(200, after.corrected(null).getTotalCount());
+            assertEquals(200, after.uncorrected().getTotalCount());
+            assertEquals(0, generator.unmatchedAcks());
+        } finally {
+            generator.close();
+            gateway.stop();
+            sequencer.stop();
+            sequencerThread.join(5000);
+        }
+    }
+
+    @Test
+    public void testMixMustAddUpToOneHundred() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new LoadGenerator(1, 1, LoadGenerator.parseMix("NEW:50,CXL:40"), 10, "XYZ"));
+        assertThrows(IllegalArgumentException.class, () -> LoadGenerator.parseMix("NEW:50,FOO:50"));
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.latencytrader;
+
+import org.agrona.MutableDirectBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that book changes are published once per batch as conflated L1 and L2
+ * images, and that a lapped subscriber skips to the latest state.
+ */
+public class MarketDataPublisherTest {
+    /** Renders received messages as text for comparison. */
+    static final class Transcript {
+        final List<String> messages = new ArrayList<>();
+
+        void onMessage(int typeId, MutableDirectBuffer buffer, int index, int length) {
+            StringBuilder text = new StringBuilder(MarketDataPublisher.instrument(typeId, buffer, index));
+            if (typeId == MarketDataPublisher.TOP_OF_BOOK_MSG) {
+                text.append(" L1 ").append(buffer.getLong(index + 8)).append('@').append(buffer.getLong(index))
+                        .append(' ').append(buffer.getLong(index + 24)).append('@').append(buffer.getLong(index + 16));
+            } else {
+                int bids = buffer.getInt(index);
+                int asks = buffer.getInt(index + 4);
+                text.append(" L2");
+                for (int i = 0; i < bids + asks; i++) {
+                    int level = index + MarketDataPublisher.DEPTH_LEVELS_OFFSET + i * MarketDataPublisher.LEVEL_LENGTH;
+                    text.append(i == bids ? " | " : " ")
+                            .append(buffer.getLong(level + 8)).append('@').append(buffer.getLong(level));
+                }
+                if (asks == 0) {
+                    text.append(" |");
+                }
+            }
+            messages.add(text.toString());
+        }
+    }
+
+    private final MarketDataPublisher marketData = new MarketDataPublisher(2, 64 * 1024);
+    private final MatchingEngine engine = new MatchingEngine(new RiskManager(1000, 10_000), new NoopListener());
+    private final MarketDataPublisher.Subscriber subscriber;
+    private final Transcript transcript = new Transcript();
+
+    MarketDataPublisherTest() {
+        engine.setMarketDataPublisher(marketData);
+        subscriber = marketData.newSubscriber();
+    }
+
+    private List<String> poll() {
+        transcript.messages.clear();
+        subscriber.poll(transcript::onMessage);
+        return transcript.messages;
+    }
+
+    @Test
+    public void testChangesWithinBatchAreConflated() {
+        engine.onNewOrder(0, 0, 1L, Side.BUY, 100, 9_999L, "A", "XYZ");
+        engine.onNewOrder(0, 0, 2L, Side.BUY, 50, 9_999L, "A", "XYZ");
+        engine.onNewOrder(0, 0, 3L, Side.BUY, 10, 9_998L, "A", "XYZ");
+        engine.onNewOrder(0, 0, 4L, Side.SELL, 20, 10_001L, "B", "XYZ");
+        engine.onNewOrder(0, 0, 5L, Side.SELL, 5, 20_000L, "B", "ABC");
+        assertEquals(List.of(), poll());
+        engine.onBatchEnd();
+        assertEquals(List.of(
+                "XYZ L1 150@9999 20@10001",
+                "XYZ L2 150@9999 10@9998 | 20@10001",
+                "ABC L1 0@0 5@20000",
+                "ABC L2 | 5@20000"), poll());
+
+        // A third bid level is outside the published depth of two
+        engine.onNewOrder(0, 0, 6L, Side.BUY, 10, 9_997L, "A", "XYZ");
+        engine.onBatchEnd();
+        assertEquals(List.of(), poll());
+
+        // Changing the second level only updates L2; a cancel and re-add of the same quantity publishes nothing
+        engine.onCancel(0, 0, 3L);
+        engine.onNewOrder(0, 0, 7L, Side.SELL, 10, 20_000L, "B", "ABC");
+        engine.onCancel(0, 0, 7L);
+        engine.onBatchEnd();
+        assertEquals(List.of("XYZ L2 150@9999 10@9997 | 20@10001"), poll());
+
+        // A fill that consumes the best ask changes L1
+        engine.onNewOrder(0, 0, 8L, Side.BUY, 20, 10_001L, "A", "XYZ");
+        engine.onBatchEnd();
+        assertEquals(List.of("XYZ L1 150@9999 0@0", "XYZ L2 150@9999 10@9997 |"), poll());
+    }
+
+    @Test
+    public void testLappedSubscriberSkipsToLatestState() {
+        MarketDataPublisher small = new MarketDataPublisher(1, 1024);
+        MatchingEngine engine = new MatchingEngine(new RiskManager(1000, 10_000), new NoopListener());
+        engine.setMarketDataPublisher(small);
+        MarketDataPublisher.Subscriber slow = small.newSubscriber();
+        for (int i = 1; i <= 100; i++) {
+            engine.onNewOrder(0, 0, i, Side.BUY, 1, 9_999L, "A", "XYZ");
+            engine.onBatchEnd();
+        }
+        slow.poll(transcript::onMessage);
+        assertTrue(slow.lappedCount() > 0);
+        assertTrue(transcript.messages.size() < 100, transcript.messages.toString());
+        assertEquals("XYZ L1 100@9999 0@0", transcript.messages.get(transcript.messages.size() - 1));
+    }
+
+    private static final class NoopListener implements MatchingEngine.MatchListener {
+        @Override
+        public void onAck(long clientOrderId, long orderId, String status, long tsIn) {}
+
+        @Override
+        public void onFill(long clientOrderId, long restingOrderId, long tradeId, int quantity, long price, long tsIn) {}
+    }
+}
@@ -1,6 +1,10 @@
 package com.example.latencytrader;
 
 import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -17,10 +21,35 @@ public class MatchingEngineTest {
         public void onMarketData(String instrument, long bidPrice, long askPrice) {}
     }
 
+    /** Records every fill and acknowledgement the engine emits. */
+    static class RecordingListener extends NoopListener {
+        final List<String> fills = new ArrayList<>();
+        final List<String> acks = new ArrayList<>();
+
+        @Override
+        public void onAck(long clientOrderId, long orderId, String status, long tsIn) {
+            acks.add(clientOrderId + ":" + orderId + ":" + status);
+        }
+
+        @Override
+        public void onFill(long clientOrderId, long restingOrderId, long tradeId, int quantity, long price, long tsIn) {
+            fills.add("clOrdId=" + clientOrderId + " resting=" + restingOrderId + " trade=" + tradeId
+                    + " qty=" + quantity + " px=" + price + " tsIn=" + tsIn);
+        }
+    }
+
+    /**
+     * Creates the engine under test.  Subclasses override this to run the same
+     * scenarios against other order book implementations.
+     */
+    protected MatchingEngine newEngine(RiskManager rm, MatchingEngine.MatchListener listener) {
+        return new MatchingEngine(rm, listener);
+    }
+
     @Test
     public void testAddAndCancel() {
         RiskManager rm = new RiskManager(1000, 1000);
-        MatchingEngine engine = new MatchingEngine(rm, new NoopListener());
+        MatchingEngine engine = newEngine(rm, new NoopListener());
         long seq = 1;
         OrderEvent order = new OrderEvent(seq, seq, 1L, Side.BUY, 100, 10000L, "A", "XYZ");
         engine.onNewOrder(order);
@@ -34,7 +63,7 @@ public class MatchingEngineTest {
     @Test
     public void testMatching() {
         RiskManager rm = new RiskManager(1000, 1000);
-        MatchingEngine engine = new MatchingEngine(rm, new NoopListener());
+        MatchingEngine engine = newEngine(rm, new NoopListener());
         long seq = 1;
         // Add sell order
         OrderEvent sell = new OrderEvent(seq, seq, 1L, Side.SELL, 100, 10000L, "A", "XYZ");
@@ -45,4 +74,48 @@ public class MatchingEngineTest {
         // Book should be empty after full match
         assertTrue(engine.getOrderBook("XYZ").isEmpty());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSweepAcrossLevels() {
+        RiskManager rm = new RiskManager(1000, 1000);
+        RecordingListener listener = new RecordingListener();
+        MatchingEngine engine = newEngine(rm, listener);
+        engine.onNewOrder(new OrderEvent(1, 1, 1L, Side.SELL, 100, 10000L, "A", "XYZ"));
+        engine.onNewOrder(new OrderEvent(2, 2, 2L, Side.SELL, 100, 10001L, "A", "XYZ"));
+        engine.onNewOrder(new OrderEvent(3, 3, 3L, Side.SELL, 100, 10002L, "A", "XYZ"));
+        // Buy sweeps the first two levels and partially fills the third
+        engine.onNewOrder(new OrderEvent(4, 4, 4L, Side.BUY, 250, 10002L, "B", "XYZ"));
+        // One fill per resting order at its own price, best level first, with increasing trade IDs
+        assertEquals(List.of(
+                "clOrdId=4 resting=1 trade=1 qty=100 px=10000 tsIn=4",
+                "clOrdId=4 resting=2 trade=2 qty=100 px=10001 tsIn=4",
+                "clOrdId=4 resting=3 trade=3 qty=50 px=10002 tsIn=4"), listener.fills);
+        assertEquals("4:-1:FILLED", listener.acks.get(listener.acks.size() - 1));
+        assertEquals(250, rm.position("B"));
+        assertEquals(-250, rm.position("A"));
+        // A later fill continues the trade ID sequence
+        engine.onNewOrder(new OrderEvent(5, 5, 5L, Side.BUY, 10, 10002L, "C", "XYZ"));
+        assertEquals("clOrdId=5 resting=3 trade=4 qty=10 px=10002 tsIn=5", listener.fills.get(3));
+        OrderBook book = engine.getOrderBook("XYZ");
+        assertEquals(10002L, book.bestAsk());
+        assertEquals(40, book.bestOrder(Side.SELL).getQuantity());
+        assertNull(book.bestBid());
+        assertEquals(10002L, book.bestAskPrice());
+        assertEquals(OrderBook.NO_PRICE, book.bestBidPrice());
+    }
+
+    @Test
+    public void testReplaceMovesOrderToNewLevel() {
+        RiskManager rm = new RiskManager(1000, 1000);
+        MatchingEngine engine = newEngine(rm, new NoopListener());
+        engine.onNewOrder(new OrderEvent(1, 1, 1L, Side.BUY, 100, 10000L, "A", "XYZ"));
+        engine.onNewOrder(new OrderEvent(2, 2, 2L, Side.BUY, 100, 9999L, "A", "XYZ"));
+        engine.onReplace(new ReplaceEvent(3, 3, 1L, 40, 9998L, null));
+        OrderBook book = engine.getOrderBook("XYZ");
+        assertEquals(9999L, book.bestBid());
+        // The replaced order can still be cancelled
+        engine.onCancel(new CancelEvent(4, 4, 1L));
+        engine.onCancel(new CancelEvent(5, 5, 2L));
+        assertTrue(book.isEmpty());
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.latencytrader;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the selector-based {@link NioOrderGateway} and the
+ * {@link LineFrameDecoder} it uses for the text protocol.
+ */
+public class NioOrderGatewayTest {
+    @Test
+    public void testLineDecoderLeavesPartialLine() {
+        List<Long> cancels = new ArrayList<>();
+        LineFrameDecoder decoder = new LineFrameDecoder(new EventPublisher() {
+            @Override
+            public void publishNewOrder(long tsIn, long clientOrderId, Side side, int quantity, long price, String account, String instrument) {}
+
+            @Override
+            public void publishCancel(long tsIn, long clientOrderId) {
+                cancels.add(clientOrderId);
+            }
+
+            @Override
+            public void publishReplace(long tsIn, long clientOrderId, int newQuantity, long newPrice) {}
+
+            @Override
+            public void publishMarketData(long tsIn, String instrument, long bidPrice, long askPrice) {}
+        });
+        byte[] bytes = "CXL,clOrdId=1\r\n\nbogus\nCXL,clOrdId=2\nCXL,cl".getBytes(StandardCharsets.US_ASCII);
+        int consumed = decoder.decode(new UnsafeBuffer(bytes), 0, bytes.length);
+        assertEquals(bytes.length - "CXL,cl".length(), consumed);
+        assertEquals(List.of(1L, 2L), cancels);
+    }
+
+    @Test
+    public void testSessionsShareIoThreads() throws Exception {
+        SequencerTest.RecordingListener listener = new SequencerTest.RecordingListener();
+        MatchingEngine engine = new MatchingEngine(new RiskManager(1000, 1000), listener);
+        Sequencer sequencer = new Sequencer(engine, 1024, SequencerWaitStrategy.BLOCKING);
+        Thread sequencerThread = new Thread(sequencer, "NioOrderGatewayTest-sequencer");
+        sequencerThread.start();
+        NioOrderGateway gateway = new NioOrderGateway(sequencer, 0, 2, NioOrderGateway.Protocol.LINE);
+        Thread gatewayThread = new Thread(gateway, "NioOrderGatewayTest-gateway");
+        gatewayThread.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (gateway.localPort() < 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        int sessions = 5;
+        List<Socket> sockets = new ArrayList<>();
+        for (int i = 1; i <= sessions; i++) {
+            Socket socket = new Socket("localhost", gateway.localPort());
+            sockets.add(socket);
+            OutputStream out = socket.getOutputStream();
+            String line = "NEW,clOrdId=" + i + ",side=B,qty=10,px=99.00,acct=A" + i + ",sym=XYZ\n";
+            // Split each line across two writes to exercise partial-frame handling
+            out.write(line.substring(0, 10).getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            Thread.sleep(20);
+            out.write(line.substring(10).getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+        }
+        // Sequencer shutdown drains anything still in flight; this only avoids closing sessions early
+        while (listener.acks.size() < sessions && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        gateway.stop();
+        gatewayThread.join(5000);
+        sequencer.stop();
+        sequencerThread.join(5000);
+
+        assertEquals(sessions, listener.acks.size());
+        for (int i = 1; i <= sessions; i++) {
+            assertTrue(listener.acks.contains(i + ":NEW_ACCEPTED"), listener.acks.toString());
+        }
+    }
+}
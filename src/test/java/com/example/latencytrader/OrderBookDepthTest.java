@@ -0,0 +1,56 @@
+package com.example.latencytrader;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that both book implementations keep per-level aggregate quantity and
+ * order count in step through add, fill, modify and remove.
+ */
+public class OrderBookDepthTest {
+    private final long[] prices = new long[4];
+    private final long[] quantities = new long[4];
+    private final int[] orderCounts = new int[4];
+
+    private String depth(OrderBook book, Side side, int maxLevels) {
+        int count = book.depth(side, maxLevels, prices, quantities, orderCounts);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append(i == 0 ? "" : " ").append(quantities[i]).append('/').append(orderCounts[i])
+                    .append('@').append(prices[i]);
+        }
+        return text.toString();
+    }
+
+    @Test
+    public void testAggregatesFollowBookChanges() {
+        for (OrderBook book : List.of(new TreeOrderBook(), new ArrayOrderBook(9_900, 200))) {
+            String name = book.getClass().getSimpleName();
+            book.add(new Order(1, 1, Side.BUY, 100, 9_999, 0));
+            book.add(new Order(2, 2, Side.BUY, 50, 9_999, 0));
+            book.add(new Order(3, 3, Side.BUY, 10, 9_998, 0));
+            book.add(new Order(4, 4, Side.BUY, 10, 9_990, 0));
+            book.add(new Order(5, 5, Side.SELL, 20, 10_001, 0));
+            book.add(new Order(6, 6, Side.SELL, 30, 10_003, 0));
+            assertEquals("150/2@9999 10/1@9998 10/1@9990", depth(book, Side.BUY, 4), name);
+            assertEquals("150/2@9999 10/1@9998", depth(book, Side.BUY, 2), name);
+            assertEquals("20/1@10001 30/1@10003", depth(book, Side.SELL, 4), name);
+
+            // Partial fill of the head order, then a full fill removing it
+            book.fill(book.bestOrder(Side.BUY), 40);
+            assertEquals("110/2@9999 10/1@9998 10/1@9990", depth(book, Side.BUY, 4), name);
+            book.fill(book.bestOrder(Side.BUY), 60);
+            assertEquals("50/1@9999 10/1@9998 10/1@9990", depth(book, Side.BUY, 4), name);
+
+            // Modify moves quantity between levels; remove empties a level
+            assertTrue(book.modify(3, 9_999, 25), name);
+            assertEquals("75/2@9999 10/1@9990", depth(book, Side.BUY, 4), name);
+            assertTrue(book.remove(5), name);
+            assertEquals("30/1@10003", depth(book, Side.SELL, 4), name);
+            assertEquals("", depth(book, Side.SELL, 0), name);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.latencytrader;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogReader;
+import org.HdrHistogram.HistogramLogWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that {@link Publisher} writes engine output asynchronously in the
+ * expected text format.
+ */
+public class PublisherTest {
+    @Test
+    public void testOutputIsEncodedOnPublisherThread() throws InterruptedException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Publisher publisher = new Publisher(Channels.newChannel(bytes), 1024);
+        Thread thread = new Thread(publisher, "PublisherTest");
+        thread.start();
+
+        long now = System.nanoTime();
+        publisher.onAck(7L, 1L, "NEW_ACCEPTED", now);
+        publisher.onFill(8L, 1L, 3L, 25, -10050L, now);
+        publisher.onMarketData("XYZ", 9999L, 10001L);
+        publisher.stop();
+        thread.join(5000);
+
+        String[] lines = bytes.toString(StandardCharsets.US_ASCII).split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].matches("ACK clOrdId=7 ordId=1 stat=NEW_ACCEPTED latency=\\d+ ns"), lines[0]);
+        assertTrue(lines[1].matches("FILL clOrdId=8 restOrdId=1 tradeId=3 qty=25 px=-10050 latency=\\d+ ns"), lines[1]);
+        assertEquals("MD_TICK instrument=XYZ bid=9999 ask=10001", lines[2]);
+    }
+
+    @Test
+    public void testFullRingDropsInsteadOfBlocking() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        // Output thread never started: the ring fills and further records are dropped
+        Publisher publisher = new Publisher(Channels.newChannel(bytes), 1024);
+        for (int i = 0; i < 100; i++) {
+            publisher.onMarketData("XYZ", i, i + 1);
+        }
+        publisher.stop();
+        publisher.run();
+
+        String output = bytes.toString(StandardCharsets.US_ASCII);
+        assertTrue(output.startsWith("MD_TICK instrument=XYZ bid=0 ask=1\n"), output);
+        assertTrue(output.contains("DROPPED output records="), output);
+    }
+
+    @Test
+    public void testBatchIsWrittenOnceWhenItEnds() throws InterruptedException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        WritableByteChannel target = Channels.newChannel(bytes);
+        AtomicInteger writes = new AtomicInteger();
+        WritableByteChannel counting = new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer source) throws IOException {
+                writes.incrementAndGet();
+                return target.write(source);
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {}
+        };
+        Publisher publisher = new Publisher(counting, 1024);
+        publisher.onMarketData("XYZ", 1L, 2L);
+        publisher.onMarketData("XYZ", 3L, 4L);
+        publisher.onBatchEnd();
+        Thread thread = new Thread(publisher, "PublisherTest");
+        thread.start();
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (bytes.size() == 0 && System.nanoTime() < deadline) {
+            Thread.yield();
+        }
+        publisher.stop();
+        thread.join(5000);
+        assertEquals("MD_TICK instrument=XYZ bid=1 ask=2\nMD_TICK instrument=XYZ bid=3 ask=4\n",
+                bytes.toString(StandardCharsets.US_ASCII));
+        assertEquals(1, writes.get());
+    }
+
+    @Test
+    public void testMetricsAreWrittenAsTaggedIntervals(@TempDir Path dir) throws IOException {
+        ByteArrayOutputStream logBytes = new ByteArrayOutputStream();
+        HistogramLogWriter log = new HistogramLogWriter(logBytes);
+        // Intervals start when the recorders are created, which must not precede the base time
+        log.setBaseTime(System.currentTimeMillis());
+        Publisher publisher = new Publisher(Channels.newChannel(new ByteArrayOutputStream()), 1024);
+        Path csv = dir.resolve("metrics.csv");
+
+        long now = System.nanoTime();
+        publisher.onAck(1L, 1L, "NEW_ACCEPTED", now);
+        publisher.onAck(2L, -1L, "FILLED", now);
+        publisher.onFill(2L, 1L, 1L, 10, 100L, now);
+        publisher.onMarketData("XYZ", 1L, 2L);
+        publisher.writeMetrics(log, csv.toString());
+        publisher.writeMetrics(log, csv.toString());
+        log.close();
+
+        HistogramLogReader reader = new HistogramLogReader(new ByteArrayInputStream(logBytes.toByteArray()));
+        long[] expectedCounts = {2, 1, 0, 0};
+        String[] expectedTags = {"ack", "fill", "ack", "fill"};
+        for (int i = 0; i < expectedCounts.length; i++) {
+            Histogram interval = (Histogram) reader.nextIntervalHistogram();
+            assertEquals(expectedTags[i], interval.getTag());
+            assertEquals(expectedCounts[i], interval.getTotalCount());
+        }
+        assertNull(reader.nextIntervalHistogram());
+        String[] lines = Files.readString(csv).split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].matches("\\d+,2,1,1,.*"), lines[0]);
+        assertTrue(lines[1].matches("\\d+,0,0,0,.*"), lines[1]);
+    }
+}
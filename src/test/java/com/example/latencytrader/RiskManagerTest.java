@@ -0,0 +1,137 @@
+package com.example.latencytrader;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the pre-trade checks run by the matching engine: open-order exposure,
+ * price bands, notional limits and the order rate throttle.
+ */
+public class RiskManagerTest {
+    private final RiskManager risk = new RiskManager(1000, 500);
+    private final SequencerTest.RecordingListener listener = new SequencerTest.RecordingListener();
+    private final MatchingEngine engine = new MatchingEngine(risk, listener);
+
+    private List<String> acks() {
+        List<String> acks = List.copyOf(listener.acks);
+        listener.acks.clear();
+        return acks;
+    }
+
+    @Test
+    public void testRestingOrdersCountTowardPositionLimit() {
+        engine.onNewOrder(0, 0, 1L, Side.BUY, 300, 9_999L, "A", "XYZ");
+        engine.onNewOrder(0, 0, 2L, Side.BUY, 300, 9_998L, "A", "XYZ");
+        engine.onNewOrder(0, 0, 3L, Side.SELL, 300, 10_001L, "A", "XYZ");
+        assertEquals(List.of("1:NEW_ACCEPTED", "2:REJECTED_RISK", "3:NEW_ACCEPTED"), acks());
+        assertEquals(300, risk.openQuantity("A", Side.BUY));
+
+        // A replace is checked without the exposure of the order it replaces
+        engine.onReplace(0, 0, 1L, 600, 9_999L);
+        engine.onReplace(0, 0, 1L, 500, 9_999L);
+        assertEquals(List.of("1:REPLACE_REJECT", "1:REPLACED"), acks());
+        assertEquals(500, risk.openQuantity("A", Side.BUY));
+
+        // Fills of the resting order and a cancel release the exposure
+        engine.onNewOrder(0, 0, 4L, Side.SELL, 200, 9_999L, "B", "XYZ");
+        assertEquals(300, risk.openQuantity("A", Side.BUY));
+        engine.onCancel(0, 0, 1L);
+        engine.onCancel(0, 0, 3L);
+        assertEquals(0, risk.openQuantity("A", Side.BUY));
+        assertEquals(0, risk.openQuantity("A", Side.SELL));
+        // The passive fill made A long 200, leaving room for 300 more
+        assertEquals(200, risk.position("A"));
+        assertEquals(-200, risk.position("B"));
+        engine.onNewOrder(0, 0, 5L, Side.BUY, 301, 9_990L, "A", "XYZ");
+        engine.onNewOrder(0, 0, 6L, Side.BUY, 300, 9_990L, "A", "XYZ");
+        assertEquals(List.of("4:FILLED", "1:CANCELLED", "3:CANCELLED", "5:REJECTED_RISK", "6:NEW_ACCEPTED"), acks());
+    }
+
+    @Test
+    public void testFillBeyondLimitIsAppliedAndFlagged() {
+        engine.onNewOrder(0, 0, 1L, Side.BUY, 400, 10_000L, "A", "XYZ");
+        // A fill for A on another shard lands after the order above passed its check
+        assertTrue(risk.onFill("A", 300, 1));
+        engine.onNewOrder(0, 0, 2L, Side.SELL, 400, 10_000L, "B", "XYZ");
+        assertEquals(List.of("1:NEW_ACCEPTED", "2:FILLED"), acks());
+        assertTrue(engine.getOrderBook("XYZ").isEmpty());
+        assertEquals(700, risk.position("A"));
+        assertEquals(-400, risk.position("B"));
+        assertEquals(1, risk.limitBreaches("A"));
+        assertEquals(0, risk.limitBreaches("B"));
+        // Only orders reducing the breached position are accepted
+        engine.onNewOrder(0, 0, 3L, Side.BUY, 1, 9_000L, "A", "XYZ");
+        engine.onNewOrder(0, 0, 4L, Side.SELL, 100, 11_000L, "A", "XYZ");
+        assertEquals(List.of("3:REJECTED_RISK", "4:NEW_ACCEPTED"), acks());
+    }
+
+    @Test
+    public void testPositionsAreReadableWithoutInterning() {
+        engine.onNewOrder(0, 0, 1L, Side.SELL, 100, 10_000L, "MM", "XYZ");
+        engine.onNewOrder(0, 0, 2L, Side.BUY, 40, 10_000L, "A", "XYZ");
+        engine.onNewOrder(0, 0, 3L, Side.SELL, 10, 9_000L, "A", "XYZ");
+        int[] positions = new int[4];
+        assertEquals(2, risk.copyPositions(positions));
+        assertEquals(-40, positions[risk.symbols().findAccountId("MM")]);
+        assertEquals(40, positions[risk.symbols().findAccountId("A")]);
+        assertEquals(0, risk.position("UNKNOWN"));
+        assertEquals(-1, risk.symbols().findAccountId("UNKNOWN"));
+    }
+
+    @Test
+    public void testPriceBandAgainstTopOfBook() {
+        risk.setPriceBand(100);
+        engine.onNewOrder(0, 0, 1L, Side.SELL, 10, 10_000L, "B", "XYZ");
+        engine.onNewOrder(0, 0, 2L, Side.BUY, 10, 10_101L, "A", "XYZ");
+        engine.onNewOrder(0, 0, 3L, Side.BUY, 5, 10_100L, "A", "XYZ");
+        engine.onNewOrder(0, 0, 4L, Side.BUY, 10, 9_000L, "A", "XYZ");
+        engine.onNewOrder(0, 0, 5L, Side.SELL, 10, 8_900L, "B", "XYZ");
+        engine.onNewOrder(0, 0, 6L, Side.SELL, 5, 8_910L, "B", "XYZ");
+        // The empty book does not band the first order; later ones are banded against the opposite best
+        assertEquals(List.of("1:NEW_ACCEPTED", "2:REJECTED_PRICE_BAND", "3:FILLED", "4:NEW_ACCEPTED",
+                "5:REJECTED_PRICE_BAND", "6:FILLED"), acks());
+
+        // With the opposite side empty the order's own side is the reference
+        engine.onCancel(0, 0, 1L);
+        engine.onNewOrder(0, 0, 7L, Side.BUY, 10, 9_091L, "A", "XYZ");
+        engine.onNewOrder(0, 0, 8L, Side.BUY, 10, 9_090L, "A", "XYZ");
+        assertEquals(List.of("1:CANCELLED", "7:REJECTED_PRICE_BAND", "8:NEW_ACCEPTED"), acks());
+    }
+
+    @Test
+    public void testNotionalLimits() {
+        risk.setNotionalLimits(1_000_000, 1_500_000);
+        engine.onNewOrder(0, 0, 1L, Side.BUY, 101, 10_000L, "A", "XYZ");
+        engine.onNewOrder(0, 0, 2L, Side.BUY, 100, 10_000L, "A", "XYZ");
+        engine.onNewOrder(0, 0, 3L, Side.BUY, 60, 10_000L, "A", "XYZ");
+        engine.onNewOrder(0, 0, 4L, Side.BUY, 50, 10_000L, "A", "XYZ");
+        engine.onNewOrder(0, 0, 5L, Side.BUY, 60, 10_000L, "B", "XYZ");
+        assertEquals(List.of("1:REJECTED_NOTIONAL", "2:NEW_ACCEPTED", "3:REJECTED_NOTIONAL", "4:NEW_ACCEPTED",
+                "5:NEW_ACCEPTED"), acks());
+    }
+
+    @Test
+    public void testOrderRateThrottlePerAccount() {
+        risk.setOrderRateLimit(2, 1_000);
+        engine.onNewOrder(0, 100, 1L, Side.BUY, 1, 9_000L, "A", "XYZ");
+        engine.onNewOrder(0, 200, 2L, Side.BUY, 1, 9_000L, "A", "XYZ");
+        engine.onNewOrder(0, 300, 3L, Side.BUY, 1, 9_000L, "A", "XYZ");
+        engine.onNewOrder(0, 400, 4L, Side.BUY, 1, 9_000L, "B", "XYZ");
+        engine.onNewOrder(0, 1_100, 5L, Side.BUY, 1, 9_000L, "A", "XYZ");
+        assertEquals(List.of("1:NEW_ACCEPTED", "2:NEW_ACCEPTED", "3:REJECTED_THROTTLED", "4:NEW_ACCEPTED",
+                "5:NEW_ACCEPTED"), acks());
+    }
+
+    @Test
+    public void testOrderRateThrottleWithNegativeTimestamps() {
+        // System.nanoTime() may be negative; the first window must still expire
+        risk.setOrderRateLimit(1, 1_000);
+        engine.onNewOrder(0, -5_000, 1L, Side.BUY, 1, 9_000L, "A", "XYZ");
+        engine.onNewOrder(0, -4_500, 2L, Side.BUY, 1, 9_000L, "A", "XYZ");
+        engine.onNewOrder(0, -3_000, 3L, Side.BUY, 1, 9_000L, "A", "XYZ");
+        assertEquals(List.of("1:NEW_ACCEPTED", "2:REJECTED_THROTTLED", "3:NEW_ACCEPTED"), acks());
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.latencytrader;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that both sequencer modes deliver every published event to the engine
+ * in order, signal the end of each batch and drain fully on stop.
+ */
+public class SequencerTest {
+    static class RecordingListener implements MatchingEngine.MatchListener {
+        final List<String> acks = new ArrayList<>();
+        int batchEnds;
+        int acksAtLastBatchEnd;
+
+        @Override
+        public void onAck(long clientOrderId, long orderId, String status, long tsIn) {
+            acks.add(clientOrderId + ":" + status);
+        }
+
+        @Override
+        public void onFill(long clientOrderId, long restingOrderId, long tradeId, int quantity, long price, long tsIn) {}
+
+        @Override
+        public void onBatchEnd() {
+            batchEnds++;
+            acksAtLastBatchEnd = acks.size();
+        }
+    }
+
+    private static void runThrough(Sequencer sequencer) throws InterruptedException {
+        Thread thread = new Thread(sequencer, "SequencerTest");
+        thread.start();
+        sequencer.publishNewOrder(1, 1L, Side.BUY, 100, 10000L, "A", "XYZ");
+        sequencer.publish(new OrderEvent(2, 2, 2L, Side.SELL, 50, 10000L, "B", "XYZ"));
+        sequencer.publishReplace(3, 1L, 20, 9999L);
+        sequencer.publishCancel(4, 1L);
+        sequencer.stop();
+        thread.join(5000);
+        assertFalse(thread.isAlive());
+    }
+
+    @Test
+    public void testQueueModeDispatchesInOrder() throws InterruptedException {
+        RecordingListener listener = new RecordingListener();
+        MatchingEngine engine = new MatchingEngine(new RiskManager(1000, 1000), listener);
+        runThrough(new Sequencer(engine, 1024));
+        assertEquals(List.of("1:NEW_ACCEPTED", "2:FILLED", "1:REPLACED", "1:CANCELLED"), listener.acks);
+        assertTrue(engine.getOrderBook("XYZ").isEmpty());
+    }
+
+    @Test
+    public void testDisruptorModeDispatchesInOrder() throws InterruptedException {
+        for (SequencerWaitStrategy waitStrategy : SequencerWaitStrategy.values()) {
+            RecordingListener listener = new RecordingListener();
+            MatchingEngine engine = new MatchingEngine(new RiskManager(1000, 1000), listener);
+            runThrough(new Sequencer(engine, 1024, waitStrategy));
+            assertEquals(List.of("1:NEW_ACCEPTED", "2:FILLED", "1:REPLACED", "1:CANCELLED"), listener.acks,
+                    waitStrategy.name());
+            assertTrue(engine.getOrderBook("XYZ").isEmpty());
+        }
+    }
+
+    @Test
+    public void testEventsWaitingTogetherEndOneBatch() throws InterruptedException {
+        for (String mode : List.of("QUEUE", "BLOCKING")) {
+            RecordingListener listener = new RecordingListener();
+            MatchingEngine engine = new MatchingEngine(new RiskManager(1000, 1000), listener);
+            Sequencer sequencer = "QUEUE".equals(mode)
+                    ? new Sequencer(engine, 1024)
+                    : new Sequencer(engine, 1024, SequencerWaitStrategy.BLOCKING);
+            // Publish before the consumer starts so all four events are waiting at once
+            sequencer.publishNewOrder(1, 1L, Side.BUY, 100, 10000L, "A", "XYZ");
+            sequencer.publishNewOrder(2, 2L, Side.BUY, 100, 9999L, "A", "XYZ");
+            sequencer.publishCancel(3, 1L);
+            sequencer.publishCancel(4, 2L);
+            Thread thread = new Thread(sequencer, "SequencerTest");
+            thread.start();
+            sequencer.stop();
+            thread.join(5000);
+            assertFalse(thread.isAlive());
+            assertEquals(4, listener.acks.size(), mode);
+            assertEquals(1, listener.batchEnds, mode);
+            assertEquals(4, listener.acksAtLastBatchEnd, mode);
+        }
+    }
+
+    @Test
+    public void testOrdersBeyondRegistryCapacityAreNeverDispatched() throws InterruptedException {
+        for (String mode : List.of("QUEUE", "BLOCKING")) {
+            RecordingListener listener = new RecordingListener();
+            MatchingEngine engine = new MatchingEngine(
+                    new RiskManager(new SymbolRegistry(1, 1), 1000, 1000), listener);
+            // A ring of two slots, so every event after the first lap reuses a slot
+            Sequencer sequencer = "QUEUE".equals(mode)
+                    ? new Sequencer(engine, 2)
+                    : new Sequencer(engine, 2, SequencerWaitStrategy.BLOCKING);
+            Thread thread = new Thread(sequencer, "SequencerTest");
+            thread.start();
+            sequencer.publishNewOrder(1, 1L, Side.BUY, 100, 10000L, "A", "XYZ");
+            assertThrows(IllegalStateException.class,
+                    () -> sequencer.publishNewOrder(2, 2L, Side.BUY, 100, 10000L, "A", "ABC"));
+            assertThrows(IllegalStateException.class,
+                    () -> sequencer.publish(new OrderEvent(3, 3, 3L, Side.BUY, 100, 10000L, "B", "XYZ")));
+            EventSlot[] batch = {new EventSlot(), new EventSlot(), new EventSlot()};
+            batch[0].setNewOrder(0, 4, 4L, Side.BUY, 100, 10000L, "A", "ABC");
+            batch[1].setCancel(0, 5, 1L);
+            batch[2].setNewOrder(0, 6, 6L, Side.SELL, 100, 10000L, "B", "XYZ");
+            sequencer.publishBatch(batch, 0, 3);
+            batch[0].setNewOrder(0, 7, 7L, Side.BUY, 100, 10000L, "C", "DEF");
+            sequencer.publishBatch(batch, 0, 1);
+            sequencer.stop();
+            thread.join(5000);
+            assertFalse(thread.isAlive());
+            assertEquals(List.of("1:NEW_ACCEPTED", "1:CANCELLED"), listener.acks, mode);
+            assertTrue(engine.getOrderBook("XYZ").isEmpty(), mode);
+            assertEquals(1, engine.symbols().accountCount(), mode);
+        }
+    }
+}
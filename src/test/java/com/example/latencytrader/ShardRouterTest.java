@@ -0,0 +1,118 @@
+package com.example.latencytrader;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that the shard router keeps each instrument on one shard, follows
+ * cancels and replaces to the shard of the original order, and shares risk
+ * state across shards.
+ */
+public class ShardRouterTest {
+    private final SequencerTest.RecordingListener[] listeners = {
+            new SequencerTest.RecordingListener(), new SequencerTest.RecordingListener()};
+    private final RiskManager risk = new RiskManager(1000, 150);
+    private final MatchingEngine[] engines = {
+            new MatchingEngine(risk, listeners[0]), new MatchingEngine(risk, listeners[1])};
+    private final Sequencer[] sequencers = {
+            new Sequencer(engines[0], 1024, SequencerWaitStrategy.YIELDING),
+            new Sequencer(engines[1], 1024, SequencerWaitStrategy.YIELDING)};
+    private final ShardRouter router = new ShardRouter(sequencers);
+
+    /** Returns an instrument name that the router assigns to {@code shard}. */
+    private String instrumentOn(int shard) {
+        for (int i = 0; ; i++) {
+            String instrument = "SYM" + i;
+            if (router.shardOf(instrument) == shard) {
+                return instrument;
+            }
+        }
+    }
+
+    private void runShards(Runnable producer) throws InterruptedException {
+        Thread[] threads = new Thread[sequencers.length];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(sequencers[i], "ShardRouterTest-" + i);
+            threads[i].start();
+        }
+        producer.run();
+        for (int i = 0; i < threads.length; i++) {
+            sequencers[i].stop();
+            threads[i].join(5000);
+            assertFalse(threads[i].isAlive());
+        }
+    }
+
+    @Test
+    public void testEventsFollowTheirInstrumentShard() throws InterruptedException {
+        String first = instrumentOn(0);
+        String second = instrumentOn(1);
+        runShards(() -> {
+            router.publishNewOrder(1, 1L, Side.BUY, 100, 10000L, "A", first);
+            router.publishNewOrder(2, 2L, Side.SELL, 100, 20000L, "B", second);
+            router.publishReplace(3, 2L, 50, 20001L);
+            router.publishCancel(4, 1L);
+            router.publishCancel(5, 99L);
+        });
+        assertEquals(List.of("1:NEW_ACCEPTED", "1:CANCELLED", "99:CANCEL_REJECT"), listeners[0].acks);
+        assertEquals(List.of("2:NEW_ACCEPTED", "2:REPLACED"), listeners[1].acks);
+        assertTrue(engines[0].getOrderBook(first).isEmpty());
+        assertEquals(20001L, engines[1].getOrderBook(second).bestAsk());
+    }
+
+    @Test
+    public void testRoutesLiveUntilTheOrderIsDone() throws InterruptedException {
+        String second = instrumentOn(1);
+        runShards(() -> {
+            router.publishNewOrder(1, 1L, Side.SELL, 100, 20000L, "B", second);
+            router.publishNewOrder(2, 2L, Side.BUY, 60, 20000L, "A", second);
+            router.publishNewOrder(3, 3L, Side.BUY, 5000, 20000L, "A", second);
+            router.publishNewOrder(4, 4L, Side.SELL, 10, 20001L, "B", second);
+            router.publishCancel(5, 4L);
+            // A rejected replace keeps the route of the live order
+            router.publishReplace(6, 1L, 2000, 20000L);
+            router.publishReplace(7, 1L, 30, 20002L);
+            router.publishNewOrder(8, 8L, Side.BUY, 30, 20002L, "A", second);
+            router.publishCancel(9, 99L);
+        });
+        assertEquals(List.of("1:NEW_ACCEPTED", "2:FILLED", "3:REJECTED_RISK", "4:NEW_ACCEPTED", "4:CANCELLED",
+                "1:REPLACE_REJECT", "1:REPLACED", "8:FILLED"), listeners[1].acks);
+        assertEquals(List.of("99:CANCEL_REJECT"), listeners[0].acks);
+        // Filled, rejected and cancelled orders all gave up their routes
+        assertEquals(0, router.routeCount());
+    }
+
+    @Test
+    public void testBatchIsSplitPerShardInOrder() throws InterruptedException {
+        String first = instrumentOn(0);
+        String second = instrumentOn(1);
+        runShards(() -> {
+            EventBatch batch = new EventBatch(router, 16);
+            batch.publishNewOrder(1, 1L, Side.BUY, 100, 10000L, "A", first);
+            batch.publishNewOrder(2, 2L, Side.BUY, 100, 10000L, "C", second);
+            batch.publishNewOrder(3, 3L, Side.SELL, 40, 10000L, "B", first);
+            batch.publishNewOrder(4, 4L, Side.SELL, 100, 10000L, "B", first);
+            batch.publishCancel(5, 2L);
+            batch.flush();
+        });
+        assertEquals(List.of("1:NEW_ACCEPTED", "3:FILLED", "4:PARTIALLY_FILLED"), listeners[0].acks);
+        assertEquals(List.of("2:NEW_ACCEPTED", "2:CANCELLED"), listeners[1].acks);
+    }
+
+    @Test
+    public void testPositionLimitSpansShards() throws InterruptedException {
+        String first = instrumentOn(0);
+        String second = instrumentOn(1);
+        runShards(() -> {
+            router.publishNewOrder(1, 1L, Side.SELL, 100, 10000L, "MM", first);
+            router.publishNewOrder(2, 2L, Side.BUY, 100, 10000L, "A", first);
+        });
+        assertEquals(100, risk.position("A"));
+        // Account A is already long 100, so another 100 on the other shard's engine breaches the limit of 150
+        engines[1].onNewOrder(3, 3, 3L, Side.BUY, 100, 10000L, "A", second);
+        assertEquals(List.of("3:REJECTED_RISK"), listeners[1].acks);
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.latencytrader;
+
+import org.agrona.ExpandableArrayBuffer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests engine snapshots and restart from a snapshot plus the journal tail.
+ */
+public class SnapshotterTest {
+    @TempDir
+    Path directory;
+
+    /**
+     * Records acks and fills in order, so two engines can be compared.
+     */
+    static final class TranscriptListener implements MatchingEngine.MatchListener {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onAck(long clientOrderId, long orderId, String status, long tsIn) {
+            events.add("ACK " + clientOrderId + " " + orderId + " " + status);
+        }
+
+        @Override
+        public void onFill(long clientOrderId, long restingOrderId, long tradeId, int quantity, long price, long tsIn) {
+            events.add("FILL " + clientOrderId + " " + restingOrderId + " " + tradeId + " " + quantity + "@" + price);
+        }
+    }
+
+    private static MatchingEngine newEngine(RiskManager risk, MatchingEngine.MatchListener listener) {
+        MatchingEngine engine = new MatchingEngine(risk, listener);
+        engine.registerOrderBook("ABC", new ArrayOrderBook(9000, 2000));
+        return engine;
+    }
+
+    private static void sweep(MatchingEngine engine) {
+        engine.onNewOrder(0, 0, 900L, Side.SELL, 500, 0, "SWEEP", "XYZ");
+        engine.onNewOrder(0, 0, 901L, Side.BUY, 500, 0, "SWEEP", "ABC");
+        engine.onCancel(0, 0, 3L);
+    }
+
+    @Test
+    public void testSnapshotRoundTripPreservesPriorityAndState() {
+        RiskManager risk = new RiskManager(1000, 10_000);
+        MatchingEngine original = newEngine(risk, new TranscriptListener());
+        original.onNewOrder(0, 0, 1L, Side.BUY, 100, 10_000L, "A", "XYZ");
+        original.onNewOrder(0, 0, 2L, Side.BUY, 100, 10_000L, "B", "XYZ");
+        original.onNewOrder(0, 0, 3L, Side.BUY, 100, 9_990L, "A", "XYZ");
+        original.onNewOrder(0, 0, 4L, Side.SELL, 30, 10_000L, "C", "XYZ");
+        original.onNewOrder(0, 0, 5L, Side.SELL, 50, 10_050L, "C", "ABC");
+        original.onNewOrder(0, 0, 6L, Side.SELL, 60, 10_040L, "D", "ABC");
+        // Reusing a client order ID leaves the first order resting but untracked
+        original.onNewOrder(0, 0, 6L, Side.SELL, 10, 10_060L, "D", "ABC");
+        original.onMarketData(0, 0, "XYZ", 9_990L, 10_010L);
+
+        ExpandableArrayBuffer buffer = new ExpandableArrayBuffer(64);
+        int length = original.writeSnapshot(buffer, 0);
+        RiskManager restoredRisk = new RiskManager(1000, 10_000);
+        MatchingEngine restored = newEngine(restoredRisk, new TranscriptListener());
+        assertEquals(length, restored.loadSnapshot(buffer, 0));
+        assertEquals(risk.position("C"), restoredRisk.position("C"));
+        assertEquals(risk.openQuantity("D", Side.SELL), restoredRisk.openQuantity("D", Side.SELL));
+        assertEquals(original.getOrderBook("ABC").bestAsk(), restored.getOrderBook("ABC").bestAsk());
+
+        TranscriptListener expected = new TranscriptListener();
+        TranscriptListener actual = new TranscriptListener();
+        original.setListener(expected);
+        restored.setListener(actual);
+        sweep(original);
+        sweep(restored);
+        assertEquals(expected.events, actual.events);
+        assertFalse(actual.events.isEmpty());
+    }
+
+    @Test
+    public void testSnapshotKeepsThrottleWindowsAndBreaches() {
+        RiskManager risk = new RiskManager(1000, 10_000);
+        risk.setOrderRateLimit(2, 1_000);
+        MatchingEngine original = newEngine(risk, new TranscriptListener());
+        original.onNewOrder(0, 100, 1L, Side.BUY, 10, 10_000L, "A", "XYZ");
+        original.onNewOrder(0, 200, 2L, Side.BUY, 10, 10_000L, "A", "XYZ");
+        original.onNewOrder(0, 300, 3L, Side.SELL, 10, 10_100L, "B", "XYZ");
+        risk.onFill("C", 20_000, 1);
+
+        ExpandableArrayBuffer buffer = new ExpandableArrayBuffer(64);
+        original.writeSnapshot(buffer, 0);
+        RiskManager restoredRisk = new RiskManager(1000, 10_000);
+        restoredRisk.setOrderRateLimit(2, 1_000);
+        MatchingEngine restored = newEngine(restoredRisk, new TranscriptListener());
+        restored.loadSnapshot(buffer, 0);
+        assertEquals(1, restoredRisk.limitBreaches("C"));
+
+        // The journal tail: A's window is still full until 1100, B's is not
+        TranscriptListener expected = new TranscriptListener();
+        TranscriptListener actual = new TranscriptListener();
+        original.setListener(expected);
+        restored.setListener(actual);
+        for (MatchingEngine engine : new MatchingEngine[] {original, restored}) {
+            engine.onNewOrder(0, 400, 4L, Side.BUY, 10, 10_000L, "A", "XYZ");
+            engine.onNewOrder(0, 500, 5L, Side.SELL, 10, 10_100L, "B", "XYZ");
+            engine.onNewOrder(0, 1_100, 6L, Side.BUY, 10, 10_000L, "A", "XYZ");
+        }
+        assertEquals(List.of("ACK 4 -1 REJECTED_THROTTLED", "ACK 5 4 NEW_ACCEPTED", "ACK 6 5 NEW_ACCEPTED"),
+                expected.events);
+        assertEquals(expected.events, actual.events);
+    }
+
+    @Test
+    public void testRestartFromSnapshotAndJournalTail() throws Exception {
+        TranscriptListener live = new TranscriptListener();
+        RiskManager risk = new RiskManager(1000, 10_000);
+        MatchingEngine engine = newEngine(risk, live);
+        Sequencer sequencer = new Sequencer(engine, 1024, SequencerWaitStrategy.BLOCKING);
+        Journal journal = new Journal(directory.resolve("journal"), 1 << 16, JournalSyncPolicy.BATCH);
+        Snapshotter snapshotter = new Snapshotter(directory.resolve("snapshots"), engine, journal, 0);
+        sequencer.setJournal(journal);
+        sequencer.setSnapshotter(snapshotter);
+        Thread sequencerThread = new Thread(sequencer, "SnapshotterTest-sequencer");
+        Thread snapshotThread = new Thread(snapshotter, "SnapshotterTest-snapshotter");
+        sequencerThread.start();
+        snapshotThread.start();
+
+        for (int i = 1; i <= 20; i++) {
+            sequencer.publishNewOrder(i, i, i % 2 == 0 ? Side.BUY : Side.SELL, 10, 10_000L + (i % 5) * (i % 2 == 0 ? -1 : 1), "A" + (i % 3), "XYZ");
+        }
+        snapshotter.requestSnapshot();
+        sequencer.publishCancel(21, 1L);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (Snapshotter.snapshots(directory.resolve("snapshots")).isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        for (int i = 22; i <= 30; i++) {
+            sequencer.publishNewOrder(i, i, Side.BUY, 5, 10_001L, "A" + (i % 3), "ABC");
+        }
+        sequencer.publishReplace(31, 2L, 7, 9_999L);
+        sequencer.stop();
+        sequencerThread.join(5000);
+        snapshotter.stop();
+        snapshotThread.join(5000);
+        journal.close();
+
+        RiskManager restoredRisk = new RiskManager(1000, 10_000);
+        MatchingEngine restored = newEngine(restoredRisk, new TranscriptListener());
+        long fromIndex = Snapshotter.loadLatest(directory.resolve("snapshots"), restored);
+        assertTrue(fromIndex > 0);
+        long replayed = Journal.replay(directory.resolve("journal"), fromIndex, restored);
+        assertEquals(31 - fromIndex, replayed);
+        for (int a = 0; a < 3; a++) {
+            assertEquals(risk.position("A" + a), restoredRisk.position("A" + a));
+        }
+
+        TranscriptListener expected = new TranscriptListener();
+        TranscriptListener actual = new TranscriptListener();
+        engine.setListener(expected);
+        restored.setListener(actual);
+        sweep(engine);
+        sweep(restored);
+        assertEquals(expected.events, actual.events);
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.latencytrader;
+
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that every stage of the pipeline is recorded per event type as events
+ * pass through the sequencer, the engine and the publisher.
+ */
+public class StageLatenciesTest {
+    private static long count(StageLatencies latencies, StageLatencies.Stage stage, EventType type) {
+        return latencies.intervalHistogram(stage, type).getTotalCount();
+    }
+
+    @Test
+    public void testEachStageIsRecordedPerEventType() throws InterruptedException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Publisher publisher = new Publisher(Channels.newChannel(bytes), 1 << 16);
+        MatchingEngine engine = new MatchingEngine(new RiskManager(1000, 1000), publisher);
+        Sequencer sequencer = new Sequencer(engine, 1024, SequencerWaitStrategy.YIELDING);
+        StageLatencies latencies = new StageLatencies();
+        sequencer.setLatencies(latencies);
+        publisher.setLatencies(latencies);
+        Thread sequencerThread = new Thread(sequencer, "StageLatenciesTest-sequencer");
+        Thread publisherThread = new Thread(publisher, "StageLatenciesTest-publisher");
+        sequencerThread.start();
+        publisherThread.start();
+
+        long now = System.nanoTime();
+        sequencer.publishNewOrder(now, 1L, Side.BUY, 100, 10000L, "A", "XYZ");
+        sequencer.publishNewOrder(now, 2L, Side.BUY, 100, 9999L, "A", "XYZ");
+        sequencer.publishReplace(now, 1L, 50, 10000L);
+        sequencer.publishCancel(now, 2L);
+        sequencer.publishMarketData(now, "XYZ", 9998L, 10002L);
+        sequencer.stop();
+        sequencerThread.join(5000);
+        publisher.stop();
+        publisherThread.join(5000);
+
+        String output = bytes.toString(StandardCharsets.US_ASCII);
+        assertTrue(output.contains("MD_TICK instrument=XYZ bid=9998 ask=10002"), output);
+        long[] maxNewOrder = new long[StageLatencies.Stage.values().length];
+        for (StageLatencies.Stage stage : StageLatencies.Stage.values()) {
+            Histogram newOrders = latencies.intervalHistogram(stage, EventType.NEW);
+            assertEquals(2, newOrders.getTotalCount(), stage.name());
+            maxNewOrder[stage.ordinal()] = newOrders.getMaxValue();
+            assertEquals(1, count(latencies, stage, EventType.REPLACE), stage.name());
+            assertEquals(1, count(latencies, stage, EventType.CANCEL), stage.name());
+            assertEquals(1, count(latencies, stage, EventType.MD_TICK), stage.name());
+            // Taking the interval starts a new one
+            assertEquals(0, count(latencies, stage, EventType.NEW), stage.name());
+        }
+        long total = maxNewOrder[StageLatencies.Stage.TOTAL.ordinal()];
+        long match = maxNewOrder[StageLatencies.Stage.MATCH.ordinal()];
+        assertTrue(total >= match, total + " < " + match);
+    }
+
+    @Test
+    public void testQueueModeRecordsFromDispatch() throws InterruptedException {
+        SequencerTest.RecordingListener listener = new SequencerTest.RecordingListener();
+        MatchingEngine engine = new MatchingEngine(new RiskManager(1000, 1000), listener);
+        Sequencer sequencer = new Sequencer(engine, 1024);
+        StageLatencies latencies = new StageLatencies();
+        sequencer.setLatencies(latencies);
+        sequencer.publishNewOrder(System.nanoTime(), 1L, Side.BUY, 100, 10000L, "A", "XYZ");
+        sequencer.publishCancel(System.nanoTime(), 1L);
+        Thread thread = new Thread(sequencer, "StageLatenciesTest");
+        thread.start();
+        sequencer.stop();
+        thread.join(5000);
+
+        assertEquals(1, count(latencies, StageLatencies.Stage.MATCH, EventType.NEW));
+        assertEquals(1, count(latencies, StageLatencies.Stage.MATCH, EventType.CANCEL));
+        assertEquals(0, count(latencies, StageLatencies.Stage.QUEUE, EventType.NEW));
+    }
+}
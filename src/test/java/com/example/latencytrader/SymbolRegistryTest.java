@@ -0,0 +1,59 @@
+package com.example.latencytrader;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that symbols get dense, stable IDs per namespace, including when
+ * interned concurrently, and that a full namespace is reported.
+ */
+public class SymbolRegistryTest {
+    @Test
+    public void testIdsAreDensePerNamespace() {
+        SymbolRegistry symbols = new SymbolRegistry(2, 3);
+        assertEquals(0, symbols.instrumentId("XYZ"));
+        assertEquals(1, symbols.instrumentId("ABC"));
+        assertEquals(0, symbols.instrumentId(new String("XYZ")));
+        assertEquals(0, symbols.accountId("XYZ"));
+        assertEquals(1, symbols.accountId("A"));
+        assertEquals("ABC", symbols.instrument(1));
+        assertEquals("A", symbols.account(1));
+        assertEquals(2, symbols.accountCount());
+        assertThrows(IllegalStateException.class, () -> symbols.instrumentId("DEF"));
+    }
+
+    @Test
+    public void testConcurrentInterningAgreesOnIds() throws InterruptedException {
+        SymbolRegistry symbols = new SymbolRegistry();
+        ConcurrentHashMap<String, Integer> seen = new ConcurrentHashMap<>();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 1000; i++) {
+                    String account = "ACC" + i;
+                    int id = symbols.accountId(account);
+                    assertEquals(id, seen.computeIfAbsent(account, key -> id));
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+        assertEquals(1000, symbols.accountCount());
+        for (int id = 0; id < 1000; id++) {
+            assertEquals(id, seen.get(symbols.account(id)));
+        }
+    }
+}
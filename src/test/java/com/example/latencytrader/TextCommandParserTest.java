@@ -0,0 +1,98 @@
+package com.example.latencytrader;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests parsing of text commands from bytes, including exact fixed-point
+ * price conversion against per-instrument tick sizes.
+ */
+public class TextCommandParserTest {
+    private final TextCommandParser parser = new TextCommandParser(
+            TickSizes.parse("0.01", "FUT:0.25,FX:0.00001"), null);
+
+    private EventSlot parse(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+        return parser.parse(new UnsafeBuffer(bytes), 0, bytes.length);
+    }
+
+    private String error(String line) {
+        return assertThrows(IllegalArgumentException.class, () -> parse(line)).getMessage();
+    }
+
+    @Test
+    public void testParsesCommands() {
+        EventSlot event = parse("NEW,clOrdId=123,side=B,qty=100,px=101.25,acct=ABC,sym=XYZ");
+        assertEquals(EventType.NEW, event.type);
+        assertEquals(123L, event.clientOrderId);
+        assertEquals(Side.BUY, event.side);
+        assertEquals(100, event.quantity);
+        assertEquals(10_125L, event.price);
+        assertEquals("ABC", event.account);
+        assertEquals("XYZ", event.instrument);
+
+        event = parse("CXL,clOrdId=9223372036854775807");
+        assertEquals(EventType.CANCEL, event.type);
+        assertEquals(Long.MAX_VALUE, event.clientOrderId);
+
+        event = parse("RPL,clOrdId=7,qty=50,px=101,sym=XYZ");
+        assertEquals(EventType.REPLACE, event.type);
+        assertEquals(50, event.quantity);
+        assertEquals(10_100L, event.price);
+    }
+
+    @Test
+    public void testPricesUseInstrumentTickSize() {
+        assertEquals(4_006L, parse("NEW,clOrdId=1,side=S,qty=1,px=1001.50,acct=A,sym=FUT").price);
+        assertEquals(108_423L, parse("NEW,clOrdId=2,side=S,qty=1,px=1.08423,acct=A,sym=FX").price);
+        assertEquals(4_005L, parse("RPL,clOrdId=1,qty=1,px=1001.25,sym=FUT").price);
+        // Values that binary floating point cannot represent exactly still convert exactly
+        assertEquals(29L, parse("NEW,clOrdId=3,side=B,qty=1,px=0.29,acct=A,sym=XYZ").price);
+        assertEquals(1_000_000_000_001L, parse("NEW,clOrdId=4,side=B,qty=1,px=10000000000.01000000,acct=A,sym=XYZ").price);
+        assertEquals("Price is not a multiple of the tick size", error("NEW,clOrdId=5,side=B,qty=1,px=101.255,acct=A,sym=XYZ"));
+        assertEquals("Price is not a multiple of the tick size", error("NEW,clOrdId=6,side=B,qty=1,px=1001.10,acct=A,sym=FUT"));
+    }
+
+    @Test
+    public void testReplaceNeedsSymWhenTickSizesDiffer() {
+        // Converting with the default tick would make this 100125 ticks instead of 4005
+        assertEquals("Missing sym: required on RPL when tick sizes differ per instrument",
+                error("RPL,clOrdId=1,qty=1,px=1001.25"));
+        assertEquals(4_005L, parse("RPL,clOrdId=1,qty=1,px=1001.25,sym=FUT").price);
+        TextCommandParser uniform = new TextCommandParser(TickSizes.parse("0.25", null), null);
+        byte[] bytes = "RPL,clOrdId=1,qty=1,px=1001.25".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(4_005L, uniform.parse(new UnsafeBuffer(bytes), 0, bytes.length).price);
+    }
+
+    @Test
+    public void testSymbolsAreCached() {
+        String account = parse("NEW,clOrdId=1,side=B,qty=1,px=1,acct=ACCOUNT1,sym=XYZ").account;
+        assertSame(account, parse("NEW,clOrdId=2,side=B,qty=1,px=1,acct=ACCOUNT1,sym=XYZ").account);
+        assertEquals("LONGACCOUNT", parse("NEW,clOrdId=3,side=B,qty=1,px=1,acct=LONGACCOUNT,sym=XYZ").account);
+    }
+
+    @Test
+    public void testDefaultInstrument() {
+        TextCommandParser console = new TextCommandParser(TickSizes.parse("0.01", "FUT:0.25"), "FUT");
+        byte[] bytes = "NEW,clOrdId=1,side=B,qty=1,px=100.75,acct=A".getBytes(StandardCharsets.US_ASCII);
+        EventSlot event = console.parse(new UnsafeBuffer(bytes), 0, bytes.length);
+        assertEquals("FUT", event.instrument);
+        assertEquals(403L, event.price);
+        assertEquals("Missing sym", error("NEW,clOrdId=1,side=B,qty=1,px=100.75,acct=A"));
+    }
+
+    @Test
+    public void testRejectsMalformedLines() {
+        assertEquals("Unrecognized command", error("FOO,clOrdId=1"));
+        assertEquals("Expected side B or S at column 20", error("NEW,clOrdId=1,side=X,qty=1,px=1,acct=A,sym=XYZ"));
+        assertEquals("Number too large at column 26", error("NEW,clOrdId=1,side=B,qty=2147483648,px=1,acct=A,sym=XYZ"));
+        assertEquals("Expected price at column 31", error("NEW,clOrdId=1,side=B,qty=1,px=.,acct=A,sym=XYZ"));
+        assertEquals("Expected symbol at column 38", error("NEW,clOrdId=1,side=B,qty=1,px=1,acct=,sym=XYZ"));
+        assertEquals("Unexpected input at column 15", error("CXL,clOrdId=12 "));
+        assertEquals("Expected digits at column 13", error("CXL,clOrdId=-1"));
+    }
+}
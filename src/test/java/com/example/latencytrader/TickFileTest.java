@@ -0,0 +1,126 @@
+package com.example.latencytrader;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests importing recorded ticks from CSV and replaying them in batches at
+ * their original timing or as fast as possible.
+ */
+public class TickFileTest {
+    @TempDir
+    Path dir;
+
+    /** Records every published tick and the size of each batch. */
+    private static final class RecordingPublisher implements EventPublisher {
+        final List<String> ticks = new ArrayList<>();
+        final List<Integer> batches = new ArrayList<>();
+
+        @Override
+        public void publishNewOrder(long tsIn, long clientOrderId, Side side, int quantity, long price, String account, String instrument) {}
+
+        @Override
+        public void publishCancel(long tsIn, long clientOrderId) {}
+
+        @Override
+        public void publishReplace(long tsIn, long clientOrderId, int newQuantity, long newPrice) {}
+
+        @Override
+        public void publishMarketData(long tsIn, String instrument, long bidPrice, long askPrice) {
+            ticks.add(instrument + ":" + bidPrice + "/" + askPrice);
+        }
+
+        @Override
+        public void publishBatch(EventSlot[] events, int offset, int count) {
+            batches.add(count);
+            EventPublisher.super.publishBatch(events, offset, count);
+        }
+    }
+
+    private Path importTicks(String... lines) throws IOException {
+        Path csv = dir.resolve("ticks.csv");
+        Files.write(csv, List.of(lines));
+        Path file = dir.resolve("ticks.bin");
+        TickFile.importCsv(csv, file, TickSizes.parse("0.01", "ABC:0.05"));
+        return file;
+    }
+
+    @Test
+    public void testImportedTicksReadBack() throws IOException {
+        Path file = importTicks(
+                "timestamp,instrument,bid,ask",
+                "1000,XYZ,99.99,100.01",
+                "2000,ABC,10.05,10.10",
+                "2000,XYZ,100.00,100.02");
+        try (TickFile ticks = new TickFile(file, 2)) {
+            assertEquals(3, ticks.recordCount());
+            assertArrayEquals(new String[] {"XYZ", "ABC"}, ticks.instruments());
+            // Windows of two records: reading back and forth remaps them
+            assertEquals(2000, ticks.timestamp(2));
+            assertEquals("XYZ", ticks.instrument(0));
+            assertEquals(9999, ticks.bidPrice(0));
+            assertEquals(10001, ticks.askPrice(0));
+            assertEquals("ABC", ticks.instrument(1));
+            assertEquals(201, ticks.bidPrice(1));
+            assertEquals(202, ticks.askPrice(1));
+            assertEquals(10002, ticks.askPrice(2));
+            assertThrows(IndexOutOfBoundsException.class, () -> ticks.timestamp(3));
+        }
+    }
+
+    @Test
+    public void testInvalidLinesAreRejected() {
+        IllegalArgumentException offTick = assertThrows(IllegalArgumentException.class,
+                () -> importTicks("1000,ABC,10.01,10.10"));
+        assertTrue(offTick.getMessage().contains("line 1"), offTick.getMessage());
+        IllegalArgumentException backwards = assertThrows(IllegalArgumentException.class,
+                () -> importTicks("2000,XYZ,1.00,1.01", "1000,XYZ,1.00,1.01"));
+        assertTrue(backwards.getMessage().contains("line 2"), backwards.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> importTicks("1000,XYZ,1.00"));
+    }
+
+    @Test
+    public void testReplayAsFastAsPossiblePublishesFullBatches() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            lines.add(i * 1_000_000_000L + "," + (i % 2 == 0 ? "XYZ" : "ABC") + ",1.00,1.05");
+        }
+        Path file = importTicks(lines.toArray(new String[0]));
+        RecordingPublisher publisher = new RecordingPublisher();
+        try (TickFile ticks = new TickFile(file)) {
+            // Ten minutes of recorded ticks replay at once
+            TickReplayFeeder feeder = new TickReplayFeeder(publisher, ticks, TickReplayFeeder.AS_FAST_AS_POSSIBLE);
+            feeder.run();
+            assertEquals(600, feeder.published());
+        }
+        assertEquals(List.of(256, 256, 88), publisher.batches);
+        assertEquals("XYZ:100/105", publisher.ticks.get(0));
+        assertEquals("ABC:20/21", publisher.ticks.get(1));
+    }
+
+    @Test
+    public void testReplayKeepsScaledTiming() throws IOException {
+        // Two bursts of three ticks 200 ms apart
+        Path file = importTicks(
+                "0,XYZ,1.00,1.01", "0,XYZ,1.00,1.02", "0,XYZ,1.00,1.03",
+                "200000000,XYZ,1.00,1.04", "200000000,XYZ,1.00,1.05", "200000000,XYZ,1.00,1.06");
+        RecordingPublisher publisher = new RecordingPublisher();
+        try (TickFile ticks = new TickFile(file)) {
+            long start = System.nanoTime();
+            new TickReplayFeeder(publisher, ticks, 2.0).run();
+            long elapsed = System.nanoTime() - start;
+            // At twice the speed the second burst is due after 100 ms
+            assertTrue(elapsed >= 100_000_000L, "elapsed " + elapsed);
+        }
+        assertEquals(List.of(3, 3), publisher.batches);
+        assertEquals(6, publisher.ticks.size());
+    }
+}